@@ -0,0 +1,61 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.control.Either;
+import org.aya.generic.Modifier;
+import org.aya.syntax.compile.JitFn;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.FnDefLike;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.util.error.WithPos;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The definitional height of a function, that is, the length of the longest chain of
+ * unfoldable functions its body goes through. A function that does not unfold has height {@code 0}.
+ * Used by {@link org.aya.unify.TermComparator} to decide which side to unfold first when comparing two calls.
+ * <p>
+ * The height of a {@link FnDef} is {@link #measure}d once, when it is tycked, and stored in {@link FnDef#height()}.
+ * Its callees are tycked already, except itself and the functions it is mutually recursive with,
+ * which do not contribute to the height. So a height only depends on the heights of functions tycked earlier,
+ * and there is no cycle to break.
+ * The height of a jit-compiled function is the one measured when it was tycked, stored in {@link JitFn#height}.
+ */
+public final class DeltaHeight {
+  private DeltaHeight() { }
+
+  public static int of(@NotNull FnDefLike fn) {
+    // Checked here, because a function is made opaque after it is tycked if it fails termination check
+    if (fn.is(Modifier.Opaque) || fn.is(Modifier.Partial)) return 0;
+    return switch (fn) {
+      case JitFn jit -> jit.height;
+      case FnDef.Delegate delegate -> {
+        var core = delegate.core();
+        yield core == null ? 0 : core.height();
+      }
+    };
+  }
+
+  /** @return the height of a function with {@param body}, whose callees are looked up but not measured again */
+  public static int measure(@NotNull Either<Term, ImmutableSeq<WithPos<Term.Matching>>> body) {
+    var todo = MutableList.<Term>create();
+    switch (body) {
+      case Either.Left(var term) -> todo.append(term);
+      case Either.Right(var clauses) -> clauses.forEach(clause -> todo.append(clause.data().body()));
+    }
+    var max = 0;
+    while (todo.isNotEmpty()) {
+      var term = todo.removeLast();
+      if (term instanceof FnCall call) max = Math.max(max, of(call.ref()));
+      term.descent(t -> {
+        todo.append(t);
+        return t;
+      });
+    }
+    return max + 1;
+  }
+}
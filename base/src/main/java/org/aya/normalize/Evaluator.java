@@ -0,0 +1,210 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableSeq;
+import kala.control.Either;
+import kala.control.Result;
+import org.aya.generic.Modifier;
+import org.aya.normalize.ReductionProfiler.Kind;
+import org.aya.syntax.compile.JitFn;
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.FnDefLike;
+import org.aya.syntax.core.pat.CaseTree;
+import org.aya.syntax.core.pat.PatMatcher;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.core.term.marker.StableWHNF;
+import org.aya.syntax.literate.CodeOptions.NormalizeMode;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.util.error.WithPos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import static org.aya.generic.State.Stuck;
+
+/**
+ * Normalization by evaluation, see {@link NormalizeMode#NBE}.
+ * <p>
+ * Terms are evaluated under an environment that gives the values of their loose indices,
+ * so beta reduction and unfolding do not substitute into the body.
+ * The semantic values are terms in weak head normal form whose lambdas are {@link Closure.Jit}
+ * capturing the environment (see {@link Body}), so they can be handed to the rest of the
+ * type checker as-is. {@link #quote} reads a value back to a full normal form.
+ * <p>
+ * Terms that this class does not know how to evaluate are closed by the environment
+ * and handed to {@link Normalizer}.
+ */
+public final class Evaluator {
+  private final @NotNull Normalizer normalizer;
+  /** Values, i.e. terms that are known to be in whnf, emptied after each {@link #quote}. */
+  private final @NotNull Set<Term> values = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  private final @Nullable ReductionProfiler profiler;
+
+  public Evaluator(@NotNull Normalizer normalizer) {
+    this.normalizer = normalizer;
+    this.profiler = normalizer.state.profiler;
+  }
+
+  /** The body of a lambda, evaluated on application. */
+  private record Body(
+    @NotNull Evaluator evaluator, @NotNull Term body,
+    @NotNull ImmutableSeq<Term> env
+  ) implements UnaryOperator<Term> {
+    @Override public Term apply(Term arg) { return evaluator.eval(body, env.appended(arg)); }
+  }
+
+  /**
+   * @param env the values of the loose indices of {@param term} in telescope order,
+   *            that is, the last one is {@code ^0}.
+   * @return the whnf of {@param term}
+   */
+  public @NotNull Term eval(@NotNull Term term, @NotNull ImmutableSeq<Term> env) {
+    if (env.isEmpty() && values.contains(term)) return term;
+    var result = doEval(term, env);
+    values.add(result);
+    return result;
+  }
+
+  private @NotNull Term whnf(@NotNull Term term) { return eval(term, ImmutableSeq.empty()); }
+
+  private @NotNull Term doEval(@NotNull Term term, @NotNull ImmutableSeq<Term> env) {
+    return switch (term) {
+      case LocalTerm(var index) -> index < env.size()
+        ? env.get(env.size() - 1 - index)
+        : new LocalTerm(index - env.size());
+      case LamTerm(Closure.Locns(var body)) -> new LamTerm(new Closure.Jit(new Body(this, body, env)));
+      case LamTerm lam when env.isEmpty() -> lam;
+      case LamTerm(var closure) -> doEval(new LamTerm(closure.toLocns()), env);
+      case AppTerm(var f, var a) -> apply(eval(f, env), eval(a, env));
+      case ProjTerm(var of, var fst) -> {
+        var tup = eval(of, env);
+        if (tup instanceof TupTerm(var lhs, var rhs)) yield whnf(fst ? lhs : rhs);
+        yield new ProjTerm(tup, fst);
+      }
+      case TupTerm(var lhs, var rhs) -> new TupTerm(eval(lhs, env), eval(rhs, env));
+      case FnCall(var ref, var ulift, var args) -> unfold(ref, ulift, args.map(arg -> eval(arg, env)));
+      case MatchTerm(var discriminant, var clauses, var tree) -> {
+        var args = discriminant.map(arg -> eval(arg, env));
+        var result = tryUnfoldClauses(clauses.view(), tree, args, env, 0, false);
+        if (result != null) yield result;
+        yield new MatchTerm(args, clauses.map(clause -> clause.descent(
+          body -> body.replaceTeleFrom(clause.bindCount(), env.view()),
+          UnaryOperator.identity())), tree);
+      }
+      default -> {
+        var closed = term.descent((i, sub) -> i == 0
+          ? eval(sub, env)
+          : sub.replaceTeleFrom(i, env.view()));
+        if (closed instanceof StableWHNF || closed instanceof FreeTerm) yield closed;
+        if (closed instanceof ConCall con && !con.ref().hasEq()) yield closed;
+        yield normalizer.apply(closed);
+      }
+    };
+  }
+
+  private @NotNull Term apply(@NotNull Term f, @NotNull Term arg) {
+    return switch (f) {
+      case LamTerm(Closure.Jit(Body body)) -> body.apply(arg);
+      case LamTerm(Closure.Locns(var body)) -> eval(body, ImmutableSeq.of(arg));
+      case LamTerm(var closure) -> whnf(closure.apply(arg));
+      default -> {
+        var app = AppTerm.make(f, arg);
+        yield app instanceof AppTerm ? app : whnf(app);
+      }
+    };
+  }
+
+  private @NotNull Term unfold(@NotNull FnDefLike ref, int ulift, @NotNull ImmutableSeq<Term> args) {
+    var stuck = new FnCall(ref, ulift, args);
+    return switch (ref) {
+      case JitFn instance -> {
+        var begin = ReductionProfiler.begin(profiler);
+        var result = instance.invoke(() -> stuck, args);
+        ReductionProfiler.end(profiler, Kind.Jit, instance, begin, false, result != stuck);
+        yield result == stuck ? stuck : whnf(result.elevate(ulift));
+      }
+      case FnDef.Delegate delegate -> {
+        var core = delegate.core();
+        if (core == null || normalizer.isOpaque(core)) yield stuck;
+        yield switch (core.body()) {
+          case Either.Left(var body) -> {
+            var begin = ReductionProfiler.begin(profiler);
+            var result = eval(body, args);
+            ReductionProfiler.end(profiler, Kind.Fn, delegate, begin, false, true);
+            yield result;
+          }
+          case Either.Right(var clauses) -> {
+            var begin = ReductionProfiler.begin(profiler);
+            var overlap = core.is(Modifier.Overlap);
+            var result = tryUnfoldClauses(clauses.view().map(WithPos::data),
+              core.caseTree(), args, ImmutableSeq.empty(), ulift, overlap);
+            ReductionProfiler.end(profiler, Kind.Fn, delegate, begin, true, result != null);
+            yield result != null ? result : stuck;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * @param env the environment of the clause bodies, excluding the pattern bindings
+   * @return null if stuck
+   * @see Normalizer#tryUnfoldClauses
+   */
+  private @Nullable Term tryUnfoldClauses(
+    @NotNull SeqView<Term.Matching> clauses, @Nullable CaseTree tree, @NotNull ImmutableSeq<Term> args,
+    @NotNull ImmutableSeq<Term> env, int ulift, boolean orderIndependent
+  ) {
+    if (tree != null) {
+      var hit = tree.apply(args, this::whnf);
+      if (hit == null) return null;
+      return eval(clauses.get(hit.clause()).body().elevate(ulift), env.appendedAll(hit.subst()));
+    }
+    for (var matchy : clauses) {
+      var matcher = new PatMatcher(false, this::whnf);
+      switch (matcher.apply(matchy.patterns(), args)) {
+        case Result.Err(var st) -> {
+          if (!orderIndependent && st == Stuck) return null;
+        }
+        case Result.Ok(var subst) -> {
+          return eval(matchy.body().elevate(ulift), env.appendedAll(subst));
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Read back the value of {@param term} as a full normal form. */
+  public @NotNull Term quote(@NotNull Term term) {
+    try {
+      return readBack(term);
+    } finally {
+      values.clear();
+    }
+  }
+
+  private @NotNull Term readBack(@NotNull Term term) {
+    var value = whnf(term);
+    if (value instanceof LamTerm) {
+      var param = LocalVar.generate("x");
+      return new LamTerm(readBack(apply(value, new FreeTerm(param))).bind(param));
+    }
+    return value.descent((i, sub) -> i == 0 ? readBack(sub) : quoteUnder(i, sub));
+  }
+
+  /** Read back {@param term} that lives under {@param bindCount} binders. */
+  private @NotNull Term quoteUnder(int bindCount, @NotNull Term term) {
+    var params = ImmutableSeq.fill(bindCount, _ -> LocalVar.generate("x"));
+    return readBack(eval(term, params.<Term>map(FreeTerm::new))).bindTele(params.view());
+  }
+}
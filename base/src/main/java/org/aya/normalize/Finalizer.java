@@ -19,6 +19,8 @@ import org.aya.tyck.tycker.Stateful;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.IdentityHashMap;
+
 public interface Finalizer {
   @NotNull TyckState state();
   default @NotNull Term doZonk(@NotNull Term term) {
@@ -31,9 +33,44 @@ public interface Finalizer {
   }
   @NotNull Term zonk(@NotNull Term term);
 
-  record Freeze(@NotNull Stateful delegate) implements Finalizer {
+  /**
+   * @param memo the zonked terms, keyed on the identity of the input, so a subterm shared
+   *             by many terms (or by the uses of a meta) is zonked once.
+   *             Only valid during a single pass, as metas may get solved between passes.
+   */
+  record Freeze(@NotNull Stateful delegate, @NotNull IdentityHashMap<Term, Term> memo) implements Finalizer {
+    public Freeze(@NotNull Stateful delegate) { this(delegate, new IdentityHashMap<>()); }
     @Override public @NotNull TyckState state() { return delegate.state(); }
-    @Override public @NotNull Term zonk(@NotNull Term term) { return doZonk(term); }
+    @Override public @NotNull Term zonk(@NotNull Term term) {
+      var memoized = memo.get(term);
+      if (memoized != null) return memoized;
+      var result = doZonk(term);
+      memo.put(term, result);
+      return result;
+    }
+  }
+
+  /**
+   * The zonked terms of a pass, that is, of the zonking done while no meta gets solved.
+   * Keyed on the identity of the input, like the memo of {@link Freeze}.
+   * <p>
+   * A {@link MetaPatTerm} is solved in place by the pattern tycker, which does not go through
+   * the {@link TyckState}, so the terms zonked to one that is unsolved are never memoized.
+   */
+  final class Memo {
+    private final @NotNull IdentityHashMap<Term, Term> terms = new IdentityHashMap<>();
+    private int generation = -1;
+    /** The number of unsolved {@link MetaPatTerm}s zonked so far, so a term can tell whether it contains one */
+    private int metaPats = 0;
+
+    /** Start a new pass if metas were solved since the last one, see {@link TyckState#generation()} */
+    private @NotNull IdentityHashMap<Term, Term> of(@NotNull TyckState state) {
+      if (generation != state.generation()) {
+        terms.clear();
+        generation = state.generation();
+      }
+      return terms;
+    }
   }
 
   /**
@@ -42,10 +79,10 @@ public interface Finalizer {
    */
   record Zonk<T extends Problematic & Stateful>(
     @NotNull T delegate, @NotNull MutableSinglyLinkedList<Term> stack,
-    @NotNull MutableList<MetaVar> alreadyReported
+    @NotNull MutableList<MetaVar> alreadyReported, @NotNull Memo memo
   ) implements Finalizer, Stateful, Problematic {
     public Zonk(@NotNull T delegate) {
-      this(delegate, MutableSinglyLinkedList.create(), MutableList.create());
+      this(delegate, MutableSinglyLinkedList.create(), MutableList.create(), new Memo());
     }
     @Override public @NotNull TyckState state() { return delegate.state(); }
     @Override public @NotNull Reporter reporter() { return delegate.reporter(); }
@@ -55,9 +92,15 @@ public interface Finalizer {
     }
 
     public @NotNull Term zonk(@NotNull Term term) {
+      // A zonker may be reused after solving more metas, so the memo lives for one pass.
+      // Unsolved metas in a shared subterm are reported at its first occurrence.
+      var memo = this.memo.of(state());
+      var memoized = memo.get(term);
+      if (memoized != null) return memoized;
       stack.push(term);
+      var metaPats = this.memo.metaPats;
       var result = doZonk(term);
-      // result shall not be MetaPatTerm
+      if (result instanceof MetaPatTerm) this.memo.metaPats++;
       switch (result) {
         case MetaCall(var ref, _) when !ref.isUser() && !alreadyReported.contains(ref) -> {
           alreadyReported.append(ref);
@@ -71,6 +114,7 @@ public interface Finalizer {
         }
       }
       stack.pop();
+      if (metaPats == this.memo.metaPats) memo.put(term, result);
       return result;
     }
   }
@@ -9,8 +9,10 @@ import kala.control.Either;
 import kala.control.Option;
 import kala.control.Result;
 import org.aya.generic.Modifier;
+import org.aya.normalize.ReductionProfiler.Kind;
 import org.aya.syntax.compile.JitFn;
 import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.pat.CaseTree;
 import org.aya.syntax.core.pat.PatMatcher;
 import org.aya.syntax.core.term.*;
 import org.aya.syntax.core.term.call.*;
@@ -26,6 +28,7 @@ import org.aya.tyck.TyckState;
 import org.aya.tyck.tycker.Stateful;
 import org.aya.util.error.WithPos;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.UnaryOperator;
 
@@ -66,39 +69,16 @@ public final class Normalizer implements UnaryOperator<Term> {
           term = result;
           continue;
         }
-        case FnCall(var fn, int ulift, var args) -> {
-          switch (fn) {
-            case JitFn instance -> {
-              var result = instance.invoke(() -> defaultValue, args);
-              if (defaultValue != result) {
-                term = result.elevate(ulift);
-                continue;
-              }
-              return result;
-            }
-            case FnDef.Delegate delegate -> {
-              FnDef core = delegate.core();
-              if (core == null) return defaultValue;
-              if (!isOpaque(core)) switch (core.body()) {
-                case Either.Left(var body): {
-                  term = body.instantiateTele(args.view());
-                  continue;
-                }
-                case Either.Right(var clauses): {
-                  var result = tryUnfoldClauses(clauses.view().map(WithPos::data),
-                    args, ulift, core.is(Modifier.Overlap));
-                  // we may get stuck
-                  if (result.isEmpty()) return defaultValue;
-                  term = result.get();
-                  continue;
-                }
-              }
-              return defaultValue;
-            }
-          }
+        case FnCall call -> {
+          var result = unfoldOnce(call);
+          if (result == null) return defaultValue;
+          term = result;
+          continue;
         }
         case RuleReducer reduceRule -> {
+          var begin = ReductionProfiler.begin(state.profiler);
           var result = reduceRule.rule().apply(reduceRule.args());
+          ReductionProfiler.end(state.profiler, Kind.Rule, reduceRule.ref(), begin, false, result != null);
           if (result != null) {
             term = result;
             continue;
@@ -106,6 +86,7 @@ public final class Normalizer implements UnaryOperator<Term> {
           // We can't handle it, try to delegate to FnCall
           switch (reduceRule) {
             case RuleReducer.Fn fn -> {
+              if (fn.rule().isStuck(fn.args())) return descentedTerm;
               term = fn.toFnCall();
               continue;
             }
@@ -121,13 +102,19 @@ public final class Normalizer implements UnaryOperator<Term> {
           return call.head().ref().equality(call.args(), dim == DimTerm.I0);
         }
         case PrimCall prim -> {
-          return state.primFactory.unfold(prim, state);
+          var begin = ReductionProfiler.begin(state.profiler);
+          var result = state.primFactory.unfold(prim, state);
+          ReductionProfiler.end(state.profiler, Kind.Prim, prim.ref(), begin, false, result != prim);
+          return result;
         }
         case MetaPatTerm meta -> {
+          state.whnfCache.uncacheable();
           return meta.inline(this);
         }
         case MetaCall meta -> {
-          return state.computeSolution(meta, this);
+          var result = state.computeSolution(meta, this);
+          if (result == meta) state.whnfCache.met(meta.ref());
+          return result;
         }
         case MetaLitTerm meta -> {
           return meta.inline(this);
@@ -157,7 +144,7 @@ public final class Normalizer implements UnaryOperator<Term> {
           }
         }
         case MatchTerm matchTerm -> {
-          var result = tryUnfoldClauses(matchTerm.clauses().view(), matchTerm.discriminant(), 0, false);
+          var result = tryUnfoldClauses(matchTerm.clauses().view(), matchTerm.tree(), matchTerm.discriminant(), 0, false);
           if (result.isEmpty()) return defaultValue;
           term = result.get();
           continue;
@@ -169,14 +156,60 @@ public final class Normalizer implements UnaryOperator<Term> {
     }
   }
 
-  private boolean isOpaque(@NotNull FnDef fn) {
+  /**
+   * Unfold the function in the head of {@param call} once, without normalizing the result.
+   *
+   * @return null if the function does not unfold
+   */
+  public @Nullable Term unfoldOnce(@NotNull FnCall call) {
+    var args = call.args();
+    return switch (call.ref()) {
+      case JitFn instance -> {
+        var begin = ReductionProfiler.begin(state.profiler);
+        var result = instance.invoke(() -> call, args);
+        ReductionProfiler.end(state.profiler, Kind.Jit, instance, begin, false, result != call);
+        yield result == call ? null : result.elevate(call.ulift());
+      }
+      case FnDef.Delegate delegate -> {
+        FnDef core = delegate.core();
+        if (core == null || isOpaque(core)) yield null;
+        yield switch (core.body()) {
+          case Either.Left(var body) -> {
+            var begin = ReductionProfiler.begin(state.profiler);
+            var result = body.instantiateTele(args.view());
+            ReductionProfiler.end(state.profiler, Kind.Fn, delegate, begin, false, true);
+            yield result;
+          }
+          case Either.Right(var clauses) -> {
+            var begin = ReductionProfiler.begin(state.profiler);
+            var overlap = core.is(Modifier.Overlap);
+            var result = tryUnfoldClauses(clauses.view().map(WithPos::data), core.caseTree(),
+              args, call.ulift(), overlap);
+            ReductionProfiler.end(state.profiler, Kind.Fn, delegate, begin, true, result.isDefined());
+            yield result.getOrNull();
+          }
+        };
+      }
+    };
+  }
+
+  boolean isOpaque(@NotNull FnDef fn) {
     return opaque.contains(fn.ref()) || fn.is(Modifier.Opaque) || fn.is(Modifier.Partial);
   }
 
+  /**
+   * @param tree {@param clauses} compiled into a decision tree, see {@link FnDef#caseTree} and {@link MatchTerm#tree},
+   *             or null to try them one by one
+   */
   public @NotNull Option<Term> tryUnfoldClauses(
-    @NotNull SeqView<Term.Matching> clauses, @NotNull ImmutableSeq<Term> args,
-    int ulift, boolean orderIndependent
+    @NotNull SeqView<Term.Matching> clauses, @Nullable CaseTree tree,
+    @NotNull ImmutableSeq<Term> args, int ulift, boolean orderIndependent
   ) {
+    if (tree != null) {
+      var hit = tree.apply(args, this);
+      if (hit == null) return Option.none();
+      return Option.some(clauses.get(hit.clause()).body().elevate(ulift).instantiateTele(hit.subst().view()));
+    }
     for (var matchy : clauses) {
       var matcher = new PatMatcher(false, this);
       switch (matcher.apply(matchy.patterns(), args)) {
@@ -205,6 +238,7 @@ public final class Normalizer implements UnaryOperator<Term> {
     return switch (mode) {
       case HEAD -> apply(term);
       case FULL -> new Full().apply(term);
+      case NBE -> new Evaluator(this).quote(term);
       case NULL -> new Finalizer.Freeze(() -> state).zonk(term);
       case null -> new Finalizer.Freeze(() -> state).zonk(term);
     };
@@ -0,0 +1,76 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.concrete.stmt.QualifiedID;
+import org.aya.syntax.core.def.AnyDef;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in counters of the reductions performed by {@link Normalizer} and {@link Evaluator},
+ * per definition. A profiler is shared by the {@link org.aya.tyck.TyckState}s of a compilation
+ * through {@link org.aya.tyck.TyckOptions#profiler()}, so it is safe to use from parallel tycks.
+ * <p>
+ * The time is inclusive: it contains the time spent on the arguments forced by the
+ * clauses and on instantiating the body, and jit-compiled code calling other jit-compiled
+ * functions directly is attributed to the outermost call.
+ */
+public final class ReductionProfiler {
+  public enum Kind { Fn, Jit, Prim, Rule }
+
+  /**
+   * @param matches    the number of times the clauses were matched against the arguments
+   * @param unfoldings the number of successful reductions
+   * @param stuck      the number of reductions that got stuck
+   */
+  public record Row(
+    @NotNull Kind kind, @NotNull String name,
+    long unfoldings, long matches, long stuck, long nanos
+  ) { }
+
+  private record Key(@NotNull Kind kind, @NotNull AnyDef def) { }
+  private static final class Counters {
+    final LongAdder unfoldings = new LongAdder(), matches = new LongAdder(),
+      stuck = new LongAdder(), nanos = new LongAdder();
+  }
+
+  private final @NotNull ConcurrentHashMap<Key, Counters> counters = new ConcurrentHashMap<>();
+
+  /** @return the timestamp of a reduction being started, or {@code 0} if {@param profiler} is null */
+  public static long begin(@Nullable ReductionProfiler profiler) {
+    return profiler == null ? 0 : System.nanoTime();
+  }
+
+  /**
+   * Record a reduction, does nothing if {@param profiler} is null.
+   *
+   * @param begin   the value of {@link #begin}
+   * @param matched whether the reduction matched clauses
+   */
+  public static void end(
+    @Nullable ReductionProfiler profiler, @NotNull Kind kind, @NotNull AnyDef def,
+    long begin, boolean matched, boolean unfolded
+  ) {
+    if (profiler == null) return;
+    var elapsed = System.nanoTime() - begin;
+    var entry = profiler.counters.computeIfAbsent(new Key(kind, def), _ -> new Counters());
+    (unfolded ? entry.unfoldings : entry.stuck).increment();
+    if (matched) entry.matches.increment();
+    entry.nanos.add(elapsed);
+  }
+
+  /** @return the counters, the most time-consuming first */
+  public @NotNull ImmutableSeq<Row> rows() {
+    return ImmutableSeq.from(counters.entrySet()).map(e -> {
+      var c = e.getValue();
+      return new Row(e.getKey().kind, QualifiedID.join(e.getKey().def.qualifiedName().asStringSeq()),
+        c.unfoldings.sum(), c.matches.sum(), c.stuck.sum(), c.nanos.sum());
+    }).sorted(Comparator.comparingLong(Row::nanos).reversed());
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableMap;
+import kala.collection.mutable.MutableSet;
+import kala.collection.mutable.MutableStack;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.MetaPatTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.marker.StableWHNF;
+import org.aya.syntax.ref.MetaVar;
+import org.aya.tyck.TyckState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded (LRU) memo table of weak head normal forms, owned by a {@link TyckState}.
+ * Entries are keyed on the identity of the input term.
+ * <p>
+ * The head normal form of a term can only change when a meta the reduction got stuck on gets solved.
+ * The {@link Normalizer} tells the cache about the unsolved metas it meets through {@link #met},
+ * every entry remembers the ones met while computing it, and {@link #invalidate(MetaVar)} drops
+ * the entries depending on a meta. Reductions meeting a {@link MetaPatTerm} are not cached,
+ * because pattern metas are solved behind our back.
+ */
+public final class WhnfCache {
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  private record Key(@NotNull Term term) {
+    @Override public boolean equals(@Nullable Object o) { return o instanceof Key key && key.term == term; }
+    @Override public int hashCode() { return System.identityHashCode(term); }
+  }
+  private record Entry(@NotNull Term result, @NotNull ImmutableSeq<MetaVar> dependencies) { }
+
+  private final @NotNull LinkedHashMap<Key, Entry> table;
+  private final @NotNull MutableMap<MetaVar, MutableSet<Key>> dependents = MutableMap.create();
+  /** The metas met by the reductions in progress, one per nested {@link #apply}, the innermost on the top */
+  private final @NotNull MutableStack<Recorder> recording = MutableStack.create();
+  private static final class Recorder {
+    final @NotNull MutableSet<MetaVar> metas = MutableSet.create();
+    boolean cacheable = true;
+  }
+  private int hits = 0, misses = 0, invalidations = 0;
+
+  public WhnfCache(int capacity) {
+    table = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        if (size() <= capacity) return false;
+        forget(eldest.getKey(), eldest.getValue());
+        return true;
+      }
+    };
+  }
+
+  public @NotNull Term apply(@NotNull Term term, @NotNull UnaryOperator<Term> whnf) {
+    if (term instanceof StableWHNF || term instanceof FreeTerm) return term;
+    var key = new Key(term);
+    var entry = table.get(key);
+    if (entry != null) {
+      hits++;
+      entry.dependencies.forEach(this::met);
+      return entry.result;
+    }
+    misses++;
+    var recorder = new Recorder();
+    recording.push(recorder);
+    Term result;
+    try {
+      result = whnf.apply(term);
+    } finally {
+      recording.pop();
+    }
+    if (recorder.cacheable) {
+      var dependencies = recorder.metas.toImmutableSeq();
+      table.put(key, new Entry(result, dependencies));
+      dependencies.forEach(meta -> dependents.getOrPut(meta, MutableSet::create).add(key));
+    }
+    // The reduction in progress depends on the same metas
+    if (recording.isNotEmpty()) {
+      var outer = recording.peek();
+      outer.metas.addAll(recorder.metas);
+      outer.cacheable &= recorder.cacheable;
+    }
+    return result;
+  }
+
+  /** Called when a reduction meets the unsolved {@param meta}, so the forms computed now depend on it */
+  public void met(@NotNull MetaVar meta) {
+    if (recording.isNotEmpty()) recording.peek().metas.add(meta);
+  }
+
+  /** Called when a reduction meets a {@link MetaPatTerm}, so the forms computed now are not cached */
+  public void uncacheable() {
+    if (recording.isNotEmpty()) recording.peek().cacheable = false;
+  }
+
+  /** Drop the entries depending on {@param meta}, called when {@param meta} is solved. */
+  public void invalidate(@NotNull MetaVar meta) {
+    var keys = dependents.getOrNull(meta);
+    if (keys == null) return;
+    dependents.remove(meta);
+    keys.forEach(key -> {
+      if (table.remove(key) != null) invalidations++;
+    });
+  }
+
+  public void clear() {
+    invalidations += table.size();
+    table.clear();
+    dependents.clear();
+  }
+
+  private void forget(@NotNull Key key, @NotNull Entry entry) {
+    entry.dependencies.forEach(meta -> {
+      var keys = dependents.getOrNull(meta);
+      if (keys != null) keys.remove(key);
+    });
+  }
+
+  public int hits() { return hits; }
+  public int misses() { return misses; }
+  public int invalidations() { return invalidations; }
+  public int size() { return table.size(); }
+
+  public @NotNull String statistics() {
+    var total = hits + misses;
+    var rate = total == 0 ? 0 : hits * 100 / total;
+    return "whnf cache: " + hits + " hits, " + misses + " misses (" + rate + "%), "
+      + invalidations + " invalidations, " + size() + " entries";
+  }
+}
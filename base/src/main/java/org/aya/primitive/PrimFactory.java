@@ -26,7 +26,7 @@ import org.aya.tyck.TyckState;
 import org.aya.util.ForLSP;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.EnumMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -35,7 +35,8 @@ import static org.aya.syntax.core.term.SortTerm.Type0;
 
 public class PrimFactory {
   private final @NotNull Map<@NotNull ID, @NotNull PrimSeed> seeds;
-  private final @NotNull EnumMap<@NotNull ID, @NotNull PrimDefLike> defs = new EnumMap<>(ID.class);
+  /** Concurrent, because the independent definitions of a module may be tycked concurrently */
+  private final @NotNull ConcurrentHashMap<@NotNull ID, @NotNull PrimDefLike> defs = new ConcurrentHashMap<>();
 
   public PrimFactory() {
     seeds = ImmutableMap.from(ImmutableSeq.of(
@@ -122,8 +123,8 @@ public class PrimFactory {
     var first = norm.apply(prim.args().get(0));
     var second = norm.apply(prim.args().get(1));
 
-    if (first instanceof StringTerm(var str1) && second instanceof StringTerm(var str2)) {
-      return new StringTerm(str1 + str2);
+    if (first instanceof StringTerm str1 && second instanceof StringTerm str2) {
+      return str1.concat(str2);
     }
 
     return new PrimCall(prim.ref(), prim.ulift(), ImmutableSeq.of(first, second));
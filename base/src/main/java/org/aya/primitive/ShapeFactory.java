@@ -5,6 +5,7 @@ package org.aya.primitive;
 import kala.collection.immutable.ImmutableMap;
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableMap;
 import kala.control.Option;
 import org.aya.syntax.core.def.AnyDef;
@@ -15,19 +16,72 @@ import org.aya.syntax.core.repr.ShapeRecognition;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * The shapes discovered so far. The methods are synchronized,
+ * because the independent definitions of a module may be tycked concurrently.
+ * <p>
+ * When they are, every SCC is tycked with a {@link #upTo} view, which only sees the shapes
+ * of the SCCs before it in the topological order, like when tycked sequentially,
+ * and not the ones of an independent SCC after it that happened to finish first.
+ */
 public class ShapeFactory {
-  public @NotNull MutableMap<AnyDef, ShapeRecognition> discovered = MutableLinkedHashMap.of();
+  /** @param rank the rank of the factory that discovered the shape, see {@link #upTo} */
+  private record Discovered(@NotNull ShapeRecognition recog, int rank) { }
+
+  private final @NotNull MutableMap<AnyDef, Discovered> discovered;
+  /** The factory owning {@link #discovered}, which is also the lock of its views */
+  private final @NotNull ShapeFactory root;
+  /** {@code -1} for the root, whose shapes are seen by every view, and which sees every shape */
+  private final int rank;
+
+  public ShapeFactory() {
+    this.discovered = MutableLinkedHashMap.of();
+    this.root = this;
+    this.rank = -1;
+  }
+
+  private ShapeFactory(@NotNull ShapeFactory root, int rank) {
+    this.discovered = root.discovered;
+    this.root = root;
+    this.rank = rank;
+  }
+
+  /**
+   * @param rank the position of an SCC in the topological order
+   * @return a view of this factory which only sees the shapes discovered by the root
+   * and the views of a rank up to {@param rank}, and records the ones it discovers with {@param rank}
+   */
+  public @NotNull ShapeFactory upTo(int rank) { return new ShapeFactory(root, rank); }
+
+  private boolean sees(@NotNull Discovered found) { return root == this || found.rank <= rank; }
+
+  /** @return a snapshot of the shapes discovered so far */
+  public @NotNull ImmutableMap<AnyDef, ShapeRecognition> discovered() {
+    synchronized (root) {
+      var seen = MutableLinkedHashMap.<AnyDef, ShapeRecognition>of();
+      discovered.forEach((def, found) -> {
+        if (sees(found)) seen.put(def, found.recog);
+      });
+      return ImmutableMap.from(seen);
+    }
+  }
 
   public @NotNull ImmutableSeq<AyaShape.FindImpl> findImpl(@NotNull AyaShape shape) {
-    return discovered.view()
-      .map(AyaShape.FindImpl::new)
-      .filter(t -> t.recog().shape() == shape)
-      .toImmutableSeq();
+    synchronized (root) {
+      var impls = MutableList.<AyaShape.FindImpl>create();
+      discovered.forEach((def, found) -> {
+        if (sees(found) && found.recog.shape() == shape) impls.append(new AyaShape.FindImpl(def, found.recog));
+      });
+      return impls.toImmutableSeq();
+    }
   }
 
   public @NotNull Option<ShapeRecognition> find(@Nullable AnyDef def) {
     if (def == null) return Option.none();
-    return discovered.getOption(def);
+    synchronized (root) {
+      var found = discovered.getOrNull(def);
+      return found != null && sees(found) ? Option.some(found.recog) : Option.none();
+    }
   }
 
   /** @implNote assumption: defs can have only one shape */
@@ -36,16 +90,25 @@ public class ShapeFactory {
   }
 
   public void bonjour(@NotNull AnyDef def, @NotNull ShapeRecognition shape) {
-    discovered.put(def, shape);
+    synchronized (root) {
+      discovered.put(def, new Discovered(shape, rank));
+    }
   }
 
   /** Discovery of shaped literals */
   public void bonjour(@NotNull TyckDef def) {
-    for (var shape : AyaShape.values()) {
-      new ShapeMatcher(ImmutableMap.from(discovered)).match(shape, def)
-        .ifDefined(recog -> bonjour(def, recog));
+    synchronized (root) {
+      for (var shape : AyaShape.values()) {
+        new ShapeMatcher(discovered()).match(shape, def)
+          .ifDefined(recog -> bonjour(def, recog));
+      }
     }
   }
 
-  public void importAll(@NotNull ShapeFactory other) { discovered.putAll(other.discovered); }
+  public void importAll(@NotNull ShapeFactory other) {
+    var imported = other.discovered();
+    synchronized (root) {
+      imported.forEach(this::bonjour);
+    }
+  }
 }
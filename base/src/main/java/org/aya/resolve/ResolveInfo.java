@@ -13,6 +13,7 @@ import org.aya.syntax.concrete.stmt.BindBlock;
 import org.aya.syntax.concrete.stmt.ModuleName;
 import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.concrete.stmt.UseHide;
+import org.aya.syntax.concrete.stmt.decl.Decl;
 import org.aya.syntax.core.def.AnyDef;
 import org.aya.syntax.core.def.TyckAnyDef;
 import org.aya.syntax.ref.AnyVar;
@@ -40,6 +41,8 @@ import org.jetbrains.annotations.Nullable;
  *                     should not be confused with the {@code import} in {@link ModuleContext#importModuleContext}
  * @param reExports    re-exporting module, it is {@link ModuleName.Qualified} rather than {@link String}
  *                     cause we can re-export a module inside another module without import it.
+ * @param reused       the declarations that are the same as in the last tyck of this module, to the ones of that tyck.
+ *                     Their names are bound to the {@link DefVar}s of the latter, whose cores are reused
  */
 @Debug.Renderer(text = "modulePath().toString()")
 public record ResolveInfo(
@@ -50,7 +53,8 @@ public record ResolveInfo(
   @NotNull MutableMap<AnyDef, OpRenameInfo> opRename,
   @NotNull MutableMap<ModuleName.Qualified, ImportInfo> imports,
   @NotNull MutableMap<ModuleName.Qualified, UseHide> reExports,
-  @NotNull MutableGraph<TyckOrder> depGraph
+  @NotNull MutableGraph<TyckOrder> depGraph,
+  @NotNull MutableMap<Decl, Decl> reused
 ) {
   public ResolveInfo(
     @NotNull ModuleContext thisModule,
@@ -66,7 +70,7 @@ public record ResolveInfo(
     @NotNull AyaBinOpSet opSet
   ) {
     this(thisModule, primFactory, shapeFactory, opSet,
-      MutableMap.create(), MutableMap.create(), MutableMap.create(), MutableGraph.create());
+      MutableMap.create(), MutableMap.create(), MutableMap.create(), MutableGraph.create(), MutableMap.create());
   }
   public ExprTycker newTycker() { return newTycker(opSet.reporter); }
   public ExprTycker newTycker(@NotNull Reporter reporter) { return new ExprTycker(makeTyckState(), reporter); }
@@ -2,28 +2,109 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.resolve.module;
 
-import kala.collection.mutable.MutableMap;
-import kala.collection.mutable.MutableTreeMap;
 import org.aya.resolve.ResolveInfo;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.tyck.TyckOptions;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
 /**
+ * Thread-safe: a module requested by several threads is loaded once,
+ * by the first of them, and the others wait for it.
+ * A module requested again while loading it, that is, through an import cycle,
+ * is passed to the underlying loader like when loaded sequentially, instead of waiting for itself.
+ *
  * @author re-xyr
  */
 public class CachedModuleLoader<ML extends ModuleLoader> implements ModuleLoader {
-  private final @NotNull MutableMap<@NotNull String, ResolveInfo> cache = MutableTreeMap.of();
+  /** @param owner the thread loading the module */
+  private record Loading(@NotNull Thread owner, @NotNull CompletableFuture<ResolveInfo> future) { }
+  private final @NotNull ConcurrentHashMap<@NotNull String, Loading> cache;
+  /** The module each thread waits for, shared like {@link #cache} */
+  private final @NotNull ConcurrentHashMap<@NotNull Thread, Loading> waiting;
   public final @NotNull ML loader;
 
   @Override public @NotNull Reporter reporter() { return loader.reporter(); }
-  public CachedModuleLoader(@NotNull ML loader) { this.loader = loader; }
+  @Override public @Nullable Executor tyckExecutor() { return loader.tyckExecutor(); }
+  @Override public @NotNull TyckOptions tyckOptions() { return loader.tyckOptions(); }
+  public CachedModuleLoader(@NotNull ML loader) { this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), loader); }
+  private CachedModuleLoader(
+    @NotNull ConcurrentHashMap<@NotNull String, Loading> cache,
+    @NotNull ConcurrentHashMap<@NotNull Thread, Loading> waiting,
+    @NotNull ML loader
+  ) {
+    this.cache = cache;
+    this.waiting = waiting;
+    this.loader = loader;
+  }
+
+  /**
+   * @return a loader sharing the loaded modules with this one, but loading new ones with {@param newLoader},
+   * for example, one that reports to another reporter
+   */
+  public <L extends ModuleLoader> @NotNull CachedModuleLoader<L> share(@NotNull L newLoader) {
+    return new CachedModuleLoader<>(cache, waiting, newLoader);
+  }
 
   @Override public @Nullable ResolveInfo
   load(@NotNull ModulePath path, @NotNull ModuleLoader recurseLoader) {
     var qualified = path.toString();
-    return cache.getOrPut(qualified, () -> loader.load(path, recurseLoader));
+    var loading = new Loading(Thread.currentThread(), new CompletableFuture<>());
+    var loaded = cache.putIfAbsent(qualified, loading);
+    if (loaded != null) return await(loaded, path, recurseLoader);
+    try {
+      var info = loader.load(path, recurseLoader);
+      loading.future.complete(info);
+      return info;
+    } catch (Throwable e) {
+      // Not cached, like when loaded sequentially
+      cache.remove(qualified, loading);
+      loading.future.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /** Replace the loaded {@param path} with {@param info}, for example, its compiled version */
+  public void update(@NotNull ModulePath path, @NotNull ResolveInfo info) {
+    cache.put(path.toString(), new Loading(Thread.currentThread(), CompletableFuture.completedFuture(info)));
+  }
+
+  private @Nullable ResolveInfo await(@NotNull Loading loaded, @NotNull ModulePath path, @NotNull ModuleLoader recurseLoader) {
+    if (loaded.future.isDone()) return join(loaded);
+    var self = Thread.currentThread();
+    if (loaded.owner == self) return loader.load(path, recurseLoader);
+    // Registered before looking for a cycle, so of two threads closing one, at least the later sees it
+    var outer = waiting.put(self, loaded);
+    try {
+      // A cycle among other threads is theirs to break
+      var visited = new HashSet<Thread>();
+      for (var owner = loaded.owner; visited.add(owner); ) {
+        if (owner == self) return loader.load(path, recurseLoader);
+        var next = waiting.get(owner);
+        if (next == null) break;
+        owner = next.owner;
+      }
+      return join(loaded);
+    } finally {
+      if (outer == null) waiting.remove(self);
+      else waiting.put(self, outer);
+    }
+  }
+
+  private static @Nullable ResolveInfo join(@NotNull Loading loaded) {
+    try {
+      return loaded.future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) throw cause;
+      throw e;
+    }
   }
 
   @Override public boolean existsFileLevelModule(@NotNull ModulePath path) {
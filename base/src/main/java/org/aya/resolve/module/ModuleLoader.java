@@ -11,6 +11,7 @@ import org.aya.resolve.context.ModuleContext;
 import org.aya.resolve.salt.AyaBinOpSet;
 import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.tyck.TyckOptions;
 import org.aya.tyck.order.AyaOrgaTycker;
 import org.aya.tyck.order.AyaSccTycker;
 import org.aya.tyck.tycker.Problematic;
@@ -19,6 +20,8 @@ import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.Executor;
+
 /**
  * @author re-xyr
  */
@@ -36,10 +39,10 @@ public interface ModuleLoader extends Problematic {
   tyckModule(ResolveInfo resolveInfo, ModuleCallback<E> onTycked) throws E {
     var SCCs = resolveInfo.depGraph().topologicalOrder();
     var delayedReporter = new DelayedReporter(reporter());
-    var sccTycker = new AyaOrgaTycker(AyaSccTycker.create(resolveInfo, delayedReporter), resolveInfo);
+    var sccTycker = new AyaOrgaTycker(AyaSccTycker.create(resolveInfo, delayedReporter, tyckOptions()), resolveInfo);
     // in case we have un-messaged TyckException
     try (delayedReporter) {
-      SCCs.forEach(sccTycker::tyckSCC);
+      sccTycker.tyckSCCs(SCCs, tyckExecutor());
     } finally {
       if (onTycked != null) onTycked.onModuleTycked(
         resolveInfo, sccTycker.sccTycker().wellTyped().toImmutableSeq());
@@ -47,6 +50,15 @@ public interface ModuleLoader extends Problematic {
     return resolveInfo;
   }
 
+  /**
+   * @return the executor on which the independent SCCs of a module are tycked concurrently,
+   * or null to tyck them sequentially
+   */
+  default @Nullable Executor tyckExecutor() { return null; }
+
+  /** @return the options of the tycker of the modules */
+  default @NotNull TyckOptions tyckOptions() { return TyckOptions.DEFAULT; }
+
   /**
    * Resolve a certain module
    *
@@ -20,7 +20,7 @@ public final class Desalt implements PosedUnaryOperator<Expr> {
   private @Nullable Integer levelVar(@NotNull WithPos<Expr> expr) {
     return switch (expr.data()) {
       case Expr.BinOpSeq _ -> levelVar(expr.descent(this));
-      case Expr.LitInt i -> i.integer();
+      case Expr.LitInt i when i.integer() <= Integer.MAX_VALUE -> (int) i.integer();
       default -> null;
     };
   }
@@ -106,8 +106,9 @@ public record StmtPreResolver(@NotNull ModuleLoader loader, @NotNull ResolveInfo
       case DataDecl decl -> {
         var ctx = resolveTopLevelDecl(decl, context);
         var innerCtx = resolveChildren(decl, ctx, d -> d.body.view(), (con, mCtx) -> {
-          setupModule(mCtx, con.ref);
-          mCtx.defineSymbol(con.ref(), Stmt.Accessibility.Public, con.sourcePos());
+          var ref = ref(con);
+          setupModule(mCtx, ref);
+          mCtx.defineSymbol(ref, Stmt.Accessibility.Public, con.sourcePos());
         });
         yield new ResolvingStmt.TopDecl(decl, innerCtx);
       }
@@ -176,10 +177,17 @@ public record StmtPreResolver(@NotNull ModuleLoader loader, @NotNull ResolveInfo
   private <D extends Decl> @NotNull ModuleContext
   resolveTopLevelDecl(@NotNull D decl, @NotNull ModuleContext context) {
     var ctx = decl.isExample ? exampleContext(context) : context;
-    setupModule(ctx, decl.ref());
-    ctx.defineSymbol(decl.ref(), decl.accessibility(), decl.sourcePos());
+    var ref = ref(decl);
+    setupModule(ctx, ref);
+    ctx.defineSymbol(ref, decl.accessibility(), decl.sourcePos());
     return ctx;
   }
+
+  /** @return the {@link DefVar} to bind the name of {@param decl} to, see {@link ResolveInfo#reused()} */
+  private @NotNull DefVar<?, ?> ref(@NotNull Decl decl) {
+    return resolveInfo.reused().getOrDefault(decl, decl).ref();
+  }
+
   private void setupModule(ModuleContext ctx, DefVar<?, ?> ref) {
     ref.module = new QPath(ctx.modulePath(), resolveInfo.modulePath().size());
   }
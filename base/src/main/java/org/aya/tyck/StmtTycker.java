@@ -9,6 +9,7 @@ import kala.control.Option;
 import org.aya.generic.Modifier;
 import org.aya.generic.term.DTKind;
 import org.aya.generic.term.SortKind;
+import org.aya.normalize.DeltaHeight;
 import org.aya.normalize.Finalizer;
 import org.aya.pretty.doc.Doc;
 import org.aya.primitive.PrimFactory;
@@ -50,18 +51,20 @@ import static org.aya.tyck.tycker.TeleTycker.loadTele;
 public record StmtTycker(
   @NotNull SuppressingReporter reporter,
   @NotNull ShapeFactory shapeFactory,
-  @NotNull PrimFactory primFactory
+  @NotNull PrimFactory primFactory,
+  @NotNull TyckOptions options
 ) implements Problematic {
   private @NotNull ExprTycker mkTycker() {
-    return new ExprTycker(new TyckState(shapeFactory, primFactory),
+    return new ExprTycker(new TyckState(shapeFactory, primFactory, options),
       new MapLocalCtx(), new LocalLet(), reporter);
   }
   public StmtTycker(
     @NotNull Reporter reporter,
     @NotNull ShapeFactory shapeFactory,
-    @NotNull PrimFactory primFactory
+    @NotNull PrimFactory primFactory,
+    @NotNull TyckOptions options
   ) {
-    this(new SuppressingReporter(reporter, MutableList.create()), shapeFactory, primFactory);
+    this(new SuppressingReporter(reporter, MutableList.create()), shapeFactory, primFactory, options);
   }
   public void suppress(@NotNull Decl decl) {
     decl.suppresses.forEach(suppress -> {
@@ -85,7 +88,8 @@ public record StmtTycker(
         var fnRef = fnDecl.ref;
         assert fnRef.signature != null;
 
-        var factory = FnDef.factory(body -> new FnDef(fnRef, fnDecl.modifiers, body));
+        var factory = FnDef.factory(body -> new FnDef(fnRef, fnDecl.modifiers, body, DeltaHeight.measure(body),
+          FnDef.compile(body, fnDecl.modifiers.contains(Modifier.Overlap))));
         var teleVars = fnDecl.telescope.map(Expr.Param::ref);
 
         yield switch (fnDecl.body) {
@@ -0,0 +1,19 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import org.aya.normalize.ReductionProfiler;
+import org.aya.syntax.core.term.TermInterner;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Options shared by the {@link TyckState}s of a compilation.
+ *
+ * @param interning whether the terms compared by {@link org.aya.unify.TermComparator} are hash-consed,
+ *                  see {@link TermInterner}
+ * @param profiler  the profiler recording the reductions of the compilation, null if disabled
+ */
+public record TyckOptions(boolean interning, @Nullable ReductionProfiler profiler) {
+  public static final @NotNull TyckOptions DEFAULT = new TyckOptions(false, null);
+}
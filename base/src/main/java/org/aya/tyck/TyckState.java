@@ -2,51 +2,87 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.tyck;
 
+import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableMap;
+import kala.collection.mutable.MutableSet;
 import kala.collection.mutable.MutableStack;
 import org.aya.generic.AyaDocile;
+import org.aya.normalize.Normalizer;
+import org.aya.normalize.ReductionProfiler;
+import org.aya.normalize.WhnfCache;
 import org.aya.pretty.doc.Doc;
 import org.aya.primitive.PrimFactory;
 import org.aya.primitive.ShapeFactory;
 import org.aya.syntax.core.term.FreeTerm;
 import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TermInterner;
 import org.aya.syntax.core.term.call.MetaCall;
 import org.aya.syntax.core.term.xtt.DimTerm;
 import org.aya.syntax.ref.LocalCtx;
 import org.aya.syntax.ref.LocalVar;
 import org.aya.syntax.ref.MetaVar;
 import org.aya.tyck.error.MetaVarError;
+import org.aya.unify.ConversionCache;
 import org.aya.unify.Unifier;
 import org.aya.util.DynamicForest;
 import org.aya.util.Ordering;
 import org.aya.util.error.Panic;
 import org.aya.util.error.SourcePos;
-import org.aya.util.error.WithPos;
 import org.aya.util.prettier.PrettierOptions;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 
 public final class TyckState {
   private final @NotNull MutableList<Eqn> eqns = MutableList.create();
-  private final @NotNull MutableList<WithPos<MetaVar>> activeMetas = MutableList.create();
+  /** Postponed equations, indexed by the meta on their left-hand side, which blocks them. */
+  private final @NotNull MutableMap<MetaVar, MutableList<Eqn>> blockedEqns = MutableMap.create();
+  /** The unsolved metas mentioned in {@link #eqns}. */
+  private final @NotNull MutableSet<MetaVar> activeMetas = MutableSet.create();
+  /** The metas in {@link #activeMetas} solved since the last {@link #simplify}, in the order they are solved. */
+  private final @NotNull MutableList<MetaVar> solvedActiveMetas = MutableList.create();
   public final @NotNull MutableMap<MetaVar, Term> solutions = MutableMap.create();
   public final @NotNull MutableStack<LocalVar> classThis = MutableStack.create();
   public final @NotNull ShapeFactory shapeFactory;
   public final @NotNull PrimFactory primFactory;
+  /** @see TyckOptions#profiler() */
+  public final @Nullable ReductionProfiler profiler;
   private final @NotNull MutableMap<LocalVar, DynamicForest.Handle> connections = MutableMap.create();
+  /**
+   * Hash-consing of the terms being compared, null if disabled.
+   *
+   * @see TyckOptions#interning()
+   * @see org.aya.unify.TermComparator#compare
+   */
+  private final @Nullable TermInterner interner;
+  public final @NotNull WhnfCache whnfCache = new WhnfCache(WhnfCache.DEFAULT_CAPACITY);
+  public final @NotNull ConversionCache conversionCache = new ConversionCache(ConversionCache.DEFAULT_CAPACITY);
+  /** @param unsolved the metas in {@param solution}, unsolved when it was computed */
+  private record ZonkedSolution(@NotNull Term solution, @NotNull ImmutableSeq<MetaVar> unsolved) { }
+  /** @see #zonkedSolution */
+  private final @NotNull MutableMap<MetaVar, ZonkedSolution> zonkedSolutions = MutableMap.create();
+  /** @see #generation() */
+  private int generation = 0;
 
   public static final DynamicForest.Handle I0 = DynamicForest.create();
   public static final DynamicForest.Handle I1 = DynamicForest.create();
 
   public TyckState(@NotNull ShapeFactory shapeFactory, @NotNull PrimFactory primFactory) {
+    this(shapeFactory, primFactory, TyckOptions.DEFAULT);
+  }
+
+  public TyckState(@NotNull ShapeFactory shapeFactory, @NotNull PrimFactory primFactory, @NotNull TyckOptions options) {
     this.shapeFactory = shapeFactory;
     this.primFactory = primFactory;
+    this.interner = options.interning() ? new TermInterner(TermInterner.DEFAULT_CAPACITY) : null;
+    this.profiler = options.profiler();
   }
 
   private @Nullable DynamicForest.Handle computeHandle(@NotNull Term term, boolean create) {
@@ -72,18 +108,48 @@ public final class TyckState {
     var r = computeHandle(rhs, true);
     if (l == null || r == null) throw new Panic("Unsupported connection, need error report");
     l.connect(r);
+    // coercions may reduce differently now
+    whnfCache.clear();
+    conversionCache.clear();
   }
 
   public void disconnect(@NotNull Term lhs, @NotNull Term rhs) {
     var l = computeHandle(lhs, false);
     var r = computeHandle(rhs, false);
-    if (l != null && r != null) l.disconnect(r);
+    if (l != null && r != null) {
+      l.disconnect(r);
+      whnfCache.clear();
+      conversionCache.clear();
+    }
   }
 
   public void removeConnection(@NotNull LocalVar var) { connections.remove(var); }
 
+  public @Nullable TermInterner interner() { return interner; }
+  /** @return the canonical representative of {@param term} if interning is enabled, otherwise {@param term} */
+  public @NotNull Term intern(@NotNull Term term) {
+    return interner == null ? term : interner.intern(term);
+  }
+
   @ApiStatus.Internal
-  public void solve(MetaVar meta, Term candidate) { solutions.put(meta, candidate); }
+  public void solve(MetaVar meta, Term candidate) {
+    solutions.put(meta, candidate);
+    if (activeMetas.remove(meta)) solvedActiveMetas.append(meta);
+    whnfCache.invalidate(meta);
+    generation++;
+  }
+
+  /**
+   * @return a number that changes whenever a meta is solved (or the solutions are cleared),
+   * so the results computed from the solutions can tell they are outdated
+   * @see org.aya.normalize.Finalizer.Zonk
+   */
+  public int generation() { return generation; }
+
+  /** Weak head normalize {@param term}, memoized in {@link #whnfCache}. */
+  public @NotNull Term whnf(@NotNull Term term) {
+    return whnfCache.apply(term, new Normalizer(this));
+  }
 
   private boolean solveEqn(@NotNull Reporter reporter, @NotNull Eqn eqn, boolean allowDelay) {
     var unifier = new Unifier(this, eqn.localCtx, reporter, eqn.pos, eqn.cmp, allowDelay);
@@ -115,38 +181,69 @@ public final class TyckState {
   }
 
   public @NotNull Term computeSolution(@NotNull MetaCall meta, @NotNull UnaryOperator<Term> f) {
-    return solutions.getOption(meta.ref())
-      .map(sol -> f.apply(MetaCall.app(sol, meta.args(), meta.ref().ctxSize())))
-      .getOrDefault(meta);
+    var solution = zonkedSolution(meta.ref());
+    return solution == null ? meta : f.apply(MetaCall.app(solution, meta.args(), meta.ref().ctxSize()));
+  }
+
+  /**
+   * The solution of {@param meta} with the solved metas in it replaced by their (zonked) solutions,
+   * so a chain of metas solved to other metas is walked once, like path compression in union-find.
+   *
+   * @return null if {@param meta} is unsolved
+   */
+  public @Nullable Term zonkedSolution(@NotNull MetaVar meta) {
+    var cached = zonkedSolutions.getOrNull(meta);
+    if (cached != null && cached.unsolved.noneMatch(solutions::containsKey)) return cached.solution;
+    // Continue from the cached solution, where the metas solved earlier are already replaced
+    var solution = cached != null ? cached.solution : solutions.getOrNull(meta);
+    if (solution == null) return null;
+    var unsolved = MutableList.<MetaVar>create();
+    var zonked = inlineSolutions(solution, unsolved);
+    zonkedSolutions.put(meta, new ZonkedSolution(zonked, unsolved.toImmutableSeq()));
+    return zonked;
+  }
+
+  private @NotNull Term inlineSolutions(@NotNull Term term, @NotNull MutableList<MetaVar> unsolved) {
+    if (!(term instanceof MetaCall(var ref, var args)))
+      return term.descent(t -> inlineSolutions(t, unsolved));
+    var inlinedArgs = args.map(arg -> inlineSolutions(arg, unsolved));
+    var solution = zonkedSolution(ref);
+    if (solution == null) {
+      if (!unsolved.contains(ref)) unsolved.append(ref);
+      return new MetaCall(ref, inlinedArgs);
+    }
+    zonkedSolutions.get(ref).unsolved.forEach(meta -> {
+      if (!unsolved.contains(meta)) unsolved.append(meta);
+    });
+    return MetaCall.app(solution, inlinedArgs, ref.ctxSize());
   }
 
   /** @return true if <code>this.eqns</code> and <code>this.activeMetas</code> are mutated. */
   private boolean simplify(@NotNull Reporter reporter) {
-    var removingMetas = MutableList.<WithPos<MetaVar>>create();
-    for (var activeMeta : activeMetas) {
-      var v = activeMeta.data();
-      if (solutions.containsKey(v)) {
-        eqns.retainIf(eqn -> {
-          // If the blocking meta is solved, we can check again
-          if (eqn.lhs.ref() == v) {
-            solveEqn(reporter, eqn, true);
-            return false;
-          } else return true;
-        });
-        removingMetas.append(activeMeta);
-      }
+    if (solvedActiveMetas.isEmpty()) return false;
+    var solved = solvedActiveMetas.toImmutableSeq();
+    solvedActiveMetas.clear();
+    // If the blocking meta is solved, we can check again
+    var woken = solved.flatMap(meta -> blockedEqns.remove(meta).getOrDefault(MutableList.create()));
+    if (woken.isNotEmpty()) {
+      var wokenSet = Collections.newSetFromMap(new IdentityHashMap<Eqn, Boolean>());
+      woken.forEach(wokenSet::add);
+      eqns.retainIf(eqn -> !wokenSet.contains(eqn));
+      woken.forEach(eqn -> solveEqn(reporter, eqn, true));
     }
-    activeMetas.removeIf(removingMetas::contains);
-    return removingMetas.isNotEmpty();
+    return true;
   }
 
   public void addEqn(Eqn eqn) {
     eqns.append(eqn);
-    var currentActiveMetas = activeMetas.size();
+    blockedEqns.getOrPut(eqn.lhs.ref(), MutableList::create).append(eqn);
+    var anyActive = new boolean[]{false};
     var consumer = new Consumer<Term>() {
       @Override public void accept(Term term) {
-        if (term instanceof MetaCall hole && !solutions.containsKey(hole.ref()))
-          activeMetas.append(new WithPos<>(eqn.pos, hole.ref()));
+        if (term instanceof MetaCall hole && !solutions.containsKey(hole.ref())) {
+          activeMetas.add(hole.ref());
+          anyActive[0] = true;
+        }
         term.descent(tm -> {
           accept(tm);
           return tm;
@@ -155,13 +252,20 @@ public final class TyckState {
     };
     consumer.accept(eqn.lhs);
     consumer.accept(eqn.rhs);
-    assert activeMetas.sizeGreaterThan(currentActiveMetas) : "Adding a bad equation";
+    assert anyActive[0] : "Adding a bad equation";
   }
 
   public void clearTmp() {
     eqns.clear();
+    blockedEqns.clear();
     activeMetas.clear();
+    solvedActiveMetas.clear();
     solutions.clear();
+    zonkedSolutions.clear();
+    generation++;
+    whnfCache.clear();
+    conversionCache.clear();
+    if (interner != null) interner.clear();
   }
 
   public record Eqn(
@@ -34,7 +34,7 @@ public sealed interface PrimError extends TyckError {
     }
   }
 
-  record BadInterval(@NotNull SourcePos sourcePos, int integer) implements PrimError {
+  record BadInterval(@NotNull SourcePos sourcePos, long integer) implements PrimError {
     @Override public @NotNull Doc describe(@NotNull PrettierOptions options) {
       return Doc.sep(Doc.english("The point"),
         Doc.code(String.valueOf(integer)),
@@ -2,12 +2,25 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.tyck.order;
 
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableSet;
 import org.aya.generic.stmt.TyckOrder;
 import org.aya.resolve.ResolveInfo;
+import org.aya.syntax.concrete.Expr;
+import org.aya.syntax.concrete.stmt.Stmt;
+import org.aya.syntax.concrete.stmt.StmtVisitor;
+import org.aya.syntax.concrete.stmt.decl.DataDecl;
+import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.BufferReporter;
 import org.aya.util.terck.MutableGraph;
 import org.aya.util.tyck.OrgaTycker;
+import org.aya.util.tyck.SccScheduler;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Incremental and non-stopping compiler for SCCs.
@@ -28,4 +41,62 @@ public record AyaOrgaTycker(
   @Override public @NotNull Iterable<TyckOrder> collectUsageOf(@NotNull TyckOrder failed) {
     return usageGraph.suc(failed);
   }
+
+  /**
+   * Tyck the SCCs in the topological order {@param sccs}, the independent ones concurrently on {@param executor}.
+   * Every SCC is tycked by its own {@link AyaSccTycker}, whose problems and well-typed definitions
+   * are merged into {@link #sccTycker()} in the order of {@param sccs}, like when tycked sequentially.
+   *
+   * @param executor null to tyck sequentially
+   */
+  public void tyckSCCs(@NotNull ImmutableSeq<ImmutableSeq<TyckOrder>> sccs, @Nullable Executor executor) {
+    if (executor == null || sccs.sizeLessThanOrEquals(1)) {
+      sccs.forEach(this::tyckSCC);
+      return;
+    }
+    var info = sccTycker.resolveInfo();
+    // Literals are typed with the shapes discovered so far, which is not a dependency in the graph,
+    // so an SCC using them waits for the SCCs before it that may discover a shape, like in a sequential run,
+    // and only sees those through its view of the ShapeFactory, not the ones of the SCCs after it
+    var shapeDeps = new HashMap<TyckOrder, ImmutableSeq<TyckOrder>>();
+    var shaped = MutableList.<TyckOrder>create();
+    sccs.forEach(scc -> {
+      if (scc.anyMatch(AyaOrgaTycker::usesLiterals)) shapeDeps.put(scc.getFirst(), shaped.toImmutableSeq());
+      if (scc.anyMatch(order -> order.unit() instanceof DataDecl)) shaped.append(scc.getFirst());
+    });
+    var buffers = new BufferReporter[sccs.size()];
+    var tyckers = new AyaSccTycker[sccs.size()];
+    var done = new boolean[sccs.size()];
+    try {
+      SccScheduler.run(sccs, order -> info.depGraph().suc(order)
+        .concat(shapeDeps.getOrDefault(order, ImmutableSeq.empty()).view()), (scc, i) -> {
+        buffers[i] = new BufferReporter();
+        tyckers[i] = AyaSccTycker.create(info, sccTycker.tycker().shapeFactory().upTo(i),
+          buffers[i], sccTycker.tycker().options());
+        tyckSCC(tyckers[i], scc);
+        done[i] = true;
+      }, executor);
+    } finally {
+      // Stop at the first crashed SCC, where the sequential tycking would have stopped
+      for (var i = 0; i < sccs.size() && tyckers[i] != null; i++) {
+        buffers[i].problems().forEach(sccTycker.reporter()::report);
+        sccTycker.wellTyped().appendAll(tyckers[i].wellTyped());
+        if (!done[i]) break;
+      }
+    }
+  }
+
+  /** @return whether {@param order} contains literals typed with {@link org.aya.primitive.ShapeFactory#findImpl} */
+  private static boolean usesLiterals(@NotNull TyckOrder order) {
+    if (!(order.unit() instanceof Stmt stmt)) return false;
+    var found = new boolean[]{false};
+    new StmtVisitor() {
+      @Override public void visitExpr(@NotNull SourcePos pos, @NotNull Expr expr) {
+        if (expr instanceof Expr.LitInt || expr instanceof Expr.Array arr && arr.arrayBlock().isRight())
+          found[0] = true;
+        else StmtVisitor.super.visitExpr(pos, expr);
+      }
+    }.accept(stmt);
+    return found[0];
+  }
 }
@@ -9,6 +9,7 @@ import org.aya.generic.InterruptException;
 import org.aya.generic.Modifier;
 import org.aya.generic.stmt.TyckOrder;
 import org.aya.generic.stmt.TyckUnit;
+import org.aya.primitive.ShapeFactory;
 import org.aya.resolve.ResolveInfo;
 import org.aya.syntax.concrete.stmt.decl.Decl;
 import org.aya.syntax.concrete.stmt.decl.FnBody;
@@ -21,6 +22,7 @@ import org.aya.syntax.ref.DefVar;
 import org.aya.terck.BadRecursion;
 import org.aya.terck.CallResolver;
 import org.aya.tyck.StmtTycker;
+import org.aya.tyck.TyckOptions;
 import org.aya.tyck.error.TyckOrderError;
 import org.aya.tyck.tycker.Problematic;
 import org.aya.util.error.Panic;
@@ -45,9 +47,17 @@ public record AyaSccTycker(
   @NotNull ResolveInfo resolveInfo,
   @NotNull MutableList<@NotNull TyckDef> wellTyped
 ) implements SccTycker<TyckOrder, AyaSccTycker.SccTyckingFailed>, Problematic {
-  public static @NotNull AyaSccTycker create(ResolveInfo info, @NotNull Reporter outReporter) {
+  public static @NotNull AyaSccTycker create(ResolveInfo info, @NotNull Reporter outReporter, @NotNull TyckOptions options) {
+    return create(info, info.shapeFactory(), outReporter, options);
+  }
+
+  /** @param shapeFactory {@link ResolveInfo#shapeFactory()} or a view of it */
+  public static @NotNull AyaSccTycker create(
+    ResolveInfo info, @NotNull ShapeFactory shapeFactory,
+    @NotNull Reporter outReporter, @NotNull TyckOptions options
+  ) {
     var counting = CountingReporter.delegate(outReporter);
-    var stmt = new StmtTycker(counting, info.shapeFactory(), info.primFactory());
+    var stmt = new StmtTycker(counting, shapeFactory, info.primFactory(), options);
     return new AyaSccTycker(stmt, counting, info, MutableList.create());
   }
 
@@ -93,6 +103,7 @@ public record AyaSccTycker(
   }
 
   private void checkUnit(@NotNull TyckOrder order) {
+    var reused = order.unit() instanceof Decl decl && resolveInfo.reused().containsKey(decl);
     if (order.unit() instanceof FnDecl fn && fn.body instanceof FnBody.ExprBody) {
       if (selfReferencing(resolveInfo.depGraph(), order)) {
         fail(new BadRecursion(fn.sourcePos(), fn.ref, null));
@@ -101,7 +112,7 @@ public record AyaSccTycker(
       check(new TyckOrder.Body(fn));
     } else {
       check(order);
-      if (order instanceof TyckOrder.Body body) terck(ImmutableSeq.of(body));
+      if (!reused && order instanceof TyckOrder.Body body) terck(ImmutableSeq.of(body));
     }
   }
   private void terck(@NotNull ImmutableSeq<TyckOrder.Body> units) {
@@ -143,13 +154,14 @@ public record AyaSccTycker(
   }
 
   private void checkHeader(@NotNull TyckOrder order, @NotNull TyckUnit stmt) {
-    if (stmt instanceof TeleDecl decl) tycker.checkHeader(decl);
+    if (stmt instanceof TeleDecl decl && !resolveInfo.reused().containsKey(decl)) tycker.checkHeader(decl);
     if (reporter.anyError()) throw new SccTyckingFailed(ImmutableSeq.of(order));
   }
 
   private void checkBody(@NotNull TyckOrder order, @NotNull TyckUnit stmt) {
     if (stmt instanceof Decl decl) {
-      var def = tycker.check(decl);
+      var reused = resolveInfo.reused().getOrNull(decl);
+      TyckDef def = reused != null ? reused.ref().core : tycker.check(decl);
       if (!decl.isExample) {
         // In case I'm not an example, remember me and recognize my shape
         wellTyped.append(def);
@@ -110,7 +110,9 @@ public record PatClassifier(
         var lits = clauses.mapNotNull(cl -> cl.pat() instanceof Pat.ShapedInt i ?
           new Indexed<>(i, cl.ix()) : null);
         var binds = Indexed.indices(clauses.filter(cl -> cl.pat() instanceof Pat.Bind));
-        if (clauses.isNotEmpty() && lits.size() + binds.size() == clauses.size()) {
+        // The class of the numbers larger than every literal needs the largest one plus one to be a long
+        if (clauses.isNotEmpty() && lits.size() + binds.size() == clauses.size()
+          && lits.noneMatch(i -> i.pat().repr() == Long.MAX_VALUE)) {
           // There is only literals and bind patterns, no constructor patterns
           var classes = ImmutableSeq.from(lits.collect(
               Collectors.groupingBy(i -> i.pat().repr())).values())
@@ -25,7 +25,7 @@ import java.util.function.Supplier;
 public interface Stateful {
   @NotNull TyckState state();
   default @NotNull Term whnf(@NotNull Term term) {
-    return new Normalizer(state()).apply(term);
+    return state().whnf(term);
   }
   /**
    * Does not validate solution.
@@ -0,0 +1,107 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.unify;
+
+import org.aya.syntax.core.term.MetaPatTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TermInterner;
+import org.aya.syntax.core.term.call.MetaCall;
+import org.aya.syntax.core.term.repr.MetaLitTerm;
+import org.aya.tyck.TyckState;
+import org.aya.util.Ordering;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded (LRU) set of the successful {@link TermComparator#compare} calls, owned by a {@link TyckState}.
+ * Only the outermost calls are remembered, the nested ones neither look up nor fill the cache,
+ * so computing the keys is linear in the size of each problem.
+ * <p>
+ * Only comparisons between terms without unsolved metas are remembered, because those
+ * do not solve anything and cannot have a different outcome later in the same definition.
+ * The terms are compared structurally, which is just a reference comparison for the
+ * canonical terms when {@link org.aya.tyck.TyckOptions#interning()} is on.
+ */
+public final class ConversionCache {
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  /**
+   * @param mode the flags of the comparator changing its outcome, see {@link TermComparator#mode()},
+   *             as a comparison may succeed in one mode and not in another
+   */
+  public record Key(
+    @NotNull Term lhs, @NotNull Term rhs, @Nullable Term type,
+    @NotNull Ordering cmp, int mode, int hash
+  ) {
+    @Override public int hashCode() { return hash; }
+    @Override public boolean equals(@Nullable Object o) {
+      return o instanceof Key key && hash == key.hash && cmp == key.cmp && mode == key.mode
+        && same(lhs, key.lhs) && same(rhs, key.rhs) && (type == key.type || type != null && same(type, key.type));
+    }
+    private static boolean same(@NotNull Term a, @Nullable Term b) { return a == b || a.equals(b); }
+  }
+
+  private final @NotNull LinkedHashMap<Key, Key> table;
+  private int hits = 0, misses = 0;
+
+  public ConversionCache(int capacity) {
+    table = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<Key, Key> eldest) { return size() > capacity; }
+    };
+  }
+
+  /** @return null if the comparison of {@param lhs} and {@param rhs} cannot be cached */
+  public @Nullable Key key(
+    @NotNull TyckState state, @NotNull Term lhs, @NotNull Term rhs,
+    @Nullable Term type, @NotNull Ordering cmp, int mode
+  ) {
+    if (!metaFree(state, lhs) || !metaFree(state, rhs) || (type != null && !metaFree(state, type))) return null;
+    var interner = state.interner();
+    var hash = Objects.hash(hashOf(interner, lhs), hashOf(interner, rhs),
+      type == null ? 0 : hashOf(interner, type), cmp, mode);
+    return new Key(lhs, rhs, type, cmp, mode, hash);
+  }
+
+  private static int hashOf(@Nullable TermInterner interner, @NotNull Term term) {
+    return interner == null ? term.hashCode() : interner.hashOf(term);
+  }
+
+  /** @return whether {@param term} mentions no unsolved meta, including in the solutions of the solved ones */
+  private static boolean metaFree(@NotNull TyckState state, @NotNull Term term) {
+    switch (term) {
+      case MetaPatTerm _, MetaLitTerm _ -> {
+        return false;
+      }
+      case MetaCall call -> {
+        // The solved metas in the zonked solution are inlined already, so this terminates
+        var solution = state.zonkedSolution(call.ref());
+        if (solution == null || !metaFree(state, solution)) return false;
+      }
+      default -> { }
+    }
+    var free = new boolean[]{true};
+    term.descent(t -> {
+      if (free[0] && !metaFree(state, t)) free[0] = false;
+      return t;
+    });
+    return free[0];
+  }
+
+  public boolean contains(@NotNull Key key) {
+    var found = table.get(key) != null;
+    if (found) hits++;
+    else misses++;
+    return found;
+  }
+
+  public void add(@NotNull Key key) { table.put(key, key); }
+  public void clear() { table.clear(); }
+
+  public int hits() { return hits; }
+  public int misses() { return misses; }
+  public int size() { return table.size(); }
+}
@@ -6,6 +6,8 @@ import kala.collection.immutable.ImmutableSeq;
 import org.aya.generic.Renamer;
 import org.aya.generic.term.DTKind;
 import org.aya.generic.term.SortKind;
+import org.aya.normalize.DeltaHeight;
+import org.aya.normalize.Normalizer;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.syntax.core.term.*;
 import org.aya.syntax.core.term.call.*;
@@ -41,7 +43,11 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
   protected @NotNull Ordering cmp;
   // If false, we refrain from solving meta, and return false if we encounter a non-identical meta.
   private boolean solveMeta = true;
+  /** The most unfoldings of {@link #unfoldHigher} in one comparison */
+  private static final int UNFOLD_LIMIT = 32;
   private @Nullable FailureData failure = null;
+  /** Whether a {@link #compare} is running, so the nested ones do not intern their terms again. */
+  private boolean comparing = false;
   final @NotNull Renamer nameGen = new Renamer();
 
   public TermComparator(
@@ -61,6 +67,12 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
    */
   protected abstract @Nullable Term doSolveMeta(@NotNull MetaCall meta, @NotNull Term rhs, @Nullable Term type);
 
+  /**
+   * @return the flags changing the outcome of a comparison, so the {@link ConversionCache}
+   * does not reuse the results of one mode in another
+   */
+  protected int mode() { return solveMeta ? 1 : 0; }
+
   protected @Nullable Term solveMeta(@NotNull MetaCall meta, @NotNull Term rhs, @Nullable Term type) {
     var result = !solveMeta ? null : doSolveMeta(meta, whnf(rhs), type);
     if (result == null) fail(meta, rhs);
@@ -111,6 +123,28 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
       lhs.ref().signature().lift(Math.min(lhs.ulift(), rhs.ulift())));
   }
 
+  /**
+   * Lazy delta reduction: unfold the call with the larger {@link DeltaHeight} once
+   * (or both, if they have the same height), hoping to reach calls to the same function,
+   * so {@link #compareCallApprox} can compare the arguments instead of the full unfoldings.
+   *
+   * @return null if neither side unfolds
+   */
+  private @Nullable Pair<Term, Term> unfoldHigher(@NotNull FnCall lhs, @NotNull FnCall rhs) {
+    var lHeight = DeltaHeight.of(lhs.ref());
+    var rHeight = DeltaHeight.of(rhs.ref());
+    var normalizer = new Normalizer(state);
+    var l = lHeight >= rHeight ? normalizer.unfoldOnce(lhs) : null;
+    var r = rHeight >= lHeight ? normalizer.unfoldOnce(rhs) : null;
+    // The higher side is stuck, try the other one
+    if (l == null && r == null) {
+      if (lHeight < rHeight) l = normalizer.unfoldOnce(lhs);
+      else if (rHeight < lHeight) r = normalizer.unfoldOnce(rhs);
+      if (l == null && r == null) return null;
+    }
+    return new Pair<>(l == null ? lhs : l, r == null ? rhs : r);
+  }
+
   private <R> R swapped(@NotNull Supplier<R> callback) {
     cmp = cmp.invert();
     var result = callback.get();
@@ -124,13 +158,59 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
    * @return true if they are 'the same' under {@param type}, false otherwise.
    */
   public boolean compare(@NotNull Term preLhs, @NotNull Term preRhs, @Nullable Term type) {
+    if (comparing) return compareInterned(preLhs, preRhs, type);
+    // With interning, structurally equal terms are identical, and so are their subterms,
+    // so it is enough to intern once per problem
+    comparing = true;
+    try {
+      return compareCached(state.intern(preLhs), state.intern(preRhs), type);
+    } finally {
+      comparing = false;
+    }
+  }
+
+  /**
+   * Only the outermost comparison of a problem is looked up in the {@link ConversionCache},
+   * because computing the key takes the whole terms into account.
+   */
+  private boolean compareCached(@NotNull Term lhs, @NotNull Term rhs, @Nullable Term type) {
+    if (lhs == rhs || lhs instanceof ErrorTerm || rhs instanceof ErrorTerm) return true;
+    var cache = state.conversionCache;
+    var key = cache.key(state, lhs, rhs, type, cmp, mode());
+    if (key == null) return compareUncached(lhs, rhs, type);
+    if (cache.contains(key)) return true;
+    var result = compareUncached(lhs, rhs, type);
+    if (result) cache.add(key);
+    return result;
+  }
+
+  private boolean compareInterned(@NotNull Term preLhs, @NotNull Term preRhs, @Nullable Term type) {
     if (preLhs == preRhs || preLhs instanceof ErrorTerm || preRhs instanceof ErrorTerm) return true;
+    return compareUncached(preLhs, preRhs, type);
+  }
+
+  /** @see #compare */
+  private boolean compareUncached(@NotNull Term preLhs, @NotNull Term preRhs, @Nullable Term type) {
     if (checkApproxResult(type, compareApprox(preLhs, preRhs))) return true;
     failure = null;
 
-    var lhs = whnf(preLhs);
-    var rhs = whnf(preRhs);
-    if (!(lhs == preLhs && rhs == preRhs) &&
+    var l = preLhs;
+    var r = preRhs;
+    // Bounded, as the unfoldings are only a shortcut, the whnf below is the complete answer
+    for (var steps = 0; steps < UNFOLD_LIMIT && l instanceof FnCall lFn && r instanceof FnCall rFn; steps++) {
+      var next = unfoldHigher(lFn, rFn);
+      if (next == null) break;
+      l = next.component1();
+      r = next.component2();
+      // Only the calls to the same function are compared here, the rest is left to the full comparison
+      if (!(l instanceof FnCall nextL && r instanceof FnCall nextR && nextL.ref().equals(nextR.ref()))) continue;
+      if (checkApproxResult(type, compareApprox(l, r))) return true;
+      failure = null;
+    }
+
+    var lhs = whnf(l);
+    var rhs = whnf(r);
+    if (!(lhs == l && rhs == r) &&
       checkApproxResult(type, compareApprox(lhs, rhs))) return true;
 
     if (rhs instanceof MetaCall rMeta) {
@@ -31,6 +31,8 @@ public final class Unifier extends TermComparator {
     this.allowDelay = allowDelay;
   }
 
+  @Override protected int mode() { return super.mode() | (allowDelay ? 2 : 0) | (allowVague ? 4 : 0); }
+
   public @NotNull TyckState.Eqn createEqn(@NotNull MetaCall lhs, @NotNull Term rhs, @Nullable Term type) {
     return new TyckState.Eqn(lhs, rhs, type, cmp, pos, localCtx().clone());
   }
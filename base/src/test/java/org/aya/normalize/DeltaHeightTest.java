@@ -0,0 +1,55 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import org.aya.syntax.core.def.FnDefLike;
+import org.aya.syntax.core.def.TyckAnyDef;
+import org.aya.tyck.TyckTest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DeltaHeightTest {
+  private static final TyckTest.TyckResult RESULT = TyckTest.tyck("""
+    open inductive Nat | O | S Nat
+    open inductive Bool | true | false
+    def id (n : Nat) : Nat => n
+    def id2 (n : Nat) : Nat => id n
+    def id3 (n : Nat) : Nat => id2 (id n)
+    opaque def stop (n : Nat) : Nat => id3 n
+    def stopped (n : Nat) : Nat => stop n
+    def infixl + Nat Nat : Nat
+    | O, b => b
+    | S a, b => S (a + b)
+    def even Nat : Bool
+    | 0 => true
+    | S n => odd n
+    def odd Nat : Bool
+    | 0 => false
+    | S n => even n
+    def evenId (n : Nat) : Bool => even (id3 n)
+    """);
+
+  private static int height(String name) {
+    return DeltaHeight.of((FnDefLike) TyckAnyDef.make(RESULT.find(name)));
+  }
+
+  @Test public void chain() {
+    assertEquals(1, height("id"));
+    assertEquals(2, height("id2"));
+    assertEquals(3, height("id3"));
+  }
+
+  @Test public void opaque() {
+    assertEquals(0, height("stop"));
+    assertEquals(1, height("stopped"));
+  }
+
+  @Test public void recursive() {
+    assertEquals(1, height("+"));
+    // The one of a mutually recursive pair tycked first does not see the other
+    assertEquals(1, Math.min(height("even"), height("odd")));
+    assertEquals(2, Math.max(height("even"), height("odd")));
+    assertEquals(1 + Math.max(height("even"), height("id3")), height("evenId"));
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.primitive.ImmutableIntSeq;
+import org.aya.primitive.PrimFactory;
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.core.def.*;
+import org.aya.syntax.core.term.AppTerm;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.LamTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.core.term.repr.ListTerm;
+import org.aya.syntax.literate.CodeOptions.NormalizeMode;
+import org.aya.tyck.TyckState;
+import org.aya.tyck.TyckTest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** {@link NormalizeMode#NBE} gives the same normal forms as {@link NormalizeMode#FULL} */
+public class NbeTest {
+  @SuppressWarnings("unchecked") private static <T extends AnyDef> T
+  getDef(@NotNull TyckTest.TyckResult result, @NotNull String name) {
+    return (T) TyckAnyDef.make(result.find(name));
+  }
+
+  private static void assertNbe(@NotNull TyckTest.TyckResult result, @NotNull Term term) {
+    var full = new Normalizer(new TyckState(result.info().shapeFactory(), new PrimFactory()))
+      .normalize(term, NormalizeMode.FULL);
+    var nbe = new Normalizer(new TyckState(result.info().shapeFactory(), new PrimFactory()))
+      .normalize(term, NormalizeMode.NBE);
+    assertEquals(full, nbe);
+  }
+
+  @Test public void nbe() {
+    var result = TyckTest.tyck("""
+      open inductive Nat | O | S Nat
+      open inductive Bool | true | false
+      def infixl + Nat Nat : Nat
+      | O, b => b
+      | S a, b => S (a + b)
+      def twice (f : Nat -> Nat) (n : Nat) : Nat => f (f n)
+      def add2 (n : Nat) : Nat => S (S n)
+      def addN (n : Nat) : Nat -> Nat => fn m => m + n
+      def isZero (n : Nat) : Bool => match n {
+      | O => true
+      | S _ => false
+      }
+      def pair (n : Nat) : Sig Nat ** Bool => (twice add2 n, isZero (n + S O))
+      """);
+    ConDefLike O = getDef(result, "O");
+    ConDefLike S = getDef(result, "S");
+    FnDefLike twice = getDef(result, "twice");
+    FnDefLike add2 = getDef(result, "add2");
+    FnDefLike addN = getDef(result, "addN");
+    FnDefLike isZero = getDef(result, "isZero");
+    FnDefLike pair = getDef(result, "pair");
+
+    Term zero = new ConCall(O, ImmutableSeq.empty(), 0, ImmutableSeq.empty());
+    Function<Term, Term> suc = n -> new ConCall(S, ImmutableSeq.empty(), 0, ImmutableSeq.of(n));
+    Term y = new FreeTerm("y");
+    Term add2Fn = new LamTerm(new Closure.Jit(n -> new FnCall(add2, 0, ImmutableSeq.of(n))));
+    Function<Term, Term> addNOf = n -> new FnCall(addN, 0, ImmutableSeq.of(n));
+
+    // Closed
+    assertNbe(result, new FnCall(twice, 0, ImmutableSeq.of(addNOf.apply(suc.apply(zero)), suc.apply(zero))));
+    assertNbe(result, new FnCall(isZero, 0, ImmutableSeq.of(suc.apply(y))));
+    // Lambdas, and stuck under a lambda
+    assertNbe(result, addNOf.apply(y));
+    assertNbe(result, new AppTerm(addNOf.apply(suc.apply(zero)), y));
+    assertNbe(result, new FnCall(twice, 0, ImmutableSeq.of(add2Fn, y)));
+    // Stuck matches
+    assertNbe(result, new FnCall(isZero, 0, ImmutableSeq.of(y)));
+    assertNbe(result, new FnCall(pair, 0, ImmutableSeq.of(y)));
+  }
+
+  @Test public void treeSort() throws IOException {
+    var result = TyckTest.tyck(Files.readString(Paths.get("../jit-compiler/src/test/resources/TreeSort.aya")));
+    DataDefLike Nat = getDef(result, "Nat");
+    ConDefLike O = getDef(result, "O");
+    ConDefLike S = getDef(result, "S");
+    DataDefLike List = getDef(result, "List");
+    ConDefLike nil = getDef(result, "[]");
+    ConDefLike cons = getDef(result, ":>");
+    FnDefLike le = getDef(result, "le");
+    FnDefLike treeSort = getDef(result, "tree_sort");
+
+    var NatCall = new DataCall(Nat, 0, ImmutableSeq.empty());
+    var ListNatCall = new DataCall(List, 0, ImmutableSeq.of(NatCall));
+    var list = new ListTerm(ImmutableIntSeq.of(5, 3, 8, 1, 3, 0, 7)
+      .mapToObj(i -> new IntegerTerm(i, O, S, NatCall)), nil, cons, ListNatCall);
+    var leCall = new LamTerm(new Closure.Jit(x ->
+      new LamTerm(new Closure.Jit(y ->
+        new FnCall(le, 0, ImmutableSeq.of(x, y))))));
+    assertNbe(result, new FnCall(treeSort, 0, ImmutableSeq.of(NatCall, leCall, list)));
+  }
+}
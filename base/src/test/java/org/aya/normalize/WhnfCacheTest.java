@@ -0,0 +1,59 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.primitive.PrimFactory;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.core.term.AppTerm;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.LamTerm;
+import org.aya.syntax.core.term.call.MetaCall;
+import org.aya.syntax.ref.MetaVar;
+import org.aya.tyck.TyckState;
+import org.aya.util.error.SourcePos;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class WhnfCacheTest {
+  @Test public void whnfCache() {
+    var state = new TyckState(new ShapeFactory(), new PrimFactory());
+    var m = new MetaVar("m", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var n = new MetaVar("n", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var k = new MetaVar("k", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var x = new FreeTerm("x");
+    var app = new AppTerm(new MetaCall(m, ImmutableSeq.empty()), x);
+    var unrelated = new AppTerm(new MetaCall(k, ImmutableSeq.empty()), x);
+
+    // ?m x reduces to ?n x, which is stuck on ?n
+    state.solve(m, new MetaCall(n, ImmutableSeq.empty()));
+    var stuck = state.whnf(app);
+    assertEquals(new MetaCall(n, ImmutableSeq.of(x)), stuck);
+    assertSame(stuck, state.whnf(app));
+    assertEquals(1, state.whnfCache.hits());
+    assertEquals(new MetaCall(k, ImmutableSeq.of(x)), state.whnf(unrelated));
+
+    // Solving a meta of neither the input nor the result keeps the entry
+    state.solve(k, LamTerm.ID);
+    assertSame(stuck, state.whnf(app));
+    assertEquals(2, state.whnfCache.hits());
+    assertEquals(x, state.whnf(unrelated));
+
+    // Solving the meta of the result unblocks it
+    state.solve(n, LamTerm.ID);
+    assertEquals(x, state.whnf(app));
+
+    // Metas in the solutions of solved metas count as well
+    var p = new MetaVar("p", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var q = new MetaVar("q", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var f = new FreeTerm("f");
+    state.solve(p, new LamTerm(new Closure.Jit(_ -> new MetaCall(q, ImmutableSeq.empty()))));
+    var twice = new AppTerm(new AppTerm(new MetaCall(p, ImmutableSeq.empty()), f), x);
+    assertEquals(new MetaCall(q, ImmutableSeq.of(x)), state.whnf(twice));
+    state.solve(q, LamTerm.ID);
+    assertEquals(x, state.whnf(twice));
+  }
+}
@@ -0,0 +1,65 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.value.MutableValue;
+import org.aya.primitive.PrimFactory;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.core.pat.Pat;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.MetaPatTerm;
+import org.aya.syntax.core.term.SortTerm;
+import org.aya.syntax.core.term.TupTerm;
+import org.aya.syntax.core.term.call.MetaCall;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.syntax.ref.MetaVar;
+import org.aya.tyck.ExprTycker;
+import org.aya.tyck.TyckState;
+import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.IgnoringReporter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ZonkMemoTest {
+  @Test public void zonkMemo() {
+    var state = new TyckState(new ShapeFactory(), new PrimFactory());
+    var zonker = new Finalizer.Zonk<>(new ExprTycker(state, IgnoringReporter.INSTANCE));
+    var m = new MetaVar("m", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var n = new MetaVar("n", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var x = new FreeTerm("x");
+    var solved = new TupTerm(new MetaCall(m, ImmutableSeq.empty()), x);
+    var unsolved = new TupTerm(new MetaCall(n, ImmutableSeq.empty()), x);
+    state.solve(m, SortTerm.Type0);
+
+    // Top-level calls of a pass share the memo
+    var zonked = zonker.zonk(solved);
+    assertEquals(new TupTerm(SortTerm.Type0, x), zonked);
+    assertSame(zonked, zonker.zonk(solved));
+    assertSame(unsolved, zonker.zonk(unsolved));
+    assertSame(zonked, zonker.zonk(solved));
+
+    // Solving a meta starts a new pass
+    state.solve(n, SortTerm.Set0);
+    assertEquals(new TupTerm(SortTerm.Set0, x), zonker.zonk(unsolved));
+    var rezonked = zonker.zonk(solved);
+    assertEquals(zonked, rezonked);
+    assertSame(rezonked, zonker.zonk(solved));
+  }
+
+  @Test public void zonkMetaPat() {
+    var state = new TyckState(new ShapeFactory(), new PrimFactory());
+    var zonker = new Finalizer.Zonk<>(new ExprTycker(state, IgnoringReporter.INSTANCE));
+    var meta = new Pat.Meta(MutableValue.create(), "p", SortTerm.Type0, SourcePos.NONE);
+    var x = new FreeTerm("x");
+    var term = new TupTerm(new MetaPatTerm(meta), x);
+    assertSame(term, zonker.zonk(term));
+
+    // Solving a pattern meta does not start a new pass, but the term was not memoized
+    var y = new LocalVar("y");
+    meta.solution().set(new Pat.Bind(y, SortTerm.Type0));
+    assertEquals(new TupTerm(new FreeTerm(y), x), zonker.zonk(term));
+  }
+}
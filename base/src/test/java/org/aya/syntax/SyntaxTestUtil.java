@@ -3,19 +3,24 @@
 package org.aya.syntax;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.value.MutableValue;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.producer.AyaParserImpl;
 import org.aya.resolve.context.EmptyContext;
 import org.aya.resolve.module.DumbModuleLoader;
 import org.aya.syntax.concrete.stmt.Stmt;
+import org.aya.syntax.core.def.TyckDef;
+import org.aya.tyck.TyckOptions;
 import org.aya.util.error.SourceFile;
 import org.aya.util.reporter.Reporter;
 import org.aya.util.reporter.ThrowingReporter;
 import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 public final class SyntaxTestUtil {
   @NotNull
@@ -26,6 +31,22 @@ public final class SyntaxTestUtil {
     return new DumbModuleLoader(new EmptyContext(THROWING, FILE));
   }
 
+  /** @return a loader tycking with {@param options}, on {@param executor} if not null */
+  public static @NotNull DumbModuleLoader moduleLoader(@NotNull TyckOptions options, @Nullable Executor executor) {
+    return new DumbModuleLoader(new EmptyContext(THROWING, FILE)) {
+      @Override public @NotNull TyckOptions tyckOptions() { return options; }
+      @Override public @Nullable Executor tyckExecutor() { return executor; }
+    };
+  }
+
+  /** @return the definitions of {@param code} tycked by {@param moduleLoader}, rendered */
+  public static @NotNull ImmutableSeq<String>
+  tyckRendered(@NotNull DumbModuleLoader moduleLoader, @Language("Aya") @NotNull String code) {
+    var defs = MutableValue.<ImmutableSeq<TyckDef>>create();
+    moduleLoader.tyckModule(moduleLoader.resolve(parse(code)), (_, ok) -> defs.set(ok));
+    return defs.get().map(def -> def.toDoc(AyaPrettierOptions.debug()).debugRender());
+  }
+
   @Contract(pure = true)
   public static @NotNull ImmutableSeq<Stmt> parse(@Language("Aya") @NotNull String code) {
     return new AyaParserImpl(THROWING).program(new SourceFile("<baka>", FILE, code));
@@ -0,0 +1,155 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.control.Result;
+import org.aya.generic.Modifier;
+import org.aya.generic.State;
+import org.aya.syntax.core.def.ConDefLike;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.TyckAnyDef;
+import org.aya.syntax.core.pat.CaseTree;
+import org.aya.syntax.core.pat.PatMatcher;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.MatchTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TupTerm;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.tyck.TyckTest;
+import org.aya.util.error.WithPos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CaseTreeTest {
+  private static final TyckTest.TyckResult RESULT = TyckTest.tyck("""
+    open inductive Bool | true | false
+    open inductive Tree | leaf | node Tree Tree
+    def and Bool Bool : Bool
+    | true, b => b
+    | false, _ => false
+    def shape Tree : Bool
+    | node (node _ _) _ => true
+    | node leaf leaf => false
+    | _ => false
+    overlap def or Bool Bool : Bool
+    | true, _ => true
+    | _, true => true
+    | false, b => b
+    | a, false => a
+    def second (p : Sig Bool ** Bool) (b : Bool) : Bool
+    | (a, true), _ => a
+    | (_, false), b => b
+    def not (b : Bool) : Bool => match b {
+    | true => false
+    | false => true
+    }
+    """);
+
+  private static final Term y = new FreeTerm("y");
+  private static final Term tt = con("true"), ff = con("false"), leaf = con("leaf");
+  private static final ImmutableSeq<Term> bools = ImmutableSeq.of(tt, ff, y);
+
+  private static @NotNull Term con(@NotNull String name, Term... args) {
+    var ref = (ConDefLike) TyckAnyDef.make(RESULT.find(name));
+    return new ConCall(ref, ImmutableSeq.empty(), 0, ImmutableSeq.of(args));
+  }
+
+  private static @NotNull FnDef fn(@NotNull String name) { return (FnDef) RESULT.find(name); }
+
+  private static @NotNull CaseTree compile(@NotNull FnDef fn) {
+    var tree = CaseTree.compile(fn.body().getRightValue().view()
+      .map(clause -> clause.data().patterns()), fn.is(Modifier.Overlap));
+    assertNotNull(tree);
+    return tree;
+  }
+
+  /** Try the clauses one by one, like {@link org.aya.normalize.Normalizer#tryUnfoldClauses} without a tree. */
+  private static @Nullable CaseTree.Hit match(@NotNull FnDef fn, @NotNull ImmutableSeq<Term> args) {
+    var clauses = fn.body().getRightValue().map(WithPos::data);
+    for (var i = 0; i < clauses.size(); i++) {
+      switch (new PatMatcher(false, UnaryOperator.identity()).apply(clauses.get(i).patterns(), args)) {
+        case Result.Err(var st) -> {
+          if (!fn.is(Modifier.Overlap) && st == State.Stuck) return null;
+        }
+        case Result.Ok(var subst) -> {
+          return new CaseTree.Hit(i, subst);
+        }
+      }
+    }
+    return null;
+  }
+
+  private static void assertSameAsMatcher(@NotNull FnDef fn, @NotNull ImmutableSeq<ImmutableSeq<Term>> argss) {
+    var tree = compile(fn);
+    for (var args : argss) {
+      var expected = match(fn, args);
+      var actual = tree.apply(args, UnaryOperator.identity());
+      if (expected == null) assertNull(actual, args.toString());
+      else {
+        assertNotNull(actual, args.toString());
+        assertEquals(expected.clause(), actual.clause());
+        assertEquals(expected.subst(), actual.subst());
+      }
+    }
+  }
+
+  private static @NotNull ImmutableSeq<ImmutableSeq<Term>> pairs(@NotNull ImmutableSeq<Term> lhs, @NotNull ImmutableSeq<Term> rhs) {
+    return lhs.flatMap(l -> rhs.map(r -> ImmutableSeq.of(l, r)));
+  }
+
+  @Test public void stuckAndMismatch() {
+    var and = fn("and");
+    assertSameAsMatcher(and, pairs(bools, bools));
+    var tree = compile(and);
+    // Stuck on the first clause, so the second one is not tried
+    assertNull(tree.apply(ImmutableSeq.of(y, ff), UnaryOperator.identity()));
+    // Mismatch on the first clause
+    assertEquals(1, tree.apply(ImmutableSeq.of(ff, y), UnaryOperator.identity()).clause());
+  }
+
+  @Test public void nested() {
+    var small = node(leaf, leaf);
+    var trees = ImmutableSeq.of(leaf, y, small, node(small, leaf), node(y, leaf), node(leaf, y), node(leaf, small));
+    assertSameAsMatcher(fn("shape"), trees.map(ImmutableSeq::of));
+  }
+
+  @Test public void overlap() {
+    var or = fn("or");
+    assertSameAsMatcher(or, pairs(bools, bools));
+    // Stuck clauses are skipped
+    assertEquals(1, compile(or).apply(ImmutableSeq.of(y, tt), UnaryOperator.identity()).clause());
+  }
+
+  @Test public void tuple() {
+    var tuples = pairs(bools, bools).<Term>map(p -> new TupTerm(p.get(0), p.get(1))).appended(y);
+    assertSameAsMatcher(fn("second"), pairs(tuples, bools));
+    // No dead branches for tuples on Bool, or for constructors on the tuple
+    var root = assertInstanceOf(CaseTree.Switch.class, compile(fn("second")).root());
+    assertNotNull(root.tuple());
+    assertTrue(root.cons().isEmpty());
+    assertSame(root.stuck(), root.otherCon());
+    var inner = assertInstanceOf(CaseTree.Switch.class, root.tuple().next());
+    assertNull(inner.tuple());
+  }
+
+  @Test public void compiledOnce() {
+    assertNotNull(fn("and").caseTree());
+    assertNotNull(fn("or").caseTree());
+    assertNull(fn("not").caseTree());
+    // The tree of a match survives instantiation, which rebuilds the clauses
+    var match = assertInstanceOf(MatchTerm.class, fn("not").body().getLeftValue());
+    assertNotNull(match.tree());
+    var inst = assertInstanceOf(MatchTerm.class, match.instantiate(y));
+    assertNotSame(match, inst);
+    assertSame(match.tree(), inst.tree());
+    assertEquals(1, inst.tree().apply(ImmutableSeq.of(ff), UnaryOperator.identity()).clause());
+  }
+
+  private static @NotNull Term node(@NotNull Term lhs, @NotNull Term rhs) { return con("node", lhs, rhs); }
+}
@@ -0,0 +1,90 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.generic.term.DTKind;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.syntax.telescope.AbstractTele;
+import org.aya.syntax.telescope.Signature;
+import org.aya.util.error.SourcePos;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OccurrencesTest {
+  @Test public void bindAt() {
+    var x = new LocalVar("x");
+    var y = new FreeTerm("y");
+    var closed = new AppTerm(new LocalTerm(0), new TupTerm(SortTerm.Type0, new LocalTerm(1)));
+    assertSame(closed, closed.bindAt(x, 0));
+    var open = new TupTerm(SortTerm.Type0, new FreeTerm(x));
+    assertEquals(new TupTerm(SortTerm.Type0, new LocalTerm(0)), open.bindAt(x, 0));
+    // A free variable other than x is not short-circuited, but stays the same
+    assertEquals(new TupTerm(y, new LocalTerm(1)), new TupTerm(y, new FreeTerm(x)).bindAt(x, 1));
+  }
+
+  @Test public void replaceAllFrom() {
+    var a = new FreeTerm("a");
+    var body = new TupTerm(new LocalTerm(0), new LamTerm(new LocalTerm(1)));
+    assertEquals(1, Occurrences.of(body).looseBound());
+    assertSame(body, body.replaceAllFrom(1, ImmutableSeq.of(a)));
+    assertEquals(new TupTerm(a, new LamTerm(a)), body.instantiate(a));
+    var closed = new LamTerm(new LocalTerm(0));
+    assertSame(closed, closed.instantiate(a));
+  }
+
+  @Test public void elevate() {
+    var a = new FreeTerm("a");
+    var noLevel = new TupTerm(a, new LamTerm(new LocalTerm(0)));
+    assertFalse(Occurrences.of(noLevel).hasLevel());
+    assertSame(noLevel, noLevel.elevate(1));
+    var withLevel = new TupTerm(a, SortTerm.Type0);
+    assertEquals(new TupTerm(a, SortTerm.Type0.elevate(1)), withLevel.elevate(1));
+  }
+
+  @Test public void jit() {
+    var runs = new int[]{0};
+    var lam = new LamTerm(new Closure.Jit(t -> {
+      runs[0]++;
+      return t;
+    }));
+    var pi = new DepTypeTerm(DTKind.Pi, SortTerm.Type0, new Closure.Jit(_ -> {
+      runs[0]++;
+      return SortTerm.Type0;
+    }));
+    assertSame(Occurrences.UNKNOWN, Occurrences.of(lam));
+    assertSame(Occurrences.UNKNOWN, Occurrences.of(pi));
+    assertTrue(Occurrences.of(new TupTerm(lam, pi)).mentionsFrom(0));
+    assertEquals(0, runs[0]);
+  }
+
+  @Test public void signature() {
+    var a = new FreeTerm("a");
+    var closed = new DepTypeTerm(DTKind.Pi, SortTerm.Type0, new Closure.Locns(new LocalTerm(0)));
+    var dependent = new TupTerm(new LocalTerm(0), closed);
+    var signature = new Signature(new AbstractTele.Locns(ImmutableSeq.of(
+      new Param("A", SortTerm.Type0, true),
+      new Param("x", dependent, true),
+      new Param("f", closed, true)
+    ), new LocalTerm(1)), ImmutableSeq.fill(3, SourcePos.NONE));
+    var params = signature.params();
+    assertEquals(new Param("f", closed, true), params.get(2));
+    assertFalse(params.get(2).mentionsFrom(0));
+    // Closed parameters are returned as they are, without being traversed
+    var inst = signature.telescope().inst(ImmutableSeq.<Term>of(a));
+    assertEquals(new TupTerm(a, closed), inst.telescope().get(0).type());
+    assertSame(params.get(2), inst.telescope().get(1));
+    assertSame(closed, signature.telescope().telescope(2, ImmutableSeq.<Term>of(a, a)));
+    assertSame(params.get(2), params.get(2).instTele(ImmutableSeq.<Term>of(a).view()));
+    // And so are the ones that binding or lifting cannot change
+    var bound = signature.bindTele(new LocalVar("B"), new Param("B", SortTerm.Type0, true), SourcePos.NONE);
+    assertSame(params.get(2), bound.params().get(3));
+    assertEquals(closed.elevate(1), signature.telescope().lift(1).telescope(2, ImmutableSeq.<Term>of(a, a)));
+    var noLevel = new LamTerm(new Closure.Locns(new LocalTerm(0)));
+    var lifted = new Signature(new AbstractTele.Locns(ImmutableSeq.of(new Param("g", noLevel, true)), SortTerm.Type0),
+      ImmutableSeq.of(SourcePos.NONE)).telescope().lift(1);
+    assertSame(noLevel, lifted.telescope(0, ImmutableSeq.empty()));
+  }
+}
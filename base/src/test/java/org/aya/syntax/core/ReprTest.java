@@ -0,0 +1,96 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.normalize.Normalizer;
+import org.aya.primitive.PrimFactory;
+import org.aya.syntax.core.def.DataDefLike;
+import org.aya.syntax.core.def.FnDefLike;
+import org.aya.syntax.core.def.TyckAnyDef;
+import org.aya.syntax.core.repr.AyaShape;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.core.term.repr.ListOps;
+import org.aya.syntax.core.term.repr.ListTerm;
+import org.aya.syntax.core.term.repr.StringRope;
+import org.aya.syntax.literate.CodeOptions.NormalizeMode;
+import org.aya.tyck.TyckState;
+import org.aya.tyck.TyckTest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReprTest {
+  private static void assertBalanced(StringRope rope, int chunks) {
+    // An AVL tree of n leaves has height below 1.45 log2(n + 2)
+    assertTrue(rope.height() <= 1.45 * Math.log(chunks + 2) / Math.log(2), "height " + rope.height());
+  }
+
+  @Test public void rope() {
+    var chunk = "a".repeat(StringRope.CHUNK_SIZE) + "b";
+    var count = 4096;
+    var builder = new StringBuilder();
+    var appended = StringRope.EMPTY;
+    var prepended = StringRope.EMPTY;
+    for (var i = 0; i < count; i++) {
+      var piece = i + chunk;
+      builder.append(piece);
+      appended = appended.concat(StringRope.of(piece));
+      prepended = StringRope.of(piece).concat(prepended);
+    }
+    assertBalanced(appended, count);
+    assertBalanced(prepended, count);
+    var expected = builder.toString();
+    assertEquals(expected, appended.toString());
+    assertEquals(expected.length(), appended.length());
+    assertEquals(expected.charAt(123456), appended.charAt(123456));
+    var slice = appended.subSequence(1000, 200000);
+    assertEquals(expected.substring(1000, 200000), slice.toString());
+    assertEquals(slice, StringRope.of(expected.substring(1000, 200000)));
+
+    // Short pieces are merged into chunks
+    var small = StringRope.EMPTY;
+    for (var i = 0; i < count; i++) small = small.concat(StringRope.of("x"));
+    assertEquals("x".repeat(count), small.toString());
+    assertBalanced(small, count / StringRope.CHUNK_SIZE);
+  }
+
+  @Test public void append() {
+    var result = TyckTest.tyck("""
+      open inductive Nat | O | S Nat
+      open inductive List Type
+      | []
+      | A => infixr :> A (List A)
+      def infixr ++ {A : Type} (xs ys : List A) : List A
+      | [], ys => ys
+      | x :> xs, ys => x :> (xs ++ ys)
+      def test : List Nat => (1 :> 2 :> []) ++ (3 :> [])
+      """);
+    var shapes = result.info().shapeFactory();
+    FnDefLike append = (FnDefLike) TyckAnyDef.make(result.find("++"));
+    assertEquals(AyaShape.APPEND_SHAPE, shapes.find(append).get().shape());
+
+    FnDefLike test = (FnDefLike) TyckAnyDef.make(result.find("test"));
+    var normal = new Normalizer(new TyckState(shapes, new PrimFactory()))
+      .normalize(new FnCall(test, 0, ImmutableSeq.empty()), NormalizeMode.FULL);
+    var list = assertInstanceOf(ListTerm.class, normal);
+    assertEquals(3, list.repr().size());
+
+    DataDefLike listDef = (DataDefLike) TyckAnyDef.make(result.find("List"));
+    var listRecog = shapes.find(listDef).get();
+    var nat = new DataCall((DataDefLike) TyckAnyDef.make(result.find("Nat")), 0, ImmutableSeq.empty());
+    var listNat = new DataCall(listDef, 0, ImmutableSeq.of(nat));
+    var a = new FreeTerm("a");
+    var b = new FreeTerm("b");
+    var xs = new ListTerm(ImmutableSeq.of(a, b), listRecog, listNat);
+    var ys = new ListTerm(ImmutableSeq.of(b), listRecog, listNat);
+    var rule = new ListOps.FnRule(append, ListOps.FnRule.Kind.Append);
+    var appended = assertInstanceOf(ListTerm.class, rule.apply(ImmutableSeq.of(nat, xs, ys)));
+    assertIterableEquals(ImmutableSeq.<Term>of(a, b, b), appended.repr());
+    // Stuck unless both are literals
+    assertNull(rule.apply(ImmutableSeq.of(nat, xs, new FreeTerm("zs"))));
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core;
+
+import org.aya.primitive.PrimFactory;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.SyntaxTestUtil;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.ref.MapLocalCtx;
+import org.aya.tyck.TyckOptions;
+import org.aya.tyck.TyckState;
+import org.aya.unify.Unifier;
+import org.aya.util.Ordering;
+import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.IgnoringReporter;
+import org.intellij.lang.annotations.Language;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TermInternerTest {
+  @Test public void intern() {
+    var interner = new TermInterner();
+    var x = new FreeTerm("x");
+    var lhs = interner.intern(new AppTerm(x, new TupTerm(x, SortTerm.Type0)));
+    var rhs = interner.intern(new AppTerm(x, new TupTerm(x, new SortTerm(SortTerm.Type0.kind(), 0))));
+    assertSame(lhs, rhs);
+    assertNotSame(lhs, interner.intern(new AppTerm(x, SortTerm.Set0)));
+  }
+
+  @Test public void internedTyck() {
+    @Language("Aya") var code = """
+      open inductive Nat | O | S Nat
+      prim I : ISet
+      prim Path (A : I -> Type) (a : A 0) (b : A 1) : Type
+      prim coe
+      variable A : Type
+      def infix = (a b : A) => Path (\\i => A) a b
+      def refl {a : A} : a = a => \\i => a
+      def infixl + Nat Nat : Nat
+      | O, b => b
+      | S a, b => S (a + b)
+      def pinv {a b : A} (p : a = b) : b = a => coe 0 1 (\\i => p i = a) refl
+      def two : S (S O) = 1 + 1 => refl
+      def funExt (A B : Type) (f g : A -> B) (p : Fn (a : A) -> f a = g a) : f = g =>
+        \\ i => \\ a => p a i
+      """;
+    assertEquals(
+      SyntaxTestUtil.tyckRendered(SyntaxTestUtil.moduleLoader(TyckOptions.DEFAULT, null), code),
+      SyntaxTestUtil.tyckRendered(SyntaxTestUtil.moduleLoader(new TyckOptions(true, null), null), code));
+
+    var state = new TyckState(new ShapeFactory(), new PrimFactory(), new TyckOptions(true, null));
+    var x = new FreeTerm("x");
+    var unifier = new Unifier(state, new MapLocalCtx(), IgnoringReporter.INSTANCE, SourcePos.NONE, Ordering.Eq, true);
+    assertTrue(unifier.compare(new TupTerm(x, SortTerm.Type0), new TupTerm(x, SortTerm.Type0), null));
+    assertNotNull(state.interner());
+    assertEquals(3, state.interner().size());
+  }
+}
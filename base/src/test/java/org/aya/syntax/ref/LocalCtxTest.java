@@ -0,0 +1,103 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.ref;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.core.term.SortTerm;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalCtxTest {
+  private final LocalVar x = new LocalVar("x"), y = new LocalVar("y"), z = new LocalVar("z"), w = new LocalVar("w");
+
+  @Test public void nestedDerive() {
+    var a = new MapLocalCtx().derive1(x, SortTerm.Type0);
+    var b = a.derive1(y, SortTerm.Set0);
+    var c = b.derive1(z, SortTerm.ISet);
+    assertEquals(3, c.size());
+    assertEquals(SortTerm.Type0, c.get(x));
+    assertEquals(SortTerm.Set0, c.get(y));
+    assertEquals(SortTerm.ISet, c.get(z));
+    assertIterableEquals(ImmutableSeq.of(x, y, z), c.extract());
+    // The contexts derived from are not changed
+    assertEquals(2, b.size());
+    assertFalse(b.contains(z));
+    assertIterableEquals(ImmutableSeq.of(x, y), b.extract());
+    assertIterableEquals(ImmutableSeq.of(x), a.extract());
+  }
+
+  @Test public void staleParents() {
+    var a = new MapLocalCtx().derive1(x, SortTerm.Type0);
+    var b = a.derive1(y, SortTerm.Set0);
+    var c = b.derive1(z, SortTerm.ISet);
+    // Derive again from contexts that were already derived from
+    var sibling = a.derive1(w, SortTerm.Set1);
+    var nephew = b.derive1(w, SortTerm.Type0);
+    assertIterableEquals(ImmutableSeq.of(x, w), sibling.extract());
+    assertFalse(sibling.contains(y));
+    assertEquals(SortTerm.Set1, sibling.get(w));
+    assertIterableEquals(ImmutableSeq.of(x, y, w), nephew.extract());
+    assertEquals(SortTerm.Type0, nephew.get(w));
+    // The older contexts are still valid
+    assertIterableEquals(ImmutableSeq.of(x, y, z), c.extract());
+    assertFalse(c.contains(w));
+    assertFalse(b.contains(w));
+    assertEquals(SortTerm.ISet, c.derive1(w, SortTerm.Set0).get(z));
+  }
+
+  @Test public void rebinding() {
+    var a = new MapLocalCtx().derive1(x, SortTerm.Type0);
+    var b = a.derive1(y, SortTerm.Set0);
+    var c = b.derive1(x, SortTerm.ISet);
+    assertEquals(SortTerm.ISet, c.get(x));
+    assertEquals(SortTerm.Type0, b.get(x));
+    // Binding x again in a sibling keeps both of the earlier bindings
+    var d = a.derive1(x, SortTerm.Set1);
+    assertEquals(SortTerm.Set1, d.get(x));
+    assertEquals(SortTerm.ISet, c.get(x));
+    assertEquals(SortTerm.Type0, b.get(x));
+    assertEquals(SortTerm.Type0, a.get(x));
+  }
+
+  @Test public void cloneAndMap() {
+    var root = new MapLocalCtx();
+    var a = root.derive1(x, SortTerm.Type0).derive1(y, SortTerm.Set0);
+    var cloned = a.clone();
+    // Only the mutable parent is copied
+    root.put(z, SortTerm.ISet);
+    assertTrue(a.contains(z));
+    assertFalse(cloned.contains(z));
+    assertIterableEquals(a.extractLocal(), cloned.extractLocal());
+    var mapped = a.map(_ -> SortTerm.Set1);
+    assertEquals(SortTerm.Set1, mapped.get(x));
+    assertEquals(SortTerm.Set1, mapped.get(y));
+    assertEquals(SortTerm.Type0, a.get(x));
+  }
+
+  @Test public void siblingsAreNodes() {
+    var a = new MapLocalCtx().derive1(x, SortTerm.Type0);
+    var b = a.derive1(y, SortTerm.Set0);
+    // One clause after another, each binding its own variable after a
+    var clauses = ImmutableSeq.fill(4, i -> (ArrayLocalCtx) a.derive1(new LocalVar("c" + i), SortTerm.Set1));
+    assertTrue(clauses.noneMatch(ArrayLocalCtx::hasRun));
+    assertTrue(clauses.allMatch(c -> c.parent() == a && c.get(x) == SortTerm.Type0));
+    assertFalse(clauses.getFirst().contains(y));
+    assertEquals(SortTerm.Set0, b.get(y));
+    // Deriving from a node gives it a run of its own
+    var d = clauses.getFirst().derive1(z, SortTerm.ISet);
+    assertTrue(clauses.getFirst().hasRun());
+    assertIterableEquals(ImmutableSeq.of(x, clauses.getFirst().extractLocal().getFirst(), z), d.extract());
+  }
+
+  @Test public void longRun() {
+    LocalCtx ctx = new MapLocalCtx().derive1(x, SortTerm.Type0);
+    var vars = ImmutableSeq.fill(20, i -> new LocalVar("v" + i));
+    for (var v : vars) ctx = ctx.derive1(v, SortTerm.Set0);
+    var rebound = ctx.derive1(x, SortTerm.ISet);
+    assertEquals(SortTerm.ISet, rebound.get(x));
+    assertEquals(SortTerm.Type0, ctx.get(x));
+    for (var v : vars) assertEquals(SortTerm.Set0, rebound.get(v));
+    assertEquals(22, rebound.size());
+  }
+}
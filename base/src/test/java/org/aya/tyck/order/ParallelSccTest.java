@@ -0,0 +1,54 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.order;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.SyntaxTestUtil;
+import org.aya.tyck.TyckOptions;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ParallelSccTest {
+  @Test public void parallelSccs() {
+    @Language("Aya") var code = """
+      open inductive Nat | O | S Nat
+      def infixl + Nat Nat : Nat
+      | O, b => b
+      | S a, b => S (a + b)
+      def two => S (S O)
+      def four => two + two
+      def six => four + two
+      def double (n : Nat) : Nat => n + n
+      def eight => double four
+      def id {A : Type} (a : A) => a
+      def const {A B : Type} (a : A) (b : B) => a
+      def nine => S (id eight)
+      // Literals do not depend on Nat in the graph
+      def ten => 10
+      def twelve => ten + 2
+      def succ (n : Nat) : Nat => n + 1
+      // Independent of the literals above, which only see the shapes before them
+      open inductive Unary | Z | U Unary
+      def three : Unary => 3
+      """;
+    var pool = new ForkJoinPool(4);
+    try {
+      var sequential = tyck(code, null);
+      for (var i = 0; i < 8; i++)
+        assertEquals(sequential, tyck(code, pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static @NotNull ImmutableSeq<String> tyck(@Language("Aya") @NotNull String code, @Nullable Executor executor) {
+    return SyntaxTestUtil.tyckRendered(SyntaxTestUtil.moduleLoader(TyckOptions.DEFAULT, executor), code);
+  }
+}
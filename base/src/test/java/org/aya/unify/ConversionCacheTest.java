@@ -0,0 +1,83 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.unify;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.primitive.PrimFactory;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.SortTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TupTerm;
+import org.aya.syntax.core.term.call.MetaCall;
+import org.aya.syntax.ref.MapLocalCtx;
+import org.aya.syntax.ref.MetaVar;
+import org.aya.tyck.TyckState;
+import org.aya.util.Ordering;
+import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.IgnoringReporter;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversionCacheTest {
+  @Test public void conversionCache() {
+    var state = new TyckState(new ShapeFactory(), new PrimFactory());
+    var unifier = new Unifier(state, new MapLocalCtx(), IgnoringReporter.INSTANCE, SourcePos.NONE, Ordering.Eq, true);
+    var cache = state.conversionCache;
+    var x = new FreeTerm("x");
+    IntFunction<Term> nested = depth -> {
+      Term term = x;
+      for (var i = 0; i < depth; i++) term = new TupTerm(term, SortTerm.Type0);
+      return term;
+    };
+
+    // Only the outermost comparison is remembered
+    assertTrue(unifier.compare(nested.apply(3), nested.apply(3), null));
+    assertEquals(1, cache.size());
+    assertEquals(0, cache.hits());
+    assertTrue(unifier.compare(nested.apply(3), nested.apply(3), null));
+    assertEquals(1, cache.hits());
+    // The nested problems were not cached
+    assertTrue(unifier.compare(nested.apply(2), nested.apply(2), null));
+    assertEquals(1, cache.hits());
+    assertEquals(2, cache.size());
+
+    // Comparisons with unsolved metas are neither looked up nor remembered
+    var m = new MetaVar("m", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var meta = new MetaCall(m, ImmutableSeq.empty());
+    var misses = cache.misses();
+    assertTrue(unifier.compare(new TupTerm(meta, x), new TupTerm(meta, x), null));
+    assertTrue(unifier.compare(new TupTerm(meta, x), new TupTerm(meta, x), null));
+    assertEquals(1, cache.hits());
+    assertEquals(misses, cache.misses());
+    assertEquals(2, cache.size());
+
+    // Once solved, the meta is just a name for its solution
+    state.solve(m, SortTerm.Type0);
+    assertTrue(unifier.compare(new TupTerm(meta, x), new TupTerm(SortTerm.Type0, x), null));
+    assertTrue(unifier.compare(new TupTerm(meta, x), new TupTerm(SortTerm.Type0, x), null));
+    assertEquals(2, cache.hits());
+    assertFalse(unifier.compare(new TupTerm(meta, x), new TupTerm(SortTerm.Set0, x), null));
+    assertEquals(2, cache.hits());
+    assertEquals(3, cache.size());
+
+    // Unless its solution mentions an unsolved meta
+    var a = new MetaVar("a", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var b = new MetaVar("b", SourcePos.NONE, 0, MetaVar.Misc.Whatever, false);
+    var solvedToMeta = new MetaCall(a, ImmutableSeq.empty());
+    state.solve(a, new MetaCall(b, ImmutableSeq.empty()));
+    misses = cache.misses();
+    assertTrue(unifier.compare(new TupTerm(solvedToMeta, x), new TupTerm(solvedToMeta, x), null));
+    assertEquals(misses, cache.misses());
+    assertEquals(3, cache.size());
+
+    // The results of one mode are not reused in another
+    var vague = new Unifier(state, new MapLocalCtx(), IgnoringReporter.INSTANCE, SourcePos.NONE, Ordering.Eq, false);
+    assertTrue(vague.compare(nested.apply(3), nested.apply(3), null));
+    assertEquals(2, cache.hits());
+    assertEquals(4, cache.size());
+  }
+}
@@ -92,10 +92,10 @@ public class Main extends MainArgs implements Callable<Integer> {
     var flags = new CompilerFlags(message, interruptedTrace,
       compile.isRemake, pretty,
       modulePaths().view().map(Paths::get),
-      outputPath);
+      outputPath, profileReductions, parallelism, internTerms);
 
     if (compile.isLibrary || compile.isRemake || compile.isNoCode) {
-      var advisor = compile.isNoCode ? CompilerAdvisor.inMemory() : CompilerAdvisor.onDisk();
+      var advisor = compile.isNoCode ? CompilerAdvisor.inMemory() : CompilerAdvisor.onDisk(jitBackend, jitTailCalls);
       return LibraryCompiler.compile(new PrimFactory(), reporter, flags, advisor, filePath);
     }
     var compiler = new SingleFileCompiler(reporter, flags, null);
@@ -3,8 +3,11 @@
 package org.aya.cli.console;
 
 import kala.collection.immutable.ImmutableSeq;
+import org.aya.cli.utils.CliEnums.JitBackend;
+import org.aya.cli.utils.CliEnums.JitTailCalls;
 import org.aya.cli.utils.CliEnums.PrettyFormat;
 import org.aya.cli.utils.CliEnums.PrettyStage;
+import org.aya.cli.utils.CliEnums.ProfileFormat;
 import org.aya.prelude.GeneratedVersion;
 import org.aya.util.reporter.Problem;
 import org.jetbrains.annotations.NonNls;
@@ -99,6 +102,19 @@ public class MainArgs {
   public boolean fakeLiterate;
   @Option(names = {"--no-prelude"}, description = "Disable the implicit import of the prelude.")
   public boolean noPrelude;
+  @Option(names = {"--profile-reductions"}, description = "Report the reductions performed per definition when compiling libraries." + CANDIDATES)
+  public ProfileFormat profileReductions;
+  @Option(names = {"-j", "--parallel"}, paramLabel = "N", defaultValue = "1", description =
+    "Tyck up to N modules concurrently when compiling libraries, 0 for the number of processors.")
+  public int parallelism;
+  @Option(names = {"--intern-terms"}, description = "Hash-cons the terms compared by the tycker when compiling libraries.")
+  public boolean internTerms;
+  @Option(names = {"--jit-backend"}, defaultValue = "source", description =
+    "How the compiled definitions become class files when making libraries." + CANDIDATES)
+  public JitBackend jitBackend;
+  @Option(names = {"--jit-tail-calls"}, defaultValue = "mutual", description =
+    "How the calls in tail position are compiled when making libraries." + CANDIDATES)
+  public JitTailCalls jitTailCalls;
 
   @Parameters(paramLabel = "<input-file>", defaultValue = "null", description = "File to compile")
   public String inputFile;
@@ -3,7 +3,6 @@
 package org.aya.cli.repl;
 
 import kala.collection.immutable.ImmutableSeq;
-import kala.collection.mutable.MutableList;
 import kala.control.Either;
 import org.aya.cli.render.RenderOptions;
 import org.aya.prettier.AyaPrettierOptions;
@@ -81,12 +80,12 @@ public interface ReplCommands {
 
   @NotNull Command SHOW_SHAPES = new Command(ImmutableSeq.of("debug-show-shapes"), "Show recognized shapes") {
     @Entry public @NotNull Command.Result execute(@NotNull AyaRepl repl) {
-      var discovered = repl.replCompiler.getShapeFactory().discovered;
-      return Result.ok(repl.renderDoc(Doc.vcat(discovered.mapTo(MutableList.create(),
+      var discovered = repl.replCompiler.getShapeFactory().discovered();
+      return Result.ok(repl.renderDoc(Doc.vcat(discovered.view().map(
         (def, recog) ->
           Doc.sep(BasePrettier.refVar(def),
             Doc.symbol("=>"),
-            Doc.plain(recog.shape().name()))))), true);
+            Doc.plain(recog.shape().name()))).toImmutableSeq())), true);
     }
   };
 
@@ -96,7 +96,7 @@ public class ReplCompiler {
   private @NotNull ExprResolver.LiterateResolved
   desugarExpr(@NotNull ExprResolver.LiterateResolved expr, @NotNull Reporter reporter) {
     var ctx = new EmptyContext(reporter, Path.of("dummy")).derive("dummy");
-    var resolveInfo = makeResolveInfo(ctx);
+    var resolveInfo = makeResolveInfo(ctx, shapeFactory);
     return expr.descent(new Desalt(resolveInfo));
   }
 
@@ -106,7 +106,7 @@ public class ReplCompiler {
   }
 
   private void loadLibrary(@NotNull Path libraryRoot) throws IOException {
-    var flags = new CompilerFlags(CompilerFlags.Message.EMOJI, false, true, null, modulePaths.view(), null);
+    var flags = new CompilerFlags(CompilerFlags.Message.EMOJI, false, true, null, modulePaths.view(), null, null, 1, false);
     try {
       var compiler = LibraryCompiler.newCompiler(primFactory, reporter, flags, CompilerAdvisor.onDisk(), libraryRoot);
       compiler.start();
@@ -154,9 +154,8 @@ public class ReplCompiler {
       return programOrExpr.map(
         program -> {
           var newDefs = MutableValue.<ImmutableSeq<TyckDef>>create();
-          var resolveInfo = makeResolveInfo(context.fork());
+          var resolveInfo = makeResolveInfo(context.fork(), shapeFactory.fork());
           loader.resolveModule(resolveInfo, program, loader);
-          resolveInfo.shapeFactory().discovered = shapeFactory.fork().discovered;
           loader.tyckModule(resolveInfo, ((_, defs) -> newDefs.set(defs)));
           if (reporter.anyError()) return ImmutableSeq.empty();
           context.merge();
@@ -174,8 +173,8 @@ public class ReplCompiler {
     }
   }
 
-  private @NotNull ResolveInfo makeResolveInfo(@NotNull ModuleContext ctx) {
-    var resolveInfo = new ResolveInfo(ctx, primFactory, shapeFactory, opSet);
+  private @NotNull ResolveInfo makeResolveInfo(@NotNull ModuleContext ctx, @NotNull ShapeFactory shapes) {
+    var resolveInfo = new ResolveInfo(ctx, primFactory, shapes, opSet);
     imports.forEach(ii -> resolveInfo.imports().put(
       ii.modulePath().asName(), new ResolveInfo.ImportInfo(ii, false)));
     return resolveInfo;
@@ -3,8 +3,11 @@
 package org.aya.cli.library;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
 import kala.collection.mutable.MutableSet;
 import org.aya.cli.library.incremental.CompilerAdvisor;
+import org.aya.cli.library.incremental.EarlyCutoff;
 import org.aya.cli.library.json.LibraryConfigData;
 import org.aya.cli.library.source.DiskLibraryOwner;
 import org.aya.cli.library.source.LibraryOwner;
@@ -14,6 +17,7 @@ import org.aya.cli.single.CompilerFlags;
 import org.aya.cli.utils.CliEnums;
 import org.aya.cli.utils.CompilerUtil;
 import org.aya.generic.InterruptException;
+import org.aya.normalize.ReductionProfiler;
 import org.aya.pretty.backend.string.StringPrinterConfig;
 import org.aya.pretty.printer.PrinterConfig;
 import org.aya.primitive.PrimFactory;
@@ -25,19 +29,28 @@ import org.aya.syntax.AyaFiles;
 import org.aya.syntax.concrete.stmt.Command;
 import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.concrete.stmt.decl.PrimDecl;
+import org.aya.tyck.TyckOptions;
 import org.aya.util.error.Panic;
 import org.aya.util.more.StringUtil;
+import org.aya.util.reporter.BufferReporter;
 import org.aya.util.reporter.CountingReporter;
 import org.aya.util.reporter.Reporter;
 import org.aya.util.terck.MutableGraph;
 import org.aya.util.tyck.OrgaTycker;
+import org.aya.util.tyck.SccScheduler;
 import org.aya.util.tyck.SccTycker;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author kiva
@@ -65,7 +78,14 @@ public class LibraryCompiler {
     @NotNull CompilerAdvisor advisor,
     @NotNull LibraryOwner owner
   ) {
-    return new LibraryCompiler(reporter, flags, owner, advisor, new LibraryModuleLoader.United(primFactory));
+    return new LibraryCompiler(reporter, flags, owner, advisor,
+      new LibraryModuleLoader.United(primFactory, newExecutor(flags.parallelism()),
+        new TyckOptions(flags.internTerms(), flags.profileReductions() != null ? new ReductionProfiler() : null)));
+  }
+
+  private static @Nullable ExecutorService newExecutor(int parallelism) {
+    if (parallelism == 0) parallelism = Runtime.getRuntime().availableProcessors();
+    return parallelism > 1 ? new ForkJoinPool(parallelism) : null;
   }
 
   public static @NotNull LibraryCompiler newCompiler(
@@ -99,15 +119,43 @@ public class LibraryCompiler {
     }
   }
 
-  private void parse(@NotNull LibrarySource source) throws IOException {
-    source.parseMe(advisor.createParser(reporter));
-  }
-
-  /** @return whether the source file is already parsed. */
-  private boolean parseIfNeeded(@NotNull LibrarySource source) throws IOException {
-    if (source.program().get() != null) return true; // already parsed
-    parse(source);
-    return false;
+  /**
+   * Parse the sources, concurrently if the build has an executor, in which case each source has its own
+   * parser reporting to a buffer, and the buffers are forwarded in the order of {@param sources}
+   * after all of them are parsed. Without an executor, the sources are parsed one by one on this thread.
+   */
+  private void parse(@NotNull ImmutableSeq<LibrarySource> sources) throws IOException {
+    if (sources.isEmpty()) return;
+    var executor = moduleLoader.loader.states().executor();
+    if (executor == null) {
+      sources.forEachChecked(source -> source.parseMe(advisor.createParser(reporter)));
+      return;
+    }
+    var buffers = sources.map(_ -> new BufferReporter());
+    var tasks = sources.mapIndexed((i, source) -> CompletableFuture.runAsync(() -> {
+      try {
+        source.parseMe(advisor.createParser(buffers.get(i)));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, executor));
+    try {
+      CompletableFuture.allOf(tasks.toArray(CompletableFuture<?>[]::new)).join();
+    } catch (CompletionException _) {
+      // Rethrown below, in the order of the sources
+    }
+    buffers.forEach(buffer -> buffer.problems().forEach(reporter::report));
+    for (var task : tasks) {
+      try {
+        task.join();
+      } catch (CompletionException e) {
+        switch (e.getCause()) {
+          case UncheckedIOException io -> throw io.getCause();
+          case RuntimeException cause -> throw cause;
+          case null, default -> throw e;
+        }
+      }
+    }
   }
 
   /**
@@ -115,8 +163,7 @@ public class LibraryCompiler {
    * The graph is used to generate incremental build list according to files'
    * last modified time.
    */
-  private void resolveImportsIfNeeded(@NotNull LibrarySource source) throws IOException {
-    if (parseIfNeeded(source)) return; // already resolved
+  private void resolveImports(@NotNull LibrarySource source) throws IOException {
     var finder = new ImportResolver((mod, sourcePos) -> {
       var recurse = owner.findModule(mod);
       if (recurse == null) {
@@ -132,8 +179,11 @@ public class LibraryCompiler {
     var depGraph = MutableGraph.<LibrarySource>create();
     reportNest("[Info] Resolving source file dependency");
     var startTime = System.currentTimeMillis();
-    owner.librarySources().forEachChecked(src -> {
-      resolveImportsIfNeeded(src);
+    // the parsed ones are already resolved
+    var stale = owner.librarySources().filter(src -> src.program().get() == null).toImmutableSeq();
+    parse(stale);
+    stale.forEachChecked(this::resolveImports);
+    owner.librarySources().forEach(src -> {
       var known = depGraph.sucMut(src);
       var dedup = src.imports().filter(s ->
         known.noneMatch(k -> k.moduleName().equals(s.moduleName())));
@@ -149,7 +199,23 @@ public class LibraryCompiler {
       "Warning: command-line specified module path (--module-path) is ignored when compiling libraries.");
     if (flags.outputFile() != null) reporter.reportString(
       "Warning: command-line specified output file (-o, --output) is ignored when compiling libraries.");
-    return CompilerUtil.catching(reporter, flags, this::make);
+    var profile = flags.profileReductions();
+    var profiler = moduleLoader.loader.states().options().profiler();
+    var executor = moduleLoader.loader.states().executor();
+    try {
+      return CompilerUtil.catching(reporter, flags, profile == null || profiler == null
+        ? this::make : () -> makeProfiled(profile, profiler));
+    } finally {
+      if (executor != null) executor.shutdown();
+    }
+  }
+
+  private void makeProfiled(@NotNull CliEnums.ProfileFormat format, @NotNull ReductionProfiler profiler) throws IOException {
+    try {
+      make();
+    } finally {
+      reporter.reportString(CompilerUtil.renderProfile(format, profiler.rows()));
+    }
   }
 
   private void pretty(ImmutableSeq<LibrarySource> modified) throws IOException {
@@ -253,32 +319,153 @@ public class LibraryCompiler {
 
     // clear some info instead of reparse? No we can't, because
     // the StmtResolver mutates the concrete tree.
-    SCCs.forEachChecked(i -> i.forEachChecked(this::reparseAffected));
+    var reparse = SCCs.flatMap(i -> i).filter(src -> src.tycked().get() != null);
+    reparse.forEach(this::clearAffected);
+    parse(reparse);
 
     advisor.prepareLibraryOutput(owner);
     advisor.notifyIncrementalJob(modified, SCCs);
 
-    var tycker = new LibraryOrgaTycker(new LibrarySccTycker(reporter, moduleLoader, advisor), affected);
-    SCCs.forEachChecked(tycker::tyckSCC);
-    if (tycker.skippedSet.isNotEmpty()) {
-      reporter.reportString("I dislike the following module(s):");
-      tycker.skippedSet.forEach(f ->
-        reportNest(String.format("%s (%s)", f.moduleName(), f.displayPath())));
-      // Stop the whole compilation in case downstream libraries depend on skipped modules.
-      throw new LibraryTyckingFailed();
-    } else {
-      reporter.reportString("I like these modules :)");
+    try {
+      var cutoff = new EarlyCutoff(modified, depGraph, advisor);
+      var tycker = new LibraryOrgaTycker(new LibrarySccTycker(reporter, moduleLoader, advisor, cutoff), affected);
+      if (!advisor.compilesByLayer()) tyck(tycker, SCCs, depGraph, cutoff);
+      else for (var layer : layers(SCCs, depGraph)) {
+        tyck(tycker, layer, depGraph, cutoff);
+        // The importers in the later layers see the compiled definitions
+        for (var compiled : advisor.finishLayer(owner)) {
+          var path = compiled.modulePath();
+          var source = owner.findModule(path);
+          if (source != null) source.resolveInfo().set(compiled);
+          moduleLoader.update(path, compiled);
+        }
+      }
+      if (tycker.skippedSet.isNotEmpty()) {
+        reporter.reportString("I dislike the following module(s):");
+        tycker.skippedSet.forEach(f ->
+          reportNest(String.format("%s (%s)", f.moduleName(), f.displayPath())));
+        // Stop the whole compilation in case downstream libraries depend on skipped modules.
+        throw new LibraryTyckingFailed();
+      } else {
+        reporter.reportString("I like these modules :)");
+      }
+    } finally {
+      advisor.finishLibraryOutput(owner);
     }
     return false;
   }
 
-  private void reparseAffected(@NotNull LibrarySource src) throws IOException {
-    if (src.tycked().get() == null) return;
+  private void tyck(
+    @NotNull LibraryOrgaTycker tycker,
+    @NotNull ImmutableSeq<ImmutableSeq<LibrarySource>> SCCs,
+    @NotNull MutableGraph<LibrarySource> depGraph,
+    @NotNull EarlyCutoff cutoff
+  ) throws IOException {
+    var executor = moduleLoader.loader.states().executor();
+    if (executor == null) SCCs.forEachChecked(tycker::tyckSCC);
+    else tyckConcurrently(tycker, SCCs, depGraph, cutoff, executor);
+  }
+
+  /**
+   * Group {@param SCCs} by dependency layer: the first layer has the SCCs that depend on no other one
+   * of {@param SCCs}, and every other layer has the SCCs depending on the layer before it, so a layer only
+   * depends on the ones before it.
+   *
+   * @param SCCs in a topological order, dependencies first
+   */
+  private static @NotNull ImmutableSeq<ImmutableSeq<ImmutableSeq<LibrarySource>>> layers(
+    @NotNull ImmutableSeq<ImmutableSeq<LibrarySource>> SCCs,
+    @NotNull MutableGraph<LibrarySource> depGraph
+  ) {
+    var depths = MutableMap.<LibrarySource, Integer>create();
+    var layers = MutableList.<MutableList<ImmutableSeq<LibrarySource>>>create();
+    for (var scc : SCCs) {
+      // The modules of this SCC and the unaffected ones are not in depths yet
+      int depth = scc.view().flatMap(depGraph::suc)
+        .mapNotNull(depths::getOrNull)
+        .foldLeft(0, (max, dep) -> Math.max(max, dep + 1));
+      scc.forEach(src -> depths.put(src, depth));
+      while (layers.size() <= depth) layers.append(MutableList.create());
+      layers.get(depth).append(scc);
+    }
+    return layers.map(MutableList::toImmutableSeq).toImmutableSeq();
+  }
+
+  /**
+   * Tyck the modules whose dependencies are tycked concurrently. Every module reports to a buffer,
+   * which is forwarded in the order of {@param SCCs} as soon as the modules before it are done,
+   * so the output is the same as the sequential one.
+   */
+  private void tyckConcurrently(
+    @NotNull LibraryOrgaTycker tycker,
+    @NotNull ImmutableSeq<ImmutableSeq<LibrarySource>> SCCs,
+    @NotNull MutableGraph<LibrarySource> depGraph,
+    @NotNull EarlyCutoff cutoff,
+    @NotNull Executor executor
+  ) throws IOException {
+    var output = new OrderedOutput(SCCs.size());
+    try {
+      SccScheduler.run(SCCs, depGraph::suc, (scc, i) -> {
+        var buffer = new BufferReporter();
+        var counting = CountingReporter.delegate(buffer);
+        var loader = moduleLoader.share(new LibraryModuleLoader(counting, owner, advisor, moduleLoader.loader.states()));
+        var sccTycker = new LibrarySccTycker(counting, loader, advisor, cutoff);
+        var failed = new boolean[]{false};
+        try {
+          tycker.tyckSCC(order -> {
+            var what = sccTycker.tyckSCC(order);
+            failed[0] = what.isNotEmpty();
+            return what;
+          }, scc);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } finally {
+          output.done(i, buffer, failed[0]);
+        }
+      }, executor);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      output.flushAll();
+    }
+  }
+
+  /** The buffered output of the concurrently tycked SCCs, forwarded to {@link #reporter} in order. */
+  private final class OrderedOutput {
+    private final @Nullable BufferReporter @NotNull [] buffers;
+    private final boolean @NotNull [] failed;
+    private int next = 0;
+
+    OrderedOutput(int size) {
+      buffers = new BufferReporter[size];
+      failed = new boolean[size];
+    }
+
+    synchronized void done(int index, @NotNull BufferReporter buffer, boolean failed) {
+      buffers[index] = buffer;
+      this.failed[index] = failed;
+      for (; next < buffers.length && buffers[next] != null; next++) forward(next);
+    }
+
+    /** Forward the rest, skipping the SCCs that were never tycked because a dependency crashed */
+    synchronized void flushAll() {
+      for (; next < buffers.length; next++) if (buffers[next] != null) forward(next);
+    }
+
+    private void forward(int index) {
+      var buffer = buffers[index];
+      assert buffer != null;
+      buffer.problems().forEach(reporter::report);
+      // Like LibrarySccTycker#tyckSCC in sequential mode
+      if (failed[index]) reporter.clear();
+    }
+  }
+
+  private void clearAffected(@NotNull LibrarySource src) {
     src.tycked().set(null);
     src.resolveInfo().set(null);
     src.literateData().set(null);
     clearPrimitives(src.program().get());
-    parse(src);
   }
 
   private void clearModified(@NotNull LibrarySource src) {
@@ -353,17 +540,24 @@ public class LibraryCompiler {
   record LibrarySccTycker(
     @NotNull CountingReporter reporter,
     @NotNull ModuleLoader moduleLoader,
-    @NotNull CompilerAdvisor advisor
+    @NotNull CompilerAdvisor advisor,
+    @NotNull EarlyCutoff cutoff
   ) implements SccTycker<LibrarySource, IOException> {
     @Override
     public @NotNull ImmutableSeq<LibrarySource> tyckSCC(@NotNull ImmutableSeq<LibrarySource> order) throws IOException {
-      for (var f : order) advisor.clearModuleOutput(f);
+      // The compiled ones are loaded when imported
+      if (order.noneMatch(cutoff::needsTyck)) return ImmutableSeq.empty();
+      for (var f : order) {
+        cutoff.beforeTyck(f);
+        advisor.clearModuleOutput(f);
+      }
       for (var f : order) {
         tyckOne(f);
         if (reporter.anyError()) {
           reporter.clear();
           return ImmutableSeq.of(f);
         }
+        cutoff.afterTyck(f);
       }
       return ImmutableSeq.empty();
     }
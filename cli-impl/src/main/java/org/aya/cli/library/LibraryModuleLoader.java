@@ -3,22 +3,30 @@
 package org.aya.cli.library;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
 import org.aya.cli.library.incremental.CompilerAdvisor;
+import org.aya.cli.library.incremental.DeclCache;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
 import org.aya.primitive.PrimFactory;
+import org.aya.primitive.ShapeFactory;
 import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.context.EmptyContext;
 import org.aya.resolve.module.FileModuleLoader;
 import org.aya.resolve.module.ModuleLoader;
+import org.aya.resolve.salt.AyaBinOpSet;
 import org.aya.syntax.AyaFiles;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.tyck.TyckOptions;
+import org.aya.util.error.SourcePos;
 import org.aya.util.reporter.CountingReporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 /**
  * This module loader is used to load source/compiled modules in a library.
@@ -73,9 +81,22 @@ record LibraryModuleLoader(
     var program = source.program().get();
     assert program != null;
     var context = new EmptyContext(reporter, sourcePath).derive(mod);
-    var resolveInfo = resolveModule(states.primFactory, context, program, recurseLoader);
-    tyckModule(resolveInfo, (moduleResolve, defs) -> {
+    var resolveInfo = new ResolveInfo(context, states.primFactory, new ShapeFactory(), new AyaBinOpSet(reporter));
+    var cache = source.declCache().get();
+    source.declCache().set(null);
+    if (cache != null) resolveInfo.reused().putAll(cache.reuse(program, recurseLoader));
+    resolveModule(resolveInfo, program, recurseLoader);
+    // Remember where the problems are, the declarations containing them are not cached
+    var problems = MutableList.<SourcePos>create();
+    var recording = new LibraryModuleLoader(CountingReporter.delegate(problem -> {
+      synchronized (problems) {
+        problems.append(problem.sourcePos());
+      }
+      reporter.report(problem);
+    }), owner, advisor, states);
+    recording.tyckModule(resolveInfo, (moduleResolve, defs) -> {
       source.notifyTycked(moduleResolve, defs);
+      source.declCache().set(DeclCache.create(program, moduleResolve, recurseLoader, problems.toImmutableSeq()));
       if (reporter.noError()) saveCompiledCore(source, moduleResolve, defs, recurseLoader);
     });
 
@@ -108,6 +129,10 @@ record LibraryModuleLoader(
     file.resolveInfo().set(info);
   }
 
-  record United(@NotNull PrimFactory primFactory) {
+  @Override public @Nullable Executor tyckExecutor() { return states.executor; }
+  @Override public @NotNull TyckOptions tyckOptions() { return states.options; }
+
+  /** @param executor the executor on which modules, and the definitions in them, are tycked concurrently */
+  record United(@NotNull PrimFactory primFactory, @Nullable ExecutorService executor, @NotNull TyckOptions options) {
   }
 }
@@ -5,6 +5,7 @@ package org.aya.cli.library.incremental;
 import kala.collection.immutable.ImmutableSeq;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
+import org.aya.cli.utils.CliEnums;
 import org.aya.producer.AyaParserImpl;
 import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.module.CachedModuleLoader;
@@ -28,15 +29,45 @@ import java.nio.file.Path;
  * @author kiva
  */
 public interface CompilerAdvisor extends AutoCloseable {
-  static @NotNull CompilerAdvisor onDisk() { return new DiskCompilerAdvisor(); }
+  static @NotNull CompilerAdvisor onDisk() { return onDisk(CliEnums.JitBackend.source); }
+  static @NotNull CompilerAdvisor onDisk(@NotNull CliEnums.JitBackend backend) {
+    return onDisk(backend, CliEnums.JitTailCalls.mutual);
+  }
+  static @NotNull CompilerAdvisor onDisk(@NotNull CliEnums.JitBackend backend, @NotNull CliEnums.JitTailCalls tailCalls) {
+    return new DiskCompilerAdvisor(backend, tailCalls);
+  }
   static @NotNull CompilerAdvisor inMemory() { return new InMemoryCompilerAdvisor(); }
 
   boolean isSourceModified(@NotNull LibrarySource source);
   void updateLastModified(@NotNull LibrarySource source);
 
+  /**
+   * @return the {@link org.aya.compiler.InterfaceHash} of the compiled {@param source},
+   * null if it is not compiled or unknown, in which case its importers are always tycked again.
+   * @see EarlyCutoff
+   */
+  default @Nullable String interfaceHash(@NotNull LibrarySource source) { return null; }
+
   void prepareLibraryOutput(@NotNull LibraryOwner owner) throws IOException;
   void clearLibraryOutput(@NotNull LibraryOwner owner) throws IOException;
   void clearModuleOutput(@NotNull LibrarySource source) throws IOException;
+  /** Called after the modules of {@param owner} are tycked, to save what is deferred till then */
+  default void finishLibraryOutput(@NotNull LibraryOwner owner) throws IOException { }
+  /**
+   * Whether the modules are tycked by dependency layers, calling {@link #finishLayer} after each,
+   * that is, before the modules importing them are tycked.
+   */
+  default boolean compilesByLayer() { return false; }
+  /**
+   * Compile what {@link #doSaveCompiledCore} deferred for the modules tycked since the last call.
+   *
+   * @return the compiled {@link ResolveInfo}s of those modules, which their importers should see
+   * instead of the ones they were tycked to
+   * @see #compilesByLayer()
+   */
+  default @NotNull ImmutableSeq<ResolveInfo> finishLayer(@NotNull LibraryOwner owner) throws IOException {
+    return ImmutableSeq.empty();
+  }
 
   /** Used for injecting parser from IJ plugin to support on-the-fly analysis. */
   default @NotNull GenericAyaParser createParser(@NotNull Reporter reporter) {
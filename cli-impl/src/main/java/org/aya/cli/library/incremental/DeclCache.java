@@ -0,0 +1,359 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.library.incremental;
+
+import kala.collection.immutable.ImmutableMap;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.ImmutableSet;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import kala.collection.mutable.MutableSet;
+import kala.control.Either;
+import org.aya.generic.stmt.TyckOrder;
+import org.aya.generic.stmt.TyckUnit;
+import org.aya.resolve.ResolveInfo;
+import org.aya.resolve.context.ModuleExport;
+import org.aya.resolve.module.ModuleLoader;
+import org.aya.syntax.concrete.stmt.Command;
+import org.aya.syntax.concrete.stmt.Generalize;
+import org.aya.syntax.concrete.stmt.Stmt;
+import org.aya.syntax.concrete.stmt.decl.DataDecl;
+import org.aya.syntax.concrete.stmt.decl.Decl;
+import org.aya.syntax.concrete.stmt.decl.FnDecl;
+import org.aya.syntax.core.def.AnyDef;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.pat.Pat;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.Callable;
+import org.aya.syntax.ref.AnyDefVar;
+import org.aya.syntax.ref.DefVar;
+import org.aya.syntax.ref.ModulePath;
+import org.aya.util.error.SourcePos;
+import org.aya.util.error.WithPos;
+import org.aya.util.terck.MutableGraph;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The functions and data types of a module from its last tyck, keyed by the path of the
+ * {@link Command.Module} they are in and their source text, so that a module tycked again
+ * only checks the declarations that changed, or depend on one that did.
+ * <p>
+ * Before the module is resolved again, {@link #reuse} finds the unchanged declarations whose
+ * dependencies in the last {@link ResolveInfo#depGraph()} are unchanged too, and whose cores only
+ * refer to the definitions of other modules that the imports still define. The latter is the
+ * interface of the imports a declaration depends on: an imported declaration keeps its {@link DefVar}
+ * exactly when it is reused itself. The reused declarations go to {@link ResolveInfo#reused()},
+ * so the resolver binds their names to the old {@link DefVar}s, which still hold the cores,
+ * and the tycker skips them. The source positions in the cores are moved to where the declarations are now.
+ * Only the declarations the last tyck reported no problem in are cached,
+ * and nothing is reused if the other statements or the paths of the imported modules changed.
+ *
+ * @param header  the source text of the statements that are not declarations
+ * @param imports the paths of the modules imported by the module
+ * @param names   the names declared by the module, qualified by the path of the module they are in
+ */
+public record DeclCache(
+  @NotNull String header,
+  @NotNull ImmutableSeq<ModulePath> imports,
+  @NotNull ImmutableSet<String> names,
+  @NotNull ImmutableMap<Key, Cached> decls
+) {
+  /** @param module the names of the enclosing modules, joined by {@code ::} */
+  public record Key(@NotNull String module, @NotNull String text) { }
+  /**
+   * @param decl     the declaration whose {@link DefVar}s hold the cores, which is the one that was tycked
+   * @param pos      where the declaration was in the last tyck, and so are the positions in the cores
+   * @param deps     the declarations of the module it depends on, including through generalized variables
+   * @param upstream the definitions of the other modules its cores refer to
+   */
+  public record Cached(
+    @NotNull Decl decl, @NotNull SourcePos pos,
+    @NotNull ImmutableSeq<Key> deps, @NotNull ImmutableSeq<AnyDefVar> upstream
+  ) { }
+  private record Entry(@NotNull String module, @NotNull Decl decl) {
+    public @NotNull Key key() { return new Key(module, text(decl.entireSourcePos())); }
+
+    public @NotNull ImmutableSeq<String> names() {
+      var names = MutableList.of(module + "::" + decl.ref().name());
+      if (decl instanceof DataDecl data) data.body.forEach(con -> names.append(module + "::" + con.ref.name()));
+      return names.toImmutableSeq();
+    }
+  }
+
+  /**
+   * @param resolveInfo the module {@param program} resolved to
+   * @param loader      the loader of the modules {@param program} imports
+   * @param problems    the positions of the problems the tyck of {@param program} reported
+   */
+  public static @Nullable DeclCache create(
+    @NotNull ImmutableSeq<Stmt> program, @NotNull ResolveInfo resolveInfo,
+    @NotNull ModuleLoader loader, @NotNull ImmutableSeq<SourcePos> problems
+  ) {
+    var decls = MutableList.<Entry>create();
+    var header = new StringBuilder();
+    collect(program, "", decls, header);
+    // A problem outside the declarations is not known to be fixed by tycking some of them again
+    if (problems.anyMatch(pos -> !pos.belongsToSomeFile()
+      || decls.noneMatch(entry -> entry.decl().entireSourcePos().containsIndex(pos)))) return null;
+    var imports = imports(program, loader);
+    if (imports == null) return null;
+    var keys = new IdentityHashMap<TyckUnit, Key>();
+    decls.forEach(entry -> {
+      var key = entry.key();
+      keys.put(entry.decl(), key);
+      if (entry.decl() instanceof DataDecl data) data.body.forEach(con -> keys.put(con, key));
+    });
+    var cached = MutableMap.<Key, Cached>create();
+    decls.forEach(entry -> {
+      var decl = entry.decl();
+      var pos = decl.entireSourcePos();
+      var owner = resolveInfo.reused().getOrDefault(decl, decl);
+      if (decl.isExample || !tycked(owner) || !pos.belongsToSomeFile()
+        || problems.anyMatch(pos::containsIndex)) return;
+      cached.put(keys.get(decl), new Cached(owner, pos, deps(resolveInfo.depGraph(), decl, keys),
+        upstream(owner, resolveInfo.modulePath())));
+    });
+    return new DeclCache(header.toString(), imports.map(ResolveInfo::modulePath),
+      ImmutableSet.from(decls.view().flatMap(Entry::names)), ImmutableMap.from(cached));
+  }
+
+  /**
+   * Find the declarations of {@param program} that are the same as in the last tyck, and so are
+   * the ones they depend on, and rebind the {@link DefVar}s of the last tyck to them.
+   *
+   * @param loader the loader of the modules {@param program} imports
+   * @return the declarations and their constructors to reuse, to the ones of the last tyck,
+   * see {@link ResolveInfo#reused()}
+   */
+  public @NotNull ImmutableMap<Decl, Decl> reuse(@NotNull ImmutableSeq<Stmt> program, @NotNull ModuleLoader loader) {
+    var decls = MutableList.<Entry>create();
+    var header = new StringBuilder();
+    collect(program, "", decls, header);
+    var imports = imports(program, loader);
+    if (!this.header.equals(header.toString()) || imports == null
+      || !this.imports.equals(imports.map(ResolveInfo::modulePath))) return ImmutableMap.empty();
+    var defined = defined(imports);
+    // A new name in a module shadows the one from outside, in that module and the ones in it.
+    // At the top level, it makes the imported one ambiguous, which is reported.
+    var shadowing = decls.view()
+      .filter(entry -> !entry.module().isEmpty() && entry.names().anyMatch(name -> !names.contains(name)))
+      .map(Entry::module)
+      .toImmutableSeq();
+    var candidates = MutableMap.<Key, Decl>create();
+    decls.forEach(entry -> {
+      if (shadowing.anyMatch(module -> entry.module().equals(module) || entry.module().startsWith(module + "::")))
+        return;
+      if (!entry.decl().entireSourcePos().belongsToSomeFile()) return;
+      var key = entry.key();
+      var cached = this.decls.getOrNull(key);
+      if (cached != null && cached.upstream().allMatch(defined::contains)) candidates.put(key, entry.decl());
+    });
+    // Drop the ones depending on a declaration that is not reused, until there is none
+    var changed = true;
+    while (changed) {
+      changed = false;
+      for (var key : candidates.keysView().toImmutableSeq()) {
+        if (this.decls.get(key).deps().allMatch(candidates::containsKey)) continue;
+        candidates.remove(key);
+        changed = true;
+      }
+    }
+    var reused = MutableMap.<Decl, Decl>create();
+    candidates.forEach((key, decl) -> {
+      var cached = this.decls.get(key);
+      move(cached.decl(), cached.pos(), decl.entireSourcePos());
+      rebind(decl, cached.decl(), reused);
+    });
+    return ImmutableMap.from(reused);
+  }
+
+  /** Move the source positions in the cores of {@param cached} from {@param from} to {@param to}, where the same text is now */
+  private static void move(@NotNull Decl cached, @NotNull SourcePos from, @NotNull SourcePos to) {
+    if (!(cached instanceof FnDecl fn) || !(fn.ref.core.body() instanceof Either.Right(var clauses))) return;
+    var core = fn.ref.core;
+    var moved = clauses.map(clause -> new WithPos<>(move(clause.sourcePos(), from, to), clause.data()));
+    // The constructor initializes the ref
+    fn.ref.core = null;
+    new FnDef(fn.ref, core.modifiers(), Either.right(moved), core.height(), core.caseTree());
+  }
+
+  /** @return {@param pos} in {@param from}, moved to {@param to} */
+  private static @NotNull SourcePos move(@NotNull SourcePos pos, @NotNull SourcePos from, @NotNull SourcePos to) {
+    if (!pos.belongsToSomeFile()) return pos;
+    var lines = to.startLine() - from.startLine();
+    // The text is the same, so only the columns in the first line move
+    var columns = to.startColumn() - from.startColumn();
+    var offset = to.tokenStartIndex() - from.tokenStartIndex();
+    return new SourcePos(to.file(), pos.tokenStartIndex() + offset, pos.tokenEndIndex() + offset,
+      pos.startLine() + lines, pos.startColumn() + (pos.startLine() == from.startLine() ? columns : 0),
+      pos.endLine() + lines, pos.endColumn() + (pos.endLine() == from.startLine() ? columns : 0));
+  }
+
+  /** Make the {@link DefVar}s of {@param cached} refer to {@param decl}, which is the same declaration reparsed */
+  private static void rebind(@NotNull Decl decl, @NotNull Decl cached, @NotNull MutableMap<Decl, Decl> reused) {
+    switch (decl) {
+      case FnDecl fn when cached instanceof FnDecl oldFn -> oldFn.ref.concrete = fn;
+      case DataDecl data when cached instanceof DataDecl oldData -> {
+        oldData.ref.concrete = data;
+        data.body.forEachWith(oldData.body, (con, oldCon) -> {
+          oldCon.ref.concrete = con;
+          reused.put(con, oldCon);
+        });
+      }
+      default -> {
+        return;
+      }
+    }
+    reused.put(decl, cached);
+  }
+
+  /** @return the declarations of the module {@param decl} depends on, through the generalized variables too */
+  private static @NotNull ImmutableSeq<Key> deps(
+    @NotNull MutableGraph<TyckOrder> graph, @NotNull Decl decl,
+    @NotNull IdentityHashMap<TyckUnit, Key> keys
+  ) {
+    var self = keys.get(decl);
+    var deps = MutableSet.<Key>create();
+    var visited = MutableSet.<TyckOrder>create();
+    // The vertices of the declaration and its constructors share its key
+    var todo = MutableList.from(graph.E().keysView().filter(vertex -> keys.get(vertex.unit()) == self));
+    while (todo.isNotEmpty()) {
+      for (var dep : graph.suc(todo.removeLast())) {
+        var key = keys.get(dep.unit());
+        if (key != null) {
+          if (key != self) deps.add(key);
+        } else if (dep.unit() instanceof Generalize && visited.add(dep)) todo.append(dep);
+      }
+    }
+    return deps.toImmutableSeq();
+  }
+
+  /** @return the definitions of the other modules the cores of {@param decl} refer to */
+  private static @NotNull ImmutableSeq<AnyDefVar> upstream(@NotNull Decl decl, @NotNull ModulePath self) {
+    var upstream = MutableSet.<AnyDefVar>create();
+    Consumer<AnyDef> collect = ref -> {
+      if (!ref.fileModule().equals(self)) upstream.add(AnyDef.toVar(ref));
+    };
+    switch (decl) {
+      case FnDecl fn -> {
+        var core = fn.ref.core;
+        core.telescope().forEach(param -> refs(param.type(), collect));
+        refs(core.result(), collect);
+        switch (core.body()) {
+          case Either.Left(var body) -> refs(body, collect);
+          case Either.Right(var clauses) -> clauses.forEach(clause -> {
+            clause.data().patterns().forEach(pat -> refs(pat, collect));
+            refs(clause.data().body(), collect);
+          });
+        }
+      }
+      case DataDecl data -> {
+        var core = data.ref.core;
+        core.telescope().forEach(param -> refs(param.type(), collect));
+        core.body.forEach(con -> {
+          con.telescope().forEach(param -> refs(param.type(), collect));
+          refs(con.result(), collect);
+          con.pats.forEach(pat -> refs(pat, collect));
+        });
+      }
+      default -> { }
+    }
+    return upstream.toImmutableSeq();
+  }
+
+  private static void refs(@NotNull Term term, @NotNull Consumer<AnyDef> refs) {
+    if (term instanceof Callable.Tele call) refs.accept(call.ref());
+    term.descent(t -> {
+      refs(t, refs);
+      return t;
+    });
+  }
+
+  private static void refs(@NotNull Pat pat, @NotNull Consumer<AnyDef> refs) {
+    if (pat instanceof Pat.Con con) refs.accept(con.ref());
+    pat.descentTerm(t -> {
+      refs(t, refs);
+      return t;
+    });
+    pat.descentPat(p -> {
+      refs(p, refs);
+      return p;
+    });
+  }
+
+  /** @return the definitions exported by {@param imports} and the modules they import */
+  private static @NotNull MutableSet<AnyDefVar> defined(@NotNull ImmutableSeq<ResolveInfo> imports) {
+    var defined = MutableSet.<AnyDefVar>create();
+    var visited = MutableSet.<ModulePath>create();
+    var todo = MutableList.from(imports);
+    while (todo.isNotEmpty()) {
+      var info = todo.removeLast();
+      if (!visited.add(info.modulePath())) continue;
+      exported(info.thisModule().exports(), defined);
+      info.imports().forEach((_, imported) -> todo.append(imported.resolveInfo()));
+    }
+    return defined;
+  }
+
+  private static void exported(@NotNull ModuleExport export, @NotNull MutableSet<AnyDefVar> defined) {
+    defined.addAll(export.symbols().valuesView());
+    export.modules().forEach((_, inner) -> exported(inner, defined));
+  }
+
+  /** @return the modules imported by {@param stmts}, which are loaded already, or null if one is not found */
+  private static @Nullable ImmutableSeq<ResolveInfo> imports(
+    @NotNull ImmutableSeq<Stmt> stmts, @NotNull ModuleLoader loader
+  ) {
+    var imports = MutableList.<ResolveInfo>create();
+    for (var stmt : stmts) {
+      switch (stmt) {
+        case Command.Import cmd -> {
+          var info = loader.load(cmd.path());
+          if (info == null) return null;
+          imports.append(info);
+        }
+        case Command.Module inner -> {
+          var innerImports = imports(inner.contents(), loader);
+          if (innerImports == null) return null;
+          imports.appendAll(innerImports);
+        }
+        default -> { }
+      }
+    }
+    return imports.toImmutableSeq();
+  }
+
+  private static boolean tycked(@NotNull Decl decl) {
+    return switch (decl) {
+      case FnDecl fn -> fn.ref.core != null;
+      case DataDecl data -> data.ref.core != null && data.body.allMatch(con -> con.ref.core != null);
+      default -> false;
+    };
+  }
+
+  private static void collect(
+    @NotNull ImmutableSeq<Stmt> stmts, @NotNull String module,
+    @NotNull MutableList<Entry> decls, @NotNull StringBuilder header
+  ) {
+    stmts.forEach(stmt -> {
+      switch (stmt) {
+        case Decl decl -> decls.append(new Entry(module, decl));
+        case Command.Module inner -> {
+          header.append(inner.name()).append('{');
+          collect(inner.contents(), module + "::" + inner.name(), decls, header);
+          header.append('}');
+        }
+        default -> header.append(text(stmt.sourcePos())).append('\n');
+      }
+    });
+  }
+
+  private static @NotNull String text(@NotNull SourcePos pos) {
+    if (!pos.belongsToSomeFile()) return pos.toString();
+    return pos.file().sourceCode().substring(pos.tokenStartIndex(), pos.tokenEndIndex() + 1);
+  }
+}
@@ -35,6 +35,10 @@ public class DelegateCompilerAdvisor implements CompilerAdvisor {
     delegate.updateLastModified(source);
   }
 
+  @Override public @Nullable String interfaceHash(@NotNull LibrarySource source) {
+    return delegate.interfaceHash(source);
+  }
+
   @Override public void prepareLibraryOutput(@NotNull LibraryOwner owner) throws IOException {
     delegate.prepareLibraryOutput(owner);
   }
@@ -47,6 +51,16 @@ public class DelegateCompilerAdvisor implements CompilerAdvisor {
     delegate.clearModuleOutput(source);
   }
 
+  @Override public void finishLibraryOutput(@NotNull LibraryOwner owner) throws IOException {
+    delegate.finishLibraryOutput(owner);
+  }
+
+  @Override public boolean compilesByLayer() { return delegate.compilesByLayer(); }
+
+  @Override public @NotNull ImmutableSeq<ResolveInfo> finishLayer(@NotNull LibraryOwner owner) throws IOException {
+    return delegate.finishLayer(owner);
+  }
+
   @Override public @NotNull GenericAyaParser createParser(@NotNull Reporter reporter) {
     return delegate.createParser(reporter);
   }
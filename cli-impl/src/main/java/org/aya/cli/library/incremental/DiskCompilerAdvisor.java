@@ -2,13 +2,19 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.cli.library.incremental;
 
+import kala.collection.immutable.ImmutableMap;
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableList;
+import kala.tuple.Tuple;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
+import org.aya.cli.utils.CliEnums;
 import org.aya.cli.utils.CompilerUtil;
 import org.aya.compiler.CompiledModule;
 import org.aya.compiler.FileSerializer;
+import org.aya.compiler.FnSerializer;
+import org.aya.compiler.InMemoryCompiler;
+import org.aya.compiler.InterfaceHash;
 import org.aya.compiler.ModuleSerializer;
 import org.aya.compiler.NameSerializer;
 import org.aya.primitive.PrimFactory;
@@ -35,33 +41,90 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DiskCompilerAdvisor implements CompilerAdvisor {
+  /** Shared by the modules of a library, which may be compiled concurrently */
   private static class AyaClassLoader extends URLClassLoader {
-    public MutableList<Path> urls = MutableList.create();
+    static { registerAsParallelCapable(); }
+
+    private final MutableList<Path> urls = MutableList.create();
+    /** The class files compiled in memory, which are defined when they are first loaded */
+    private final ConcurrentHashMap<String, byte[]> compiled = new ConcurrentHashMap<>();
     public AyaClassLoader() {
       super(new URL[0], DiskCompilerAdvisor.class.getClassLoader());
     }
-    public void addURL(Path url) throws MalformedURLException {
+    public synchronized void addURL(Path url) throws MalformedURLException {
       addURL(url.toUri().toURL());
       urls.append(url);
     }
+    public synchronized ImmutableSeq<Path> urls() { return urls.toImmutableSeq(); }
+    public void addClasses(@NotNull ImmutableMap<String, byte[]> classes) {
+      classes.forEach(compiled::put);
+    }
+    @Override protected Class<?> findClass(String name) throws ClassNotFoundException {
+      var bytes = compiled.remove(name);
+      if (bytes == null) return super.findClass(name);
+      return defineClass(name, bytes, 0, bytes.length);
+    }
   }
   private final AyaClassLoader cl = new AyaClassLoader();
+  private final @NotNull CliEnums.JitBackend backend;
+  private final @NotNull FnSerializer.TailCalls tailCalls;
+  private final @NotNull InMemoryCompiler compiler = new InMemoryCompiler();
+  /** The generated sources of {@link CliEnums.JitBackend#batch}, compiled in {@link #finishLayer} */
+  private final MutableList<Generated> batch = MutableList.create();
+  /** @param resolveInfo the module {@param core} is saved from, tycked but not compiled */
+  private record Generated(
+    @NotNull LibrarySource file, @NotNull String className, @NotNull String javaCode,
+    @NotNull CompiledModule core, @NotNull ResolveInfo resolveInfo, @NotNull ModuleLoader recurseLoader
+  ) { }
+  public DiskCompilerAdvisor(@NotNull CliEnums.JitBackend backend, @NotNull CliEnums.JitTailCalls tailCalls) {
+    this.backend = backend;
+    this.tailCalls = switch (tailCalls) {
+      case none -> FnSerializer.TailCalls.None;
+      case self -> FnSerializer.TailCalls.Self;
+      case mutual -> FnSerializer.TailCalls.Mutual;
+    };
+  }
   @Override public void close() throws Exception { cl.close(); }
 
   @Override public boolean isSourceModified(@NotNull LibrarySource source) {
     try {
       var core = source.compiledCorePath();
       if (!Files.exists(core)) return true;
-      return Files.getLastModifiedTime(source.underlyingFile())
-        .compareTo(Files.getLastModifiedTime(core)) > 0;
-    } catch (IOException ignore) {
+      if (Files.getLastModifiedTime(source.underlyingFile())
+        .compareTo(Files.getLastModifiedTime(core)) <= 0) return false;
+      // Touched, but maybe not changed
+      var contentHash = readCompiledModule(core).contentHash();
+      if (contentHash == null || !contentHash.equals(contentHash(source))) return true;
+      updateLastModified(source);
+      return false;
+    } catch (IOException | ClassNotFoundException ignore) {
       return true;
     }
   }
 
+  @Override public @Nullable String interfaceHash(@NotNull LibrarySource source) {
+    try {
+      var core = source.compiledCorePath();
+      if (!Files.exists(core)) return null;
+      return readCompiledModule(core).interfaceHash();
+    } catch (IOException | ClassNotFoundException ignore) {
+      return null;
+    }
+  }
+
+  private static @NotNull String contentHash(@NotNull LibrarySource source) throws IOException {
+    return InterfaceHash.ofContent(Files.readAllBytes(source.underlyingFile()));
+  }
+
+  private static @NotNull CompiledModule readCompiledModule(@NotNull Path corePath) throws IOException, ClassNotFoundException {
+    try (var inputStream = FileUtil.ois(corePath)) {
+      return (CompiledModule) inputStream.readObject();
+    }
+  }
+
   @Override public void updateLastModified(@NotNull LibrarySource source) {
     try {
       var core = source.compiledCorePath();
@@ -113,13 +176,11 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
     if (corePath == null || sourcePath == null) return null;
     if (!Files.exists(corePath)) return null;
 
-    try (var inputStream = FileUtil.ois(corePath)) {
-      var compiledAya = (CompiledModule) inputStream.readObject();
-      var parentCount = mod.size();
-      var libraryRoot = corePath;
-      for (int i = 0; i < parentCount; i++) libraryRoot = libraryRoot.getParent();
-      return doLoadCompiledCore(compiledAya, reporter, mod, sourcePath, libraryRoot, recurseLoader, new PrimFactory());
-    }
+    var compiledAya = readCompiledModule(corePath);
+    var parentCount = mod.size();
+    var libraryRoot = corePath;
+    for (int i = 0; i < parentCount; i++) libraryRoot = libraryRoot.getParent();
+    return doLoadCompiledCore(compiledAya, reporter, mod, sourcePath, libraryRoot, recurseLoader, new PrimFactory());
   }
 
   @Override public @NotNull ResolveInfo doSaveCompiledCore(
@@ -128,21 +189,105 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
     @NotNull ImmutableSeq<TyckDef> defs,
     @NotNull ModuleLoader recurseLoader
   ) throws IOException, ClassNotFoundException {
-    var javaCode = new FileSerializer(resolveInfo.shapeFactory())
+    var javaCode = new FileSerializer(resolveInfo.shapeFactory(), tailCalls)
       .serialize(new ModuleSerializer.ModuleResult(
         QPath.fileLevel(file.moduleName()),
         defs.filterIsInstance(TopLevelDef.class)))
       .result();
     var libraryRoot = file.owner().outDir();
     var baseDir = computeBaseDir(libraryRoot).toAbsolutePath();
-    var relativePath = NameSerializer.getReference(QPath.fileLevel(file.moduleName()), null,
-      NameSerializer.NameType.ClassPath) + ".java";
-    var javaSrcPath = baseDir.resolve(relativePath);
-    FileUtil.writeString(javaSrcPath, javaCode);
-    var compiler = ToolProvider.getSystemJavaCompiler();
-    var fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
-    var compilationUnits = fileManager.getJavaFileObjects(javaSrcPath);
-    var classpath = cl.urls.view()
+    var classpath = classPath(baseDir);
+    switch (backend) {
+      case source -> {
+        var relativePath = NameSerializer.getReference(QPath.fileLevel(file.moduleName()), null,
+          NameSerializer.NameType.ClassPath) + ".java";
+        var javaSrcPath = baseDir.resolve(relativePath);
+        FileUtil.writeString(javaSrcPath, javaCode);
+        var javac = ToolProvider.getSystemJavaCompiler();
+        var fileManager = javac.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        var compilationUnits = fileManager.getJavaFileObjects(javaSrcPath);
+        var options = ImmutableSeq.of("--class-path", classpath.joinToString(File.pathSeparator))
+          .appendedAll(InMemoryCompiler.OPTIONS);
+        var task = javac.getTask(null, fileManager, null, options.asJava(), null, compilationUnits);
+        task.call();
+        if (Global.DELETE_JIT_JAVA_SOURCE) Files.delete(javaSrcPath);
+      }
+      case batch -> {
+        var className = NameSerializer.getModuleReference(QPath.fileLevel(file.moduleName()));
+        var core = CompilerUtil.saveCompiledCore(file.compiledCorePath(), defs, resolveInfo, contentHash(file));
+        synchronized (batch) {
+          batch.append(new Generated(file, className, javaCode, core, resolveInfo, recurseLoader));
+        }
+        return resolveInfo;
+      }
+    }
+    var coreFile = file.compiledCorePath();
+
+    // save compiled core and load compiled ResolveInfo
+    var coreMod = CompilerUtil.saveCompiledCore(coreFile, defs, resolveInfo, contentHash(file));
+    return doLoadCompiledCore(
+      coreMod, resolveInfo.reporter(),
+      resolveInfo.modulePath(), file.underlyingFile(), libraryRoot,
+      recurseLoader, resolveInfo.primFactory()
+    );
+  }
+
+  @Override public boolean compilesByLayer() { return backend == CliEnums.JitBackend.batch; }
+
+  /** Compile the sources of the modules of a layer with one javac task, and load the compiled modules */
+  @Override public @NotNull ImmutableSeq<ResolveInfo> finishLayer(@NotNull LibraryOwner owner) throws IOException {
+    var generated = takeBatch();
+    if (!compile(owner, generated)) return ImmutableSeq.empty();
+    var compiled = MutableList.<ResolveInfo>create();
+    for (var g : generated) {
+      var info = g.resolveInfo;
+      try {
+        compiled.append(doLoadCompiledCore(g.core, info.reporter(), info.modulePath(),
+          g.file.underlyingFile(), g.file.owner().outDir(), g.recurseLoader, info.primFactory()));
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+    }
+    return compiled.toImmutableSeq();
+  }
+
+  /** Compile what is left, for example, when a layer crashed */
+  @Override public void finishLibraryOutput(@NotNull LibraryOwner owner) throws IOException {
+    compile(owner, takeBatch());
+  }
+
+  private @NotNull ImmutableSeq<Generated> takeBatch() {
+    synchronized (batch) {
+      var generated = batch.toImmutableSeq();
+      batch.clear();
+      return generated;
+    }
+  }
+
+  /** @return whether {@param generated} is compiled, and the class files are saved */
+  private boolean compile(@NotNull LibraryOwner owner, @NotNull ImmutableSeq<Generated> generated) throws IOException {
+    if (generated.isEmpty()) return false;
+    var baseDir = computeBaseDir(owner.outDir()).toAbsolutePath();
+    var sources = ImmutableMap.from(generated.view().map(g -> Tuple.of(g.className, g.javaCode)));
+    var classes = compiler.compile(sources, classPath(baseDir));
+    if (classes.isEmpty()) {
+      // The compiled cores cannot be loaded without the classes, compile the modules again in the next build
+      for (var g : generated) clearModuleOutput(g.file);
+      return false;
+    }
+    saveClasses(baseDir, classes);
+    return true;
+  }
+
+  private void saveClasses(@NotNull Path baseDir, @NotNull ImmutableMap<String, byte[]> classes) throws IOException {
+    for (var name : classes.keysView()) {
+      FileUtil.writeBytes(baseDir.resolve(name.replace('.', '/') + ".class"), classes.get(name));
+    }
+    cl.addClasses(classes);
+  }
+
+  private @NotNull ImmutableSeq<String> classPath(@NotNull Path baseDir) {
+    var classpath = cl.urls().view()
       .appended(baseDir)
       .map(Path::toString);
     var selfClassPath = System.getProperty("java.class.path");
@@ -155,20 +300,7 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
         .normalize();
       classpath = classpath.appended(jlinkClassPath.toString());
     }
-    var options = List.of("--class-path", classpath.joinToString(File.pathSeparator),
-      "--enable-preview", "--release", "21");
-    var task = compiler.getTask(null, fileManager, null, options, null, compilationUnits);
-    task.call();
-    if (Global.DELETE_JIT_JAVA_SOURCE) Files.delete(javaSrcPath);
-    var coreFile = file.compiledCorePath();
-
-    // save compiled core and load compiled ResolveInfo
-    var coreMod = CompilerUtil.saveCompiledCore(coreFile, defs, resolveInfo);
-    return doLoadCompiledCore(
-      coreMod, resolveInfo.reporter(),
-      resolveInfo.modulePath(), file.underlyingFile(), libraryRoot,
-      recurseLoader, resolveInfo.primFactory()
-    );
+    return classpath.toImmutableSeq();
   }
 
   private static @NotNull Path computeBaseDir(@NotNull Path outDir) {
@@ -0,0 +1,59 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.library.incremental;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.ImmutableSet;
+import org.aya.cli.library.source.LibrarySource;
+import org.aya.util.terck.MutableGraph;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Early cutoff of an incremental build: a module affected by the modified ones is tycked again only if
+ * it is modified, or it imports a module that is tycked again and whose interface changed,
+ * as told by {@link CompilerAdvisor#interfaceHash}.
+ * <p>
+ * The interface hash covers the bodies of definitions only by the names they refer to,
+ * but a module may unfold or re-export the definitions of the modules it imports,
+ * so a module that imports a changed one is considered changed as well,
+ * i.e. a change propagates along the transitive imports.
+ * Thread-safe, as modules may be tycked concurrently.
+ *
+ * @param depGraph the dependency graph of the modules
+ */
+public record EarlyCutoff(
+  @NotNull ImmutableSet<LibrarySource> modified,
+  @NotNull MutableGraph<LibrarySource> depGraph,
+  @NotNull CompilerAdvisor advisor,
+  @NotNull ConcurrentHashMap<LibrarySource, String> oldHashes,
+  @NotNull Set<LibrarySource> changed
+) {
+  public EarlyCutoff(
+    @NotNull ImmutableSeq<LibrarySource> modified,
+    @NotNull MutableGraph<LibrarySource> depGraph,
+    @NotNull CompilerAdvisor advisor
+  ) {
+    this(ImmutableSet.from(modified), depGraph, advisor, new ConcurrentHashMap<>(), ConcurrentHashMap.newKeySet());
+  }
+
+  /** Called after the modules {@param source} imports are done */
+  public boolean needsTyck(@NotNull LibrarySource source) {
+    return modified.contains(source) || depGraph.suc(source).anyMatch(changed::contains);
+  }
+
+  /** Called before the compiled {@param source} is cleared */
+  public void beforeTyck(@NotNull LibrarySource source) {
+    var hash = advisor.interfaceHash(source);
+    if (hash != null) oldHashes.put(source, hash);
+  }
+
+  /** Called after {@param source} is tycked and compiled successfully */
+  public void afterTyck(@NotNull LibrarySource source) {
+    var oldHash = oldHashes.get(source);
+    if (oldHash == null || !oldHash.equals(advisor.interfaceHash(source))
+      || depGraph.suc(source).anyMatch(changed::contains)) changed.add(source);
+  }
+}
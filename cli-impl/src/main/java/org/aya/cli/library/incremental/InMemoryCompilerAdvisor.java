@@ -19,6 +19,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 
+/** The methods are synchronized, because the modules of a library may be compiled concurrently. */
 public class InMemoryCompilerAdvisor implements CompilerAdvisor {
   protected final @NotNull MutableMap<Path, FileTime> coreTimestamp = MutableMap.create();
   protected final @NotNull MutableMap<ModulePath, ResolveInfo> compiledCore = MutableMap.create();
@@ -27,7 +28,7 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
     return source.underlyingFile();
   }
 
-  @Override public boolean isSourceModified(@NotNull LibrarySource source) {
+  @Override public synchronized boolean isSourceModified(@NotNull LibrarySource source) {
     var coreLastModified = coreTimestamp.getOption(timestampKey(source));
     try {
       if (coreLastModified.isEmpty()) return true;
@@ -38,7 +39,7 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
     }
   }
 
-  @Override public void updateLastModified(@NotNull LibrarySource source) {
+  @Override public synchronized void updateLastModified(@NotNull LibrarySource source) {
     try {
       coreTimestamp.put(timestampKey(source), Files.getLastModifiedTime(timestampKey(source)));
     } catch (IOException ignore) {
@@ -47,20 +48,20 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
 
   @Override public void prepareLibraryOutput(@NotNull LibraryOwner owner) { }
 
-  @Override public void clearLibraryOutput(@NotNull LibraryOwner owner) {
+  @Override public synchronized void clearLibraryOutput(@NotNull LibraryOwner owner) {
     owner.librarySources().forEach(src -> {
       coreTimestamp.remove(timestampKey(src));
       clearModuleOutput(src);
     });
   }
 
-  @Override public void clearModuleOutput(@NotNull LibrarySource source) {
+  @Override public synchronized void clearModuleOutput(@NotNull LibrarySource source) {
     // TODO: what if module name clashes?
     compiledCore.remove(source.moduleName());
   }
 
   @Override
-  public @Nullable ResolveInfo doLoadCompiledCore(
+  public synchronized @Nullable ResolveInfo doLoadCompiledCore(
     @NotNull Reporter reporter,
     @NotNull LibraryOwner owner, @NotNull ModulePath mod,
     @Nullable Path sourcePath,
@@ -71,7 +72,7 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
     return compiledCore.getOrNull(mod);
   }
 
-  @Override public @NotNull ResolveInfo doSaveCompiledCore(
+  @Override public synchronized @NotNull ResolveInfo doSaveCompiledCore(
     @NotNull LibrarySource file,
     @NotNull ResolveInfo resolveInfo,
     @NotNull ImmutableSeq<TyckDef> defs,
@@ -6,6 +6,7 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableList;
 import kala.range.primitive.IntRange;
 import kala.value.MutableValue;
+import org.aya.cli.library.incremental.DeclCache;
 import org.aya.cli.utils.LiterateData;
 import org.aya.literate.Literate;
 import org.aya.pretty.doc.Doc;
@@ -34,6 +35,7 @@ import java.util.Objects;
  * @param program     initialized after parse
  * @param resolveInfo initialized after resolve
  * @param tycked      initialized after tyck
+ * @param declCache   the definitions of the last tyck, reused by the next one
  */
 @Debug.Renderer(text = "displayPath()")
 public record LibrarySource(
@@ -44,13 +46,14 @@ public record LibrarySource(
   @NotNull MutableValue<ImmutableSeq<Stmt>> program,
   @NotNull MutableValue<ImmutableSeq<TyckDef>> tycked,
   @NotNull MutableValue<ResolveInfo> resolveInfo,
-  @NotNull MutableValue<LiterateData> literateData
+  @NotNull MutableValue<LiterateData> literateData,
+  @NotNull MutableValue<DeclCache> declCache
 ) implements GenericAyaFile {
   public static @NotNull LibrarySource create(@NotNull LibraryOwner owner, @NotNull Path file) {
     var underlyingFile = FileUtil.canonicalize(file);
     return new LibrarySource(owner, underlyingFile, AyaFiles.isLiterate(underlyingFile),
       MutableList.create(), MutableValue.create(),
-      MutableValue.create(), MutableValue.create(), MutableValue.create());
+      MutableValue.create(), MutableValue.create(), MutableValue.create(), MutableValue.create());
   }
 
   public @NotNull ModulePath moduleName() {
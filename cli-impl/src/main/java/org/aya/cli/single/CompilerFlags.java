@@ -19,7 +19,10 @@ public record CompilerFlags(
   boolean remake,
   @Nullable CompilerFlags.PrettyInfo prettyInfo,
   @NotNull SeqLike<Path> modulePaths,
-  @Nullable Path outputFile
+  @Nullable Path outputFile,
+  @Nullable CliEnums.ProfileFormat profileReductions,
+  int parallelism,
+  boolean internTerms
 ) {
   public static @Nullable CompilerFlags.PrettyInfo prettyInfoFromOutput(
     @Nullable Path outputFile, @NotNull RenderOptions renderOptions,
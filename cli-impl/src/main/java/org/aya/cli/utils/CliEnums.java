@@ -23,6 +23,33 @@ public interface CliEnums {
     literate,
   }
 
+  /** @see org.aya.normalize.ReductionProfiler */
+  enum ProfileFormat {
+    table,
+    json,
+  }
+
+  /** How the Java source generated for the compiled modules becomes class files */
+  enum JitBackend {
+    /** Write the source next to the class files and compile it from there */
+    source,
+    /**
+     * Tyck the modules of a library by dependency layer, and compile the sources of each layer in memory
+     * with one javac task before the next layer is tycked, so the importers see the compiled definitions
+     */
+    batch,
+  }
+
+  /** How the calls in tail position are compiled to Java */
+  enum JitTailCalls {
+    /** Like the other calls, on the Java stack */
+    none,
+    /** The calls of a function to itself become a loop */
+    self,
+    /** Also, the calls to the other functions in the same file go through a trampoline */
+    mutual,
+  }
+
   enum PrettyFormat {
     html(RenderOptions.OutputTarget.HTML),
     plain(RenderOptions.OutputTarget.Plain),
@@ -2,16 +2,21 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.cli.utils;
 
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import kala.collection.immutable.ImmutableSeq;
 import kala.function.CheckedRunnable;
 import org.aya.cli.single.CompilerFlags;
 import org.aya.compiler.CompiledModule;
 import org.aya.generic.InterruptException;
+import org.aya.normalize.ReductionProfiler;
 import org.aya.resolve.ResolveInfo;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.util.error.Panic;
 import org.aya.util.reporter.CountingReporter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
@@ -46,9 +51,9 @@ public class CompilerUtil {
 
   public static @NotNull CompiledModule saveCompiledCore(
     @NotNull Path coreFile, @NotNull ImmutableSeq<TyckDef> defs,
-    @NotNull ResolveInfo resolveInfo
+    @NotNull ResolveInfo resolveInfo, @Nullable String contentHash
   ) throws IOException {
-    var compiledAya = CompiledModule.from(resolveInfo, defs);
+    var compiledAya = CompiledModule.from(resolveInfo, defs, contentHash);
     try (var outputStream = coreWriter(coreFile)) {
       outputStream.writeObject(compiledAya);
     }
@@ -60,6 +65,33 @@ public class CompilerUtil {
     Files.createDirectories(coreFile.toAbsolutePath().getParent());
     return new ObjectOutputStream(Files.newOutputStream(coreFile));
   }
+  public static @NotNull String renderProfile(
+    @NotNull CliEnums.ProfileFormat format,
+    @NotNull ImmutableSeq<ReductionProfiler.Row> rows
+  ) {
+    return switch (format) {
+      case table -> rows.view()
+        .map(row -> "%-5s %10d %10d %10d %10.3f  %s".formatted(row.kind(),
+          row.unfoldings(), row.matches(), row.stuck(), row.nanos() / 1e6, row.name()))
+        .prepended("%-5s %10s %10s %10s %10s  %s".formatted("kind", "unfold", "match", "stuck", "ms", "name"))
+        .joinToString("\n");
+      case json -> {
+        var array = new JsonArray();
+        rows.forEach(row -> {
+          var object = new JsonObject();
+          object.addProperty("kind", row.kind().name());
+          object.addProperty("name", row.name());
+          object.addProperty("unfoldings", row.unfoldings());
+          object.addProperty("matches", row.matches());
+          object.addProperty("stuck", row.stuck());
+          object.addProperty("nanos", row.nanos());
+          array.add(object);
+        });
+        yield new GsonBuilder().setPrettyPrinting().create().toJson(array);
+      }
+    };
+  }
+
   public static void handleInternalError(@NotNull Panic e) {
     e.printStackTrace();
     e.printHint();
@@ -2,13 +2,18 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.test;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableSet;
 import org.aya.cli.library.LibraryCompiler;
 import org.aya.cli.library.incremental.CompilerAdvisor;
 import org.aya.cli.library.incremental.DelegateCompilerAdvisor;
 import org.aya.cli.library.incremental.InMemoryCompilerAdvisor;
 import org.aya.cli.library.json.LibraryConfigData;
+import org.aya.cli.library.source.LibrarySource;
 import org.aya.cli.library.source.DiskLibraryOwner;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.render.RenderOptions;
@@ -17,11 +22,20 @@ import org.aya.cli.utils.CliEnums;
 import org.aya.ide.LspPrimFactory;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.primitive.PrimFactory;
+import org.aya.resolve.ResolveInfo;
+import org.aya.resolve.module.ModuleLoader;
+import org.aya.syntax.concrete.stmt.decl.FnBody;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.TyckDef;
 import org.aya.util.FileUtil;
+import org.aya.util.error.WithPos;
+import org.aya.util.reporter.Reporter;
 import org.aya.util.reporter.ThrowingReporter;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.IOException;
@@ -29,10 +43,14 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * LibraryTest testing the compilation of a library and its dependencies
@@ -70,7 +88,59 @@ public class LibraryTest {
       true, false, false, false, CliEnums.PrettyStage.literate,
       CliEnums.PrettyFormat.html, new AyaPrettierOptions(), new RenderOptions(), null
     );
-    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, prettyInfo, ImmutableSeq.empty(), null);
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, prettyInfo, ImmutableSeq.empty(), null, null, 1, false);
+    assertEquals(0, compile(flags, DIR));
+  }
+
+  @Test public void testParallel() throws IOException {
+    FileUtil.deleteRecursively(DIR.resolve("build"));
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, null,
+      ImmutableSeq.of(TestRunner.DEFAULT_TEST_DIR.resolve("shared/src")), null, null, 4, false);
+    assertEquals(0, compile(flags, DIR));
+    // Compiled cores of the parallel build can be loaded
+    FileUtil.deleteRecursively(DIR.resolve("build").resolve("out"));
+    assertEquals(0, compile(flags, DIR));
+  }
+
+  @Test public void testProfileReductions() throws IOException {
+    var sequential = profile(1);
+    assertTrue(sequential.anyMatch(row -> row.get("kind").getAsString().equals("Fn")
+      && row.get("unfoldings").getAsLong() > 0));
+    assertTrue(sequential.allMatch(row -> row.get("nanos").getAsLong() >= 0
+      && row.get("matches").getAsLong() <= row.get("unfoldings").getAsLong() + row.get("stuck").getAsLong()));
+    // Parallel tycks record into the same profile
+    var parallel = profile(4);
+    Function<ImmutableSeq<JsonObject>, ImmutableSeq<String>> keys = rows -> rows
+      .map(row -> row.get("kind").getAsString() + " " + row.get("name").getAsString())
+      .sorted();
+    assertIterableEquals(keys.apply(sequential), keys.apply(parallel));
+  }
+
+  private static @NotNull ImmutableSeq<JsonObject> profile(int parallelism) throws IOException {
+    FileUtil.deleteRecursively(DIR.resolve("build"));
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, null,
+      ImmutableSeq.of(TestRunner.DEFAULT_TEST_DIR.resolve("shared/src")), null,
+      CliEnums.ProfileFormat.json, parallelism, false);
+    var messages = MutableList.<String>create();
+    Reporter reporter = problem -> {
+      REPORTER.report(problem);
+      var message = problem.describe(AyaPrettierOptions.pretty()).debugRender();
+      synchronized (messages) { messages.append(message); }
+    };
+    assertEquals(0, LibraryCompiler.compile(new PrimFactory(), reporter, flags, CompilerAdvisor.onDisk(), DIR));
+    var json = messages.findLast(message -> message.startsWith("[")).get();
+    return ImmutableSeq.from(JsonParser.parseString(json).getAsJsonArray()).map(JsonElement::getAsJsonObject);
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = CliEnums.JitBackend.class, names = {"batch"})
+  public void testJitBackend(@NotNull CliEnums.JitBackend backend) throws IOException {
+    FileUtil.deleteRecursively(DIR.resolve("build"));
+    var flags = TestRunner.flags();
+    var advisor = CompilerAdvisor.onDisk(backend);
+    assertEquals(0, LibraryCompiler.compile(new PrimFactory(), REPORTER, flags, advisor, DIR));
+    // The class files of 'common' are saved, and loaded by the next build
+    FileUtil.deleteRecursively(DIR.resolve("build").resolve("out"));
     assertEquals(0, compile(flags, DIR));
   }
 
@@ -96,10 +166,165 @@ public class LibraryTest {
     data.assertDelegate();
   }
 
+  @Test public void testReuseDecls() throws IOException {
+    var factory = new LspPrimFactory();
+    var advisor = new TestAdvisor();
+    var owner = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(DIR));
+    assertEquals(0, compile(factory, advisor, owner));
+    var source = owner.librarySources().find(src -> src.underlyingFile().endsWith("Match.aya")).get();
+    var before = source.tycked().get();
+    // Tyck the module again without changing it, every definition is reused
+    advisor.touch("Match.aya");
+    assertEquals(0, compile(factory, advisor, owner));
+    var after = source.tycked().get();
+    assertNotSame(before, after);
+    assertEquals(before.size(), after.size());
+    assertTrue(after.allMatch(def -> before.anyMatch(old -> old == def)));
+  }
+
+  @Test public void testReuseUnchangedDecls(@TempDir Path root) throws IOException {
+    Files.writeString(root.resolve("aya.json"), """
+      { "ayaVersion": "0.31", "group": "org.aya-prover", "name": "reuse", "version": "0.1.0", "dependency": {} }
+      """);
+    var file = Files.createDirectories(root.resolve("src")).resolve("M.aya");
+    Files.writeString(file, """
+      open inductive Nat | zero | suc Nat
+      def other : Nat => zero
+      module B { def same : Nat => zero }
+      def one : Nat => suc zero
+      def two : Nat => suc one
+      module A { def same : Nat => zero }
+      """);
+    var factory = new LspPrimFactory();
+    var advisor = new TestAdvisor();
+    var owner = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(root));
+    assertEquals(0, compile(factory, advisor, owner));
+    var source = owner.librarySources().find(src -> src.underlyingFile().endsWith("M.aya")).get();
+    var before = source.tycked().get();
+    // Change `one`, which moves `two`, and `A::same` so that it no longer has the same text as `B::same`
+    Files.writeString(file, """
+      open inductive Nat | zero | suc Nat
+      def other : Nat => zero
+      module B { def same : Nat => zero }
+      def one : Nat => suc (suc zero)
+      def two : Nat => suc one
+      module A { def same : Nat => one }
+      """);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+    assertEquals(0, compile(factory, advisor, owner));
+    var after = source.tycked().get();
+    Function<String, TyckDef> old = name -> before.find(def -> qualified(def).equals(name)).get();
+    Function<String, TyckDef> now = name -> after.find(def -> qualified(def).equals(name)).get();
+    // The changed declarations and their dependents are tycked again
+    assertNotSame(old.apply("M::one"), now.apply("M::one"));
+    assertNotSame(old.apply("M::two"), now.apply("M::two"));
+    assertNotSame(old.apply("A::same"), now.apply("A::same"));
+    // The others are reused, in the module they were declared in
+    assertSame(old.apply("M::Nat"), now.apply("M::Nat"));
+    assertSame(old.apply("M::other"), now.apply("M::other"));
+    assertSame(old.apply("B::same"), now.apply("B::same"));
+  }
+
+  @Test public void testMovedDeclsReused(@TempDir Path root) throws IOException {
+    Files.writeString(root.resolve("aya.json"), """
+      { "ayaVersion": "0.31", "group": "org.aya-prover", "name": "moved", "version": "0.1.0", "dependency": {} }
+      """);
+    var file = Files.createDirectories(root.resolve("src")).resolve("M.aya");
+    Files.writeString(file, """
+      open inductive Nat | zero | suc Nat
+      def pred Nat : Nat
+      | zero => zero
+      | suc n => n
+      """);
+    var factory = new LspPrimFactory();
+    var advisor = new TestAdvisor();
+    var owner = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(root));
+    assertEquals(0, compile(factory, advisor, owner));
+    var source = owner.librarySources().find(src -> src.underlyingFile().endsWith("M.aya")).get();
+    var before = source.tycked().get();
+    // The text of the declarations is the same, but they moved
+    Files.writeString(file, """
+      def none : Nat => zero
+      open inductive Nat | zero | suc Nat
+      def pred Nat : Nat
+      | zero => zero
+      | suc n => n
+      """);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+    assertEquals(0, compile(factory, advisor, owner));
+    var after = source.tycked().get();
+    Function<ImmutableSeq<TyckDef>, TyckDef> pred = defs -> defs.find(def -> qualified(def).equals("M::pred")).get();
+    assertSame(before.find(def -> qualified(def).equals("M::Nat")).get(),
+      after.find(def -> qualified(def).equals("M::Nat")).get());
+    // The clauses of the reused core are where they are now
+    var fn = (FnDef) pred.apply(after);
+    assertSame(((FnDef) pred.apply(before)).ref(), fn.ref());
+    var concrete = ((FnBody.BlockBody) fn.ref().concrete.body).clauses();
+    var clauses = fn.body().getRightValue().map(WithPos::sourcePos);
+    // Compared by the fields, because positions may all be equal in tests
+    assertEquals(concrete.map(clause -> clause.sourcePos.tokenStartIndex() + ":" + clause.sourcePos.startLine()),
+      clauses.map(pos -> pos.tokenStartIndex() + ":" + pos.startLine()));
+    assertSame(concrete.get(0).sourcePos.file(), clauses.get(0).file());
+  }
+
+  private static @NotNull String qualified(@NotNull TyckDef def) {
+    var module = def.ref().module;
+    assertNotNull(module);
+    return module.module().module().getLast() + "::" + def.ref().name();
+  }
+
+  @Test public void testCutoffThroughBodies(@TempDir Path root) throws IOException {
+    Files.writeString(root.resolve("aya.json"), """
+      { "ayaVersion": "0.31", "group": "org.aya-prover", "name": "cutoff", "version": "0.1.0", "dependency": {} }
+      """);
+    var src = Files.createDirectories(root.resolve("src"));
+    Files.writeString(src.resolve("C.aya"), """
+      open inductive Nat | zero | suc Nat
+      def one : Nat => suc zero
+      """);
+    // B re-exports C, and its interface refers to `one` only by name
+    Files.writeString(src.resolve("B.aya"), """
+      public open import C
+      def two : Nat => suc one
+      """);
+    Files.writeString(src.resolve("A.aya"), """
+      open import B
+      def three : Nat => suc two
+      """);
+    Set<String> saved = ConcurrentHashMap.newKeySet();
+    var advisor = new DelegateCompilerAdvisor(CompilerAdvisor.onDisk()) {
+      @Override public @NotNull ResolveInfo doSaveCompiledCore(
+        @NotNull LibrarySource file, @NotNull ResolveInfo resolveInfo,
+        @NotNull ImmutableSeq<TyckDef> defs, @NotNull ModuleLoader recurseLoader
+      ) throws IOException, ClassNotFoundException {
+        saved.add(file.underlyingFile().getFileName().toString());
+        return super.doSaveCompiledCore(file, resolveInfo, defs, recurseLoader);
+      }
+    };
+    assertEquals(0, compile(new PrimFactory(), advisor, DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(root))));
+    assertEquals(Set.of("A.aya", "B.aya", "C.aya"), saved);
+    // Change a body deep in the import chain, the interface of B stays the same
+    saved.clear();
+    var c = src.resolve("C.aya");
+    Files.writeString(c, """
+      open inductive Nat | zero | suc Nat
+      def one : Nat => suc (suc zero)
+      """);
+    Files.setLastModifiedTime(c, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+    assertEquals(0, compile(new PrimFactory(), advisor, DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(root))));
+    assertEquals(Set.of("A.aya", "B.aya", "C.aya"), saved);
+    // Nothing changed
+    saved.clear();
+    assertEquals(0, compile(new PrimFactory(), advisor, DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(root))));
+    assertEquals(Set.of(), saved);
+  }
+
   private static final class TestAdvisor extends InMemoryCompilerAdvisor {
-    public void clearPrimitiveAya() {
+    public void clearPrimitiveAya() { touch("Primitives.aya"); }
+
+    public void touch(@NotNull String fileName) {
       coreTimestamp.replaceAll((path, time) ->
-        path.toString().contains("Primitives.aya") ? FileTime.fromMillis(0) : time);
+        path.toString().contains(fileName) ? FileTime.fromMillis(0) : time);
     }
   }
 
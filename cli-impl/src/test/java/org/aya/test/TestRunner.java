@@ -142,6 +142,6 @@ public class TestRunner {
   public static @NotNull CompilerFlags flags() {
     var modulePaths = ImmutableSeq.of(DEFAULT_TEST_DIR.resolve("shared/src"));
     return new CompilerFlags(CompilerFlags.Message.ASCII,
-      false, false, null, modulePaths, null);
+      false, false, null, modulePaths, null, null, 1, false);
   }
 }
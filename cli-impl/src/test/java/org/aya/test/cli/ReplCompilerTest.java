@@ -11,6 +11,7 @@ import org.aya.syntax.concrete.stmt.QualifiedID;
 import org.aya.syntax.core.term.DepTypeTerm;
 import org.aya.syntax.core.term.SortTerm;
 import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.call.RuleReducer;
 import org.aya.syntax.core.term.repr.IntegerTerm;
 import org.aya.syntax.literate.CodeOptions.NormalizeMode;
 import org.aya.syntax.ref.AnyVar;
@@ -113,6 +114,32 @@ public class ReplCompilerTest {
     assertEquals(6, integer.repr());
   }
 
+  @Test public void largeNat() {
+    compile("open inductive Nat | zero | suc Nat");
+    compile("def infixl + (a b : Nat) : Nat elim b | 0 => a | suc b => suc (a + b)");
+    compile("def infixl * (a b : Nat) : Nat elim b | 0 => 0 | suc b => a * b + a");
+    var term = compiler.compileToContext("100000 * 100000 + 1", NormalizeMode.HEAD).getRightValue();
+    var integer = assertInstanceOf(IntegerTerm.class, term);
+    assertEquals(10000000001L, integer.repr());
+  }
+
+  @Test public void natBoundary() {
+    compile("open inductive Nat | zero | suc Nat");
+    compile("def infixl + (a b : Nat) : Nat elim b | 0 => a | suc b => suc (a + b)");
+    compile("def infixl * (a b : Nat) : Nat elim b | 0 => 0 | suc b => a * b + a");
+    var max = compiler.compileToContext("9223372036854775806 + 1", NormalizeMode.FULL).getRightValue();
+    assertEquals(Long.MAX_VALUE, assertInstanceOf(IntegerTerm.class, max).repr());
+    max = compiler.compileToContext("3074457345618258602 * 3 + 1", NormalizeMode.FULL).getRightValue();
+    assertEquals(Long.MAX_VALUE, assertInstanceOf(IntegerTerm.class, max).repr());
+    // Results beyond a long are stuck, rather than unfolded into that many `suc`s
+    assertInstanceOf(RuleReducer.Fn.class,
+      compiler.compileToContext("9223372036854775807 + 1", NormalizeMode.FULL).getRightValue());
+    assertInstanceOf(RuleReducer.Fn.class,
+      compiler.compileToContext("4611686018427387904 * 2", NormalizeMode.FULL).getRightValue());
+    assertInstanceOf(RuleReducer.Con.class,
+      compiler.compileToContext("suc 9223372036854775807", NormalizeMode.FULL).getRightValue());
+  }
+
   private @Nullable AnyVar findContext(@NotNull String name) {
     try {
       var ctx = compiler.getContext();
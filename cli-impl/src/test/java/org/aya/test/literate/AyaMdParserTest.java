@@ -110,7 +110,7 @@ public class AyaMdParserTest {
     // test single file compiler
     var flags = new CompilerFlags(
       CompilerFlags.Message.ASCII, false, false, null, SeqView.empty(),
-      oneCase.outMdFile()
+      oneCase.outMdFile(), null, 1, false
     );
     var compiler = new SingleFileCompiler(IgnoringReporter.INSTANCE, flags, null);
     compiler.compile(oneCase.mdFile(), null);
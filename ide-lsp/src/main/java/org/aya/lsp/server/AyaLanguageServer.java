@@ -61,7 +61,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class AyaLanguageServer implements LanguageServer {
-  private static final @NotNull CompilerFlags FLAGS = new CompilerFlags(CompilerFlags.Message.EMOJI, false, false, null, SeqView.empty(), null);
+  private static final @NotNull CompilerFlags FLAGS = new CompilerFlags(CompilerFlags.Message.EMOJI, false, false, null, SeqView.empty(), null, null, 1, false);
 
   private final BufferReporter reporter = new BufferReporter();
   private final @NotNull MutableList<LibraryOwner> libraries = MutableList.create();
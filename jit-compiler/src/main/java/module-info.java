@@ -1,6 +1,7 @@
 module aya.compiler {
   requires aya.base;
   requires aya.util;
+  requires java.compiler;
   requires kala.collection.primitive;
 
   requires static org.jetbrains.annotations;
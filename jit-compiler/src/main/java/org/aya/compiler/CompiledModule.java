@@ -29,6 +29,7 @@ import org.aya.util.error.Panic;
 import org.aya.util.error.SourcePos;
 import org.aya.util.error.WithPos;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.Serializable;
 
@@ -37,7 +38,9 @@ import java.io.Serializable;
  *
  * @param imports   The modules that this ayac imports. Absolute path.
  * @param exports   Whether certain definition is exported. Re-exported symbols will not be here.
- * @param reExports key: an imported module that is in {@param imports}
+ * @param reExports     key: an imported module that is in {@param imports}
+ * @param contentHash   the hash of the source file, see {@link InterfaceHash#ofContent}
+ * @param interfaceHash see {@link InterfaceHash}, null when deserialized from an older ayac
  * @author kiva
  */
 public record CompiledModule(
@@ -45,7 +48,9 @@ public record CompiledModule(
   @NotNull ImmutableSet<String> exports,
   @NotNull ImmutableMap<ModulePath, SerUseHide> reExports,
   @NotNull ImmutableMap<QName, SerBind> serOps,
-  @NotNull ImmutableMap<QName, SerRenamedOp> opRename
+  @NotNull ImmutableMap<QName, SerRenamedOp> opRename,
+  @Nullable String contentHash,
+  @Nullable String interfaceHash
 ) implements Serializable {
   public record DeState(@NotNull ClassLoader loader) {
     public @NotNull Class<?> topLevelClass(@NotNull ModulePath name) {
@@ -102,7 +107,10 @@ public record CompiledModule(
     }
   }
 
-  public static @NotNull CompiledModule from(@NotNull ResolveInfo resolveInfo, @NotNull ImmutableSeq<TyckDef> defs) {
+  public static @NotNull CompiledModule from(
+    @NotNull ResolveInfo resolveInfo, @NotNull ImmutableSeq<TyckDef> defs,
+    @Nullable String contentHash
+  ) {
     if (!(resolveInfo.thisModule() instanceof PhysicalModuleContext ctx)) {
       // TODO[kiva]: how to reach here?
       throw new UnsupportedOperationException();
@@ -134,7 +142,9 @@ public record CompiledModule(
       .filter(RenameData::reExport) // should not serialize publicly renamed ops from upstreams
       .map(data -> Tuple.of(data.name, data.renamed)));
 
-    return new CompiledModule(imports, serExport, reExports, serOps, opRename);
+    var module = new CompiledModule(imports, serExport, reExports, serOps, opRename, contentHash, null);
+    return new CompiledModule(imports, serExport, reExports, serOps, opRename, contentHash,
+      InterfaceHash.of(module, resolveInfo.shapeFactory(), defs));
   }
 
   private record Serialization(
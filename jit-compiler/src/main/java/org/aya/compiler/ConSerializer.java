@@ -28,6 +28,7 @@ public final class ConSerializer extends JitTeleSerializer<ConDef> {
     var hasEq = unit.equality != null;
     buildConstructor(unit, ImmutableSeq.of(
       ExprializeUtils.getInstance(NameSerializer.getClassRef(unit.dataRef)),
+      Integer.toString(unit.dataRef.body().indexOf(new ConDef.Delegate(unit.ref))),
       Integer.toString(unit.selfTele.size()),
       Boolean.toString(hasEq)));
   }
@@ -11,10 +11,16 @@ import static org.aya.compiler.NameSerializer.getModulePackageReference;
 
 public class FileSerializer extends AbstractSerializer<ModuleSerializer.ModuleResult> {
   private final @NotNull ShapeFactory shapeFactory;
+  private final @NotNull FnSerializer.TailCalls tailCalls;
 
   public FileSerializer(@NotNull ShapeFactory factory) {
+    this(factory, FnSerializer.TailCalls.Mutual);
+  }
+
+  public FileSerializer(@NotNull ShapeFactory factory, @NotNull FnSerializer.TailCalls tailCalls) {
     super(new SourceBuilder.Default());
     this.shapeFactory = factory;
+    this.tailCalls = tailCalls;
   }
 
   private void buildPackage(@NotNull ModulePath path) {
@@ -28,7 +34,7 @@ public class FileSerializer extends AbstractSerializer<ModuleSerializer.ModuleRe
     appendLine(AyaSerializer.IMPORT_BLOCK);
     appendLine();
 
-    new ModuleSerializer(this, shapeFactory)
+    new ModuleSerializer(this, shapeFactory, tailCalls)
       .serialize(unit);
 
     return this;
@@ -11,8 +11,16 @@ import org.aya.primitive.ShapeFactory;
 import org.aya.syntax.compile.JitFn;
 import org.aya.syntax.core.def.FnDef;
 import org.aya.syntax.core.def.TyckAnyDef;
+import org.aya.syntax.core.pat.Pat;
+import org.aya.syntax.core.repr.AyaShape;
+import org.aya.syntax.core.repr.CodeShape;
+import org.aya.syntax.core.repr.ShapeRecognition;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.call.FnCall;
 import org.aya.util.error.WithPos;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.EnumSet;
 import java.util.function.Consumer;
@@ -21,11 +29,42 @@ import static org.aya.compiler.AyaSerializer.*;
 
 public final class FnSerializer extends JitTeleSerializer<FnDef> {
   public static final String TYPE_STUCK = CLASS_SUPPLIER + "<" + CLASS_TERM + ">";
+  public static final String METHOD_INVOKE_LONG = "invokeLong";
+  public static final String METHOD_INVOKE_TAIL = "invokeTail";
+  public static final String LABEL_TAIL_CALL = "tailCall";
+  public static final String CLASS_JITFN = ExprializeUtils.getJavaRef(JitFn.class);
+  public static final String CLASS_TAILCALL = ExprializeUtils.makeSub(CLASS_JITFN, ExprializeUtils.getJavaRef(JitFn.TailCall.class));
+
+  /** How the calls in tail position of the bodies are compiled, the generated code tells which is used */
+  public enum TailCalls {
+    /** Like the other calls */
+    None,
+    /** The calls to the function itself rebind the parameters and jump to the start of the loop {@link #LABEL_TAIL_CALL} */
+    Self,
+    /**
+     * Also, the calls to the other functions in the same file are returned as {@link JitFn.TailCall}s from
+     * {@link #METHOD_INVOKE_TAIL}, and the fixed argument {@code invoke} runs them with {@link JitFn#trampoline}
+     */
+    Mutual,
+  }
+
+  /**
+   * A clause of the {@code long} specialization
+   *
+   * @param conditions when the arguments match the patterns
+   * @param body       the {@code long} expression of the body
+   */
+  private record LongClause(@NotNull ImmutableSeq<String> conditions, @NotNull String body) { }
+
+  /** The parameters of the fixed argument {@code invoke}, rebound by the self tail calls */
+  private record TailCallLoop(@NotNull String onStuckTerm, @NotNull ImmutableSeq<String> argTerms) { }
 
   private final @NotNull ShapeFactory shapeFactory;
-  public FnSerializer(@NotNull SourceBuilder builder, @NotNull ShapeFactory shapeFactory) {
+  private final @NotNull TailCalls tailCalls;
+  public FnSerializer(@NotNull SourceBuilder builder, @NotNull ShapeFactory shapeFactory, @NotNull TailCalls tailCalls) {
     super(builder, JitFn.class);
     this.shapeFactory = shapeFactory;
+    this.tailCalls = tailCalls;
   }
 
   public static int modifierFlags(@NotNull EnumSet<Modifier> modies) {
@@ -39,29 +78,197 @@ public final class FnSerializer extends JitTeleSerializer<FnDef> {
   }
 
   @Override protected void buildConstructor(FnDef unit) {
-    super.buildConstructor(unit, ImmutableSeq.of(Integer.toString(modifierFlags(unit.modifiers()))));
+    super.buildConstructor(unit, ImmutableSeq.of(
+      Integer.toString(modifierFlags(unit.modifiers())),
+      Integer.toString(unit.height())));
+  }
+
+  private @Nullable ShapeRecognition natShape(@NotNull Term type) {
+    if (!(type instanceof DataCall(var ref, var _, var args)) || args.isNotEmpty()) return null;
+    return shapeFactory.find(ref).filter(recog -> recog.shape() == AyaShape.NAT_SHAPE).getOrNull();
   }
 
   /**
-   * Build fixed argument `invoke`
+   * The specialization of {@param unit} to {@code long}, if the parameters and the result are of the same Nat-shaped type,
+   * the patterns are made of the constructors, and the bodies are supported by {@link LongExprializer}.
+   *
+   * @param names the names of the parameters of {@link #METHOD_INVOKE_LONG}
+   * @return null if {@param unit} cannot be specialized
    */
-  private void buildInvoke(FnDef unit, @NotNull String onStuckTerm, @NotNull ImmutableSeq<String> argTerms) {
-    Consumer<SourceBuilder> onStuckCon = s -> s.buildReturn(onStuckTerm + ".get()");
+  private @Nullable ImmutableSeq<LongClause> specializeLong(@NotNull FnDef unit, @NotNull ImmutableSeq<String> names) {
+    if (unit.is(Modifier.Opaque) || unit.is(Modifier.Partial) || names.isEmpty()) return null;
+    var nat = natShape(unit.result());
+    if (nat == null || !unit.telescope().allMatch(param -> param.type().equals(unit.result()))) return null;
+    var self = TyckAnyDef.make(unit);
+    try {
+      return switch (unit.body()) {
+        case Either.Left(var expr) -> ImmutableSeq.of(new LongClause(ImmutableSeq.empty(),
+          new LongExprializer(nameGen(), nat, self, names).serialize(expr)));
+        case Either.Right(var clauses) -> clauses.map(clause -> {
+          var conditions = MutableList.<String>create();
+          var binds = MutableList.<String>create();
+          clause.data().patterns().forEachWith(names, (pat, name) -> matchLong(pat, name, nat, conditions, binds));
+          return new LongClause(conditions.toImmutableSeq(),
+            new LongExprializer(nameGen(), nat, self, binds.toImmutableSeq()).serialize(clause.data().body()));
+        });
+      };
+    } catch (LongExprializer.Unsupported _) {
+      return null;
+    }
+  }
 
+  /**
+   * @param term  the {@code long} expression matched by {@param pat}
+   * @param binds the expressions of the bindings in {@param pat}
+   */
+  private static void matchLong(
+    @NotNull Pat pat, @NotNull String term, @NotNull ShapeRecognition nat,
+    @NotNull MutableList<String> conditions, @NotNull MutableList<String> binds
+  ) {
+    switch (pat) {
+      case Pat.Bind _ -> binds.append(term);
+      case Pat.Misc misc when misc == Pat.Misc.UntypedBind -> binds.append(term);
+      case Pat.ShapedInt shapedInt -> conditions.append(term + " == " + shapedInt.repr() + "L");
+      case Pat.Con con when con.ref().equals(nat.getCon(CodeShape.GlobalId.ZERO)) ->
+        conditions.append(term + " == 0L");
+      case Pat.Con con when con.ref().equals(nat.getCon(CodeShape.GlobalId.SUC)) -> {
+        conditions.append(term + " > 0L");
+        matchLong(con.args().getFirst(), "(" + term + " - 1L)", nat, conditions, binds);
+      }
+      default -> throw new LongExprializer.Unsupported();
+    }
+  }
+
+  /**
+   * Build {@link #METHOD_INVOKE_LONG}, the clauses are tried in order, and one of them always matches
+   */
+  private void buildInvokeLong(@NotNull ImmutableSeq<String> names, @NotNull ImmutableSeq<LongClause> clauses) {
+    buildMethod(METHOD_INVOKE_LONG, names.map(name -> new JitParam(name, "long")), "long", false, () -> {
+      for (var clause : clauses) {
+        if (clause.conditions.isEmpty()) {
+          buildReturn(clause.body);
+          return;
+        }
+        buildIf(clause.conditions.joinToString(" && "), () -> buildReturn(clause.body));
+      }
+      buildPanic(null);
+    });
+  }
+
+  private static @NotNull ImmutableSeq<Term> bodies(@NotNull FnDef unit) {
+    return switch (unit.body()) {
+      case Either.Left(var expr) -> ImmutableSeq.of(expr);
+      case Either.Right(var clauses) -> clauses.map(clause -> clause.data().body());
+    };
+  }
+
+  /** @return {@param body} if it is a call to {@param unit} itself, which is compiled to a jump */
+  private @Nullable FnCall selfTailCall(@NotNull FnDef unit, @NotNull Term body) {
+    if (tailCalls == TailCalls.None || !(body instanceof FnCall call) || call.ulift() != 0) return null;
+    return call.ref().equals(TyckAnyDef.make(unit)) ? call : null;
+  }
+
+  /**
+   * @return {@param body} if it is a call to another function in the file of {@param unit},
+   * which is returned as a {@link JitFn.TailCall}
+   */
+  private @Nullable FnCall mutualTailCall(@NotNull FnDef unit, @NotNull Term body) {
+    if (tailCalls != TailCalls.Mutual || !(body instanceof FnCall call) || call.ulift() != 0) return null;
+    if (!(call.ref() instanceof FnDef.Delegate callee) || callee.equals(TyckAnyDef.make(unit))) return null;
+    var module = unit.ref().module;
+    var calleeModule = callee.ref.module;
+    return module != null && calleeModule != null && module.fileModule().equals(calleeModule.fileModule()) ? call : null;
+  }
+
+  /**
+   * Return {@param body}, or jump for {@link #selfTailCall}, or return a {@link JitFn.TailCall} for {@link #mutualTailCall}
+   *
+   * @param instantiates the terms of the variables in {@param body}
+   * @param loop         the loop jumped to, null if there are no self tail calls
+   */
+  private void buildReturnBody(
+    @NotNull FnDef unit, @NotNull Term body,
+    @NotNull ImmutableSeq<String> instantiates, @Nullable TailCallLoop loop
+  ) {
+    var self = loop == null ? null : selfTailCall(unit, body);
+    var call = self != null ? self : mutualTailCall(unit, body);
+    if (call == null) {
+      buildReturn(serializeTermUnderTele(body, instantiates));
+      return;
+    }
+    var args = call.args().map(arg ->
+      buildLocalVar(CLASS_TERM, nameGen().nextName(), serializeTermUnderTele(arg, instantiates)));
+    var ref = ExprializeUtils.getInstance(NameSerializer.getClassRef(call.ref()));
+    var argSeq = ExprializeUtils.makeImmutableSeq(CLASS_TERM, args);
+    var onStuck = ExprializeUtils.makeThunk(ExprializeUtils.makeNew(CLASS_FNCALL, ref, "0", argSeq));
+    if (self != null) {
+      buildUpdate(loop.onStuckTerm, onStuck);
+      loop.argTerms.forEachWith(args, this::buildUpdate);
+      appendLine("continue " + LABEL_TAIL_CALL + ";");
+    } else {
+      buildReturn(ExprializeUtils.makeNew(CLASS_TAILCALL, ref, onStuck, argSeq));
+    }
+  }
+
+  /**
+   * Build fixed argument `invoke`
+   *
+   * @param longClauses the {@code long} specialization of {@param unit},
+   *                    used if the arguments are literals, unless the arithmetic overflows
+   * @param loop        whether there are {@link #selfTailCall}s, in which case the body is run in a loop
+   */
+  private void buildInvoke(
+    FnDef unit, @NotNull String onStuckTerm, @NotNull ImmutableSeq<String> argTerms,
+    @Nullable ImmutableSeq<LongClause> longClauses, boolean loop
+  ) {
     if (unit.is(Modifier.Opaque)) {
-      onStuckCon.accept(this);
+      buildReturn(onStuckTerm + ".get()");
       return;
     }
 
+    if (!loop) {
+      buildBody(unit, onStuckTerm, argTerms, longClauses, null);
+      return;
+    }
+
+    // The parameters are rebound by the self tail calls, the body sees the copies of them,
+    // which are effectively final and can be captured
+    buildComment("self tail calls rebind the parameters and continue " + LABEL_TAIL_CALL);
+    appendLine(LABEL_TAIL_CALL + ": while (true) {");
+    runInside(() -> {
+      var onStuck = buildLocalVar(TYPE_STUCK, nameGen().nextName(), onStuckTerm);
+      var args = argTerms.map(arg -> buildLocalVar(CLASS_TERM, nameGen().nextName(), arg));
+      buildBody(unit, onStuck, args, longClauses, new TailCallLoop(onStuckTerm, argTerms));
+    });
+    appendLine("}");
+  }
+
+  private void buildBody(
+    FnDef unit, @NotNull String onStuckTerm, @NotNull ImmutableSeq<String> argTerms,
+    @Nullable ImmutableSeq<LongClause> longClauses, @Nullable TailCallLoop loop
+  ) {
+    Consumer<SourceBuilder> onStuckCon = s -> s.buildReturn(onStuckTerm + ".get()");
+
+    if (longClauses != null) {
+      var literals = argTerms.map(_ -> nameGen().nextName());
+      buildIf(argTerms.view().zip(literals).joinToString(" && ", pair ->
+        pair.component1() + " instanceof " + TermExprializer.CLASS_INTEGER + " " + pair.component2()), () -> {
+        appendLine("try {");
+        runInside(() -> buildReturn(literals.getFirst() + ".destruct(this." + METHOD_INVOKE_LONG
+          + literals.joinToString(", ", "(", ")", literal -> literal + ".repr()") + ")"));
+        appendLine("} catch (ArithmeticException _) { }");
+      });
+    }
+
     switch (unit.body()) {
-      case Either.Left(var expr) -> buildReturn(serializeTermUnderTele(expr, argTerms));
+      case Either.Left(var expr) -> buildReturnBody(unit, expr, argTerms, loop);
       case Either.Right(var clauses) -> {
         var ser = new PatternSerializer(this.sourceBuilder, argTerms, onStuckCon, onStuckCon);
         ser.serialize(clauses.view()
           .map(WithPos::data)
           .map(matching -> new PatternSerializer.Matching(
-            matching.bindCount(), matching.patterns(), (s, bindSize) ->
-            s.buildReturn(serializeTermUnderTele(matching.body(), PatternSerializer.VARIABLE_RESULT, bindSize))
+            matching.bindCount(), matching.patterns(), (_, bindSize) -> buildReturnBody(unit, matching.body(),
+            SourceBuilder.fromSeq(PatternSerializer.VARIABLE_RESULT, bindSize), loop)
           ))
           .toImmutableSeq());
       }
@@ -69,14 +276,14 @@ public final class FnSerializer extends JitTeleSerializer<FnDef> {
   }
 
   /**
-   * Build vararg `invoke`
+   * Build vararg `invoke` or {@link #METHOD_INVOKE_TAIL}, which calls the fixed argument one
    */
-  private void buildInvoke(FnDef unit, @NotNull String onStuckTerm, @NotNull String argsTerm) {
+  private void buildInvoke(FnDef unit, @NotNull String method, @NotNull String onStuckTerm, @NotNull String argsTerm) {
     var teleSize = unit.telescope().size();
 
     buildReturn(SourceBuilder.fromSeq(argsTerm, teleSize).view()
       .prepended(onStuckTerm)
-      .joinToString(", ", "this.invoke(", ")"));
+      .joinToString(", ", "this." + method + "(", ")"));
   }
 
   @Override protected @NotNull String callClass() { return CLASS_FNCALL; }
@@ -100,12 +307,36 @@ public final class FnSerializer extends JitTeleSerializer<FnDef> {
     fixedParams.append(onStuckParam);
     fixedParams.appendAll(names.view().map(x -> new JitParam(x, CLASS_TERM)));
 
+    var varargParams = ImmutableSeq.of(onStuckParam, new JitParam(argsTerm, TYPE_TERMSEQ));
+
+    var longNames = ImmutableSeq.fill(unit.telescope().size(), _ -> nameGen().nextName());
+    var longClauses = specializeLong(unit, longNames);
+    var bodies = unit.is(Modifier.Opaque) ? ImmutableSeq.<Term>empty() : bodies(unit);
+    var loop = bodies.anyMatch(body -> selfTailCall(unit, body) != null);
+    var trampoline = bodies.anyMatch(body -> mutualTailCall(unit, body) != null);
+
     buildFramework(unit, () -> {
-      buildMethod("invoke", fixedParams.toImmutableSeq(),
-        CLASS_TERM, false, () -> buildInvoke(unit, onStuckTerm, names));
+      if (longClauses != null) {
+        buildInvokeLong(longNames, longClauses);
+        appendLine();
+      }
+      if (trampoline) {
+        buildMethod(METHOD_INVOKE_TAIL, fixedParams.toImmutableSeq(),
+          "Object", false, () -> buildInvoke(unit, onStuckTerm, names, longClauses, loop));
+        appendLine();
+        buildMethod("invoke", fixedParams.toImmutableSeq(), CLASS_TERM, false, () ->
+          buildReturn(CLASS_JITFN + ".trampoline(" + names.view().prepended(onStuckTerm)
+            .joinToString(", ", "this." + METHOD_INVOKE_TAIL + "(", ")") + ")"));
+        appendLine();
+        buildMethod(METHOD_INVOKE_TAIL, varargParams,
+          "Object", true, () -> buildInvoke(unit, METHOD_INVOKE_TAIL, onStuckTerm, argsTerm));
+      } else {
+        buildMethod("invoke", fixedParams.toImmutableSeq(),
+          CLASS_TERM, false, () -> buildInvoke(unit, onStuckTerm, names, longClauses, loop));
+      }
       appendLine();
-      buildMethod("invoke", ImmutableSeq.of(onStuckParam, new JitParam(argsTerm, TYPE_TERMSEQ)),
-        CLASS_TERM, true, () -> buildInvoke(unit, onStuckTerm, argsTerm));
+      buildMethod("invoke", varargParams,
+        CLASS_TERM, true, () -> buildInvoke(unit, "invoke", onStuckTerm, argsTerm));
     });
 
     return this;
@@ -0,0 +1,82 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import kala.collection.immutable.ImmutableMap;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableMap;
+import org.jetbrains.annotations.NotNull;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compiles the Java source generated by {@link FileSerializer} without touching the disk:
+ * the source is read from a string, and the class files are written to byte arrays.
+ * Thread-safe, each compilation has its own file manager.
+ */
+public final class InMemoryCompiler {
+  public static final @NotNull ImmutableSeq<String> OPTIONS = ImmutableSeq.of("--enable-preview", "--release", "21");
+  private final @NotNull JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+  private static final class Source extends SimpleJavaFileObject {
+    private final @NotNull String code;
+
+    Source(@NotNull String className, @NotNull String code) {
+      super(uri(className, Kind.SOURCE), Kind.SOURCE);
+      this.code = code;
+    }
+
+    @Override public @NotNull CharSequence getCharContent(boolean ignoreEncodingErrors) { return code; }
+  }
+
+  private static final class Output extends SimpleJavaFileObject {
+    private final @NotNull ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    Output(@NotNull String className) { super(uri(className, Kind.CLASS), Kind.CLASS); }
+    @Override public @NotNull OutputStream openOutputStream() { return bytes; }
+  }
+
+  private static @NotNull URI uri(@NotNull String className, @NotNull JavaFileObject.Kind kind) {
+    return URI.create("memory:///" + className.replace('.', '/') + kind.extension);
+  }
+
+  /**
+   * Compile the sources with one javac task, so they may refer to each other.
+   *
+   * @param sources   the binary names of the classes to the sources declaring them
+   * @param classPath where the classes the sources refer to are found
+   * @return the binary names of the compiled classes, including the nested ones, to their class files,
+   * empty if the compilation fails, in which case the errors are printed by javac
+   */
+  public @NotNull ImmutableMap<String, byte[]> compile(
+    @NotNull ImmutableMap<String, String> sources,
+    @NotNull ImmutableSeq<String> classPath
+  ) throws IOException {
+    var outputs = MutableMap.<String, Output>create();
+    try (var standard = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      var fileManager = new ForwardingJavaFileManager<>(standard) {
+        @Override public @NotNull JavaFileObject getJavaFileForOutput(
+          Location location, String name, JavaFileObject.Kind kind, FileObject sibling
+        ) {
+          var output = new Output(name);
+          outputs.put(name, output);
+          return output;
+        }
+      };
+      var options = ImmutableSeq.of("--class-path", classPath.joinToString(File.pathSeparator))
+        .appendedAll(OPTIONS);
+      var units = sources.view().map(Source::new).toImmutableSeq();
+      var task = compiler.getTask(null, fileManager, null, options.asJava(), null, units.asJava());
+      if (!task.call()) return ImmutableMap.empty();
+    }
+    var classes = MutableMap.<String, byte[]>create();
+    outputs.forEach((name, output) -> classes.put(name, output.bytes.toByteArray()));
+    return ImmutableMap.from(classes);
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import kala.collection.immutable.ImmutableMap;
+import kala.collection.immutable.ImmutableSeq;
+import kala.control.Either;
+import org.aya.generic.Modifier;
+import org.aya.prettier.AyaPrettierOptions;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.core.def.ClassDef;
+import org.aya.syntax.core.def.DataDef;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.TyckAnyDef;
+import org.aya.syntax.core.def.TyckDef;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.Callable;
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * The hash of what the modules importing a module can observe: the imports, exports and operators
+ * recorded in its {@link CompiledModule}, the signatures of its definitions, the bodies of the functions
+ * that may be unfolded, and the shapes. When it does not change after a module is tycked again,
+ * the modules importing it need not be.
+ * <p>
+ * The definitions are hashed through their debug pretty printing, followed by the qualified names of the
+ * definitions they refer to, which the pretty printing does not show.
+ */
+public final class InterfaceHash {
+  private final @NotNull MessageDigest digest = sha256();
+  private final @NotNull AyaPrettierOptions options = AyaPrettierOptions.debug();
+
+  private InterfaceHash() { }
+
+  private static @NotNull MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new Panic(e);
+    }
+  }
+
+  public static @NotNull String ofContent(byte @NotNull [] content) {
+    return HexFormat.of().formatHex(sha256().digest(content));
+  }
+
+  public static @NotNull String of(
+    @NotNull CompiledModule module, @NotNull ShapeFactory shapes,
+    @NotNull ImmutableSeq<TyckDef> defs
+  ) {
+    var hash = new InterfaceHash();
+    hash.add(module.imports().toString());
+    hash.add(module.exports().toImmutableSeq().sorted().toString());
+    hash.add(module.reExports());
+    hash.add(module.serOps());
+    hash.add(module.opRename());
+    defs.forEach(def -> {
+      hash.def(def);
+      shapes.find(TyckAnyDef.make(def)).forEach(recog -> {
+        hash.add(recog.shape().name());
+        hash.add(recog.captures().view()
+          .map((id, captured) -> id + "=" + captured.qualifiedName())
+          .toImmutableSeq().sorted().toString());
+      });
+    });
+    return HexFormat.of().formatHex(hash.digest.digest());
+  }
+
+  private void add(@NotNull String text) {
+    digest.update(text.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  /** The order of the entries does not matter */
+  private void add(@NotNull ImmutableMap<?, ?> map) {
+    add(map.view().map((k, v) -> k + "=" + v).toImmutableSeq().sorted().toString());
+  }
+
+  private void def(@NotNull TyckDef def) {
+    if (def instanceof FnDef fn && (fn.is(Modifier.Opaque) || fn.is(Modifier.Partial))) {
+      // The body is never unfolded outside of the module
+      add(fn.ref().name());
+      add(fn.modifiers().toString());
+      fn.telescope().forEach(param -> add(param.toDoc(options).debugRender()));
+      add(fn.result().toDoc(options).debugRender());
+      signatureRefs(fn);
+      return;
+    }
+    add(def.toDoc(options).debugRender());
+    switch (def) {
+      case ClassDef clazz -> clazz.members().forEach(this::signatureRefs);
+      case DataDef data -> {
+        signatureRefs(data);
+        data.body.forEach(this::signatureRefs);
+      }
+      case FnDef fn -> {
+        signatureRefs(fn);
+        switch (fn.body()) {
+          case Either.Left(var body) -> refs(body);
+          case Either.Right(var clauses) -> clauses.forEach(clause -> refs(clause.data().body()));
+        }
+      }
+      default -> signatureRefs(def);
+    }
+  }
+
+  private void signatureRefs(@NotNull TyckDef def) {
+    def.telescope().forEach(param -> refs(param.type()));
+    refs(def.result());
+  }
+
+  private void refs(@NotNull Term term) {
+    if (term instanceof Callable.Tele call) add(call.ref().qualifiedName().toString());
+    term.descent(t -> {
+      refs(t);
+      return t;
+    });
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableMap;
+import org.aya.syntax.core.def.AnyDef;
+import org.aya.syntax.core.repr.CodeShape;
+import org.aya.syntax.core.repr.ShapeRecognition;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.core.term.call.RuleReducer;
+import org.aya.syntax.core.term.repr.IntegerOps;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.ref.LocalVar;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Serializes a term of a Nat-shaped type to a {@code long} expression, for the functions specialized by
+ * {@link FnSerializer}. Only literals, the constructors, the recognized operations and the recursive calls
+ * are supported, the arithmetic throws {@link ArithmeticException} if it overflows.
+ */
+public final class LongExprializer extends AbstractExprializer<Term> {
+  public static final class Unsupported extends RuntimeException {
+    Unsupported() { super(null, null, false, false); }
+  }
+
+  private final @NotNull ShapeRecognition nat;
+  private final @NotNull AnyDef self;
+  private final @NotNull ImmutableSeq<String> instantiates;
+  private final @NotNull MutableMap<LocalVar, String> binds = MutableMap.create();
+
+  /**
+   * @param nat          the recognition of the Nat-shaped type
+   * @param self         the function being specialized, calls to which become {@link FnSerializer#METHOD_INVOKE_LONG}
+   * @param instantiates the {@code long} variables of the telescope of the term
+   */
+  public LongExprializer(
+    @NotNull NameGenerator nameGen, @NotNull ShapeRecognition nat,
+    @NotNull AnyDef self, @NotNull ImmutableSeq<String> instantiates
+  ) {
+    super(nameGen);
+    this.nat = nat;
+    this.self = self;
+    this.instantiates = instantiates;
+  }
+
+  private @NotNull String suc(@NotNull ImmutableSeq<Term> args) {
+    return args.isEmpty() ? "0L" : "Math.incrementExact(" + doSerialize(args.getFirst()) + ")";
+  }
+
+  /** @throws Unsupported if {@param term} is not supported */
+  @Override protected @NotNull String doSerialize(@NotNull Term term) {
+    return switch (term) {
+      case FreeTerm(var bind) -> {
+        var subst = binds.getOrNull(bind);
+        if (subst == null) throw new Unsupported();
+        yield subst;
+      }
+      case IntegerTerm integer -> integer.repr() + "L";
+      case ConCall call when call.ref().equals(nat.getCon(CodeShape.GlobalId.ZERO))
+        || call.ref().equals(nat.getCon(CodeShape.GlobalId.SUC)) -> suc(call.conArgs());
+      case RuleReducer.Con(IntegerOps.ConRule _, var _, var _, var conArgs) -> suc(conArgs);
+      case RuleReducer.Fn(IntegerOps.FnRule(var _, var kind), var _, var args) -> {
+        var a = doSerialize(args.get(0));
+        var b = doSerialize(args.get(1));
+        yield switch (kind) {
+          case Add -> "Math.addExact(" + a + ", " + b + ")";
+          case SubTrunc -> "Math.max(" + a + " - " + b + ", 0L)";
+          case Mul -> "Math.multiplyExact(" + a + ", " + b + ")";
+        };
+      }
+      case FnCall call when call.ref().equals(self) -> call.args().joinToString(", ",
+        "this." + FnSerializer.METHOD_INVOKE_LONG + "(", ")", this::doSerialize);
+      default -> throw new Unsupported();
+    };
+  }
+
+  /** @throws Unsupported if {@param unit} is not supported */
+  @Override public @NotNull String serialize(@NotNull Term unit) {
+    binds.clear();
+    var vars = ImmutableSeq.fill(instantiates.size(), i -> new LocalVar("arg" + i));
+    vars.forEachWith(instantiates, binds::put);
+    return doSerialize(unit.instantiateTeleVar(vars.view()));
+  }
+}
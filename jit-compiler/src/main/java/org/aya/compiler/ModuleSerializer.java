@@ -21,10 +21,15 @@ public final class ModuleSerializer extends AbstractSerializer<ModuleSerializer.
   ) { }
 
   private final @NotNull ShapeFactory shapeFactory;
+  private final @NotNull FnSerializer.TailCalls tailCalls;
 
-  public ModuleSerializer(@NotNull SourceBuilder builder, @NotNull ShapeFactory shapeFactory) {
+  public ModuleSerializer(
+    @NotNull SourceBuilder builder, @NotNull ShapeFactory shapeFactory,
+    @NotNull FnSerializer.TailCalls tailCalls
+  ) {
     super(builder);
     this.shapeFactory = shapeFactory;
+    this.tailCalls = tailCalls;
   }
 
   private void serializeCons(@NotNull DataDef dataDef, @NotNull SourceBuilder serializer) {
@@ -39,7 +44,7 @@ public final class ModuleSerializer extends AbstractSerializer<ModuleSerializer.
 
   private void doSerialize(@NotNull TyckDef unit) {
     switch (unit) {
-      case FnDef teleDef -> new FnSerializer(this, shapeFactory)
+      case FnDef teleDef -> new FnSerializer(this, shapeFactory, tailCalls)
         .serialize(teleDef);
       case DataDef dataDef -> {
         new DataSerializer(this, shapeFactory).serialize(dataDef);
@@ -55,7 +55,7 @@ public final class PatternExprializer extends AbstractExprializer<Pat> {
         serializeToImmutableSeq(CLASS_PAT, con.args()),
         serializeConHead(con.head()));
       case Pat.ShapedInt shapedInt -> ExprializeUtils.makeNew(CLASS_PAT_INT,
-        Integer.toString(shapedInt.repr()),
+        shapedInt.repr() + "L",
         ExprializeUtils.getInstance(NameSerializer.getClassRef(shapedInt.zero())),
         ExprializeUtils.getInstance(NameSerializer.getClassRef(shapedInt.suc())),
         serializeTerm(shapedInt.type()));
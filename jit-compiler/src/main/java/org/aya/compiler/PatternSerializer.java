@@ -7,14 +7,19 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.collection.immutable.primitive.ImmutableIntSeq;
 import kala.range.primitive.IntRange;
 import org.aya.generic.State;
+import org.aya.syntax.compile.JitCon;
+import org.aya.syntax.core.def.ConDefLike;
+import org.aya.syntax.core.pat.CaseTree;
 import org.aya.syntax.core.pat.Pat;
 import org.aya.util.error.Panic;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import static org.aya.compiler.AyaSerializer.*;
+import static org.aya.compiler.JitTeleSerializer.CLASS_JITCON;
 
 /**
  * We do not serialize meta solve, it is annoying
@@ -43,6 +48,8 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
     @NotNull SuccessContinuation onSucc
   ) { }
 
+  /** Larger trees fall back to clause by clause matching, so that the method stays far below the 64KB limit */
+  public static final int MAX_TREE_NODES = 256;
   public static final @NotNull String VARIABLE_RESULT = "result";
   public static final @NotNull String VARIABLE_STATE = "matchState";
   public static final @NotNull String VARIABLE_SUBSTATE = "subMatchState";
@@ -142,7 +149,7 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
 
   private void matchInt(@NotNull Pat.ShapedInt pat, @NotNull String term) {
     buildIfInstanceElse(term, TermExprializer.CLASS_INTEGER, intTerm ->
-      buildIf(pat.repr() + " == " + intTerm + ".repr()", () ->
+      buildIf(pat.repr() + "L == " + intTerm + ".repr()", () ->
         // Pat.ShapedInt provides no binds
         buildUpdate(VARIABLE_SUBSTATE, "true")), null);
   }
@@ -161,6 +168,81 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
     doSerialize(pat, term, Once.of(() -> doSerialize(pats.drop(1), terms.drop(1), continuation)));
   }
 
+  /**
+   * Serialize the clauses as {@param tree}, which tries them in order like the clause by clause matching,
+   * skipping the stuck ones, but looks at every (sub)term once and dispatches on the {@link JitCon#index}
+   * of its constructor. A {@link CaseTree.Fail} does not tell stuck from mismatch,
+   * so this is used only if {@link #onStuck} and {@link #onMismatch} are the same.
+   */
+  private void doSerialize(@NotNull CaseTree tree) {
+    var terms = new String[tree.occCount()];
+    argNames.forEachIndexed((i, name) -> terms[i] = name);
+    doSerialize(tree.root(), terms);
+  }
+
+  /** @param terms the Java expressions of the (sub)terms, indexed by occurrence */
+  private void doSerialize(@NotNull CaseTree.Node node, @NotNull String @NotNull [] terms) {
+    switch (node) {
+      case CaseTree.Fail _ -> updateState(-State.Stuck.ordinal());
+      case CaseTree.Leaf(var clause, var binds) -> {
+        for (var i = 0; i < binds.length; i++) appendLine(VARIABLE_RESULT + ".set(" + i + ", " + terms[binds[i]] + ");");
+        updateState(clause + 1);
+      }
+      case CaseTree.Switch sw -> {
+        var term = terms[sw.occ()];
+        var tupleBranch = sw.tuple();
+        if (tupleBranch == null) {
+          serializeCons(sw, term, terms);
+          return;
+        }
+        buildIfInstanceElse(term, CLASS_TUPLE, tuple -> {
+          var children = tupleBranch.children();
+          terms[children[0]] = buildLocalVar(CLASS_TERM, nameGen().nextName(), tuple + ".lhs()");
+          terms[children[1]] = buildLocalVar(CLASS_TERM, nameGen().nextName(), tuple + ".rhs()");
+          doSerialize(tupleBranch.next(), terms);
+        }, () -> serializeCons(sw, term, terms));
+      }
+    }
+  }
+
+  /** The part of {@param sw} for the terms that are not tuples. */
+  private void serializeCons(@NotNull CaseTree.Switch sw, @NotNull String term, @NotNull String @NotNull [] terms) {
+    // Constructors behave like stuck terms
+    if (sw.cons().isEmpty() && sw.otherCon() == sw.stuck()) {
+      doSerialize(sw.stuck(), terms);
+      return;
+    }
+    var data = sw.cons().isEmpty() ? "null"
+      : ExprializeUtils.getInstance(NameSerializer.getClassRef(sw.cons().getFirst().ref().dataRef()));
+    var cases = sw.cons().map(branch -> conIndex(branch.ref())).appended(JitCon.OTHER_CON);
+    buildSwitch(CLASS_JITCON + ".indexOf(" + term + ", " + data + ")", cases, index -> {
+      if (index == JitCon.OTHER_CON) {
+        doSerialize(sw.otherCon(), terms);
+        return;
+      }
+      var branch = sw.cons().find(b -> conIndex(b.ref()) == index).get();
+      var children = branch.children();
+      for (var i = 0; i < children.length; i++) terms[children[i]] = buildLocalVar(CLASS_TERM,
+        nameGen().nextName(), CLASS_JITCON + ".conArg(" + term + ", " + i + ")");
+      doSerialize(branch.next(), terms);
+    }, () -> doSerialize(sw.stuck(), terms));
+  }
+
+  private static int size(@NotNull CaseTree.Node node) {
+    return switch (node) {
+      case CaseTree.Fail _, CaseTree.Leaf _ -> 1;
+      case CaseTree.Switch sw -> 1 + (sw.tuple() == null ? 0 : size(sw.tuple().next()))
+        + (sw.otherCon() == sw.stuck() ? 0 : size(sw.otherCon())) + size(sw.stuck())
+        + sw.cons().view().map(branch -> size(branch.next())).foldLeft(0, Integer::sum);
+    };
+  }
+
+  /** @see JitCon#index */
+  private static int conIndex(@Nullable ConDefLike con) {
+    assert con != null;
+    return con.dataRef().body().indexOf(con);
+  }
+
   /// endregion Serializing
 
   /// region Java Source Code Generate API
@@ -200,7 +282,10 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
     buildLocalVar("int", VARIABLE_STATE, "0");
     buildLocalVar("boolean", VARIABLE_SUBSTATE, "false");
 
-    buildGoto(() -> unit.forEachIndexed((idx, clause) -> {
+    var tree = onStuck == onMismatch
+      ? CaseTree.compile(unit.view().map(Matching::patterns), true) : null;
+    if (tree != null && size(tree.root()) <= MAX_TREE_NODES) buildGoto(() -> doSerialize(tree));
+    else buildGoto(() -> unit.forEachIndexed((idx, clause) -> {
       var jumpCode = idx + 1;
       bindCount = 0;
       doSerialize(
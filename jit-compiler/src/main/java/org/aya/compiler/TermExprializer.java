@@ -45,7 +45,9 @@ public final class TermExprializer extends AbstractExprializer<Term> {
   public static final String CLASS_INT_CONRULE = ExprializeUtils.makeSub(CLASS_INTOPS, ExprializeUtils.getJavaRef(IntegerOps.ConRule.class));
   public static final String CLASS_INT_FNRULE = ExprializeUtils.makeSub(CLASS_INTOPS, ExprializeUtils.getJavaRef(IntegerOps.FnRule.class));
   public static final String CLASS_LIST_CONRULE = ExprializeUtils.makeSub(CLASS_LISTOPS, ExprializeUtils.getJavaRef(ListOps.ConRule.class));
+  public static final String CLASS_LIST_FNRULE = ExprializeUtils.makeSub(CLASS_LISTOPS, ExprializeUtils.getJavaRef(ListOps.FnRule.class));
   public static final String CLASS_FNRULE_KIND = ExprializeUtils.makeSub(CLASS_INT_FNRULE, ExprializeUtils.getJavaRef(IntegerOps.FnRule.Kind.class));
+  public static final String CLASS_LIST_FNRULE_KIND = ExprializeUtils.makeSub(CLASS_LIST_FNRULE, ExprializeUtils.getJavaRef(ListOps.FnRule.Kind.class));
   public static final String CLASS_RULEREDUCER = ExprializeUtils.getJavaRef(RuleReducer.class);
   public static final String CLASS_RULE_CON = ExprializeUtils.makeSub(CLASS_RULEREDUCER, ExprializeUtils.getJavaRef(RuleReducer.Con.class));
   public static final String CLASS_RULE_FN = ExprializeUtils.makeSub(CLASS_RULEREDUCER, ExprializeUtils.getJavaRef(RuleReducer.Fn.class));
@@ -93,6 +95,10 @@ public final class TermExprializer extends AbstractExprializer<Term> {
         ExprializeUtils.getInstance(NameSerializer.getClassRef(conRule.ref())),
         doSerialize(conRule.empty())
       );
+      case ListOps.FnRule fnRule -> ExprializeUtils.makeNew(CLASS_LIST_FNRULE,
+        ExprializeUtils.getInstance(NameSerializer.getClassRef(fnRule.ref())),
+        ExprializeUtils.makeSub(CLASS_LIST_FNRULE_KIND, fnRule.kind().toString())
+      );
       default -> Panic.unreachable();
     };
   }
@@ -232,7 +238,7 @@ public final class TermExprializer extends AbstractExprializer<Term> {
         serializeToImmutableSeq(CLASS_TERM, args)
       );
       case IntegerTerm(var repr, var zero, var suc, var type) -> ExprializeUtils.makeNew(CLASS_INTEGER,
-        Integer.toString(repr),
+        repr + "L",
         ExprializeUtils.getInstance(NameSerializer.getClassRef(zero)),
         ExprializeUtils.getInstance(NameSerializer.getClassRef(suc)),
         doSerialize(type)
@@ -251,9 +257,11 @@ public final class TermExprializer extends AbstractExprializer<Term> {
         serializeClosureToImmutableSeq(rember),
         serializeClosureToImmutableSeq(forgor)
       );
-      case MatchTerm(var discr, var clauses) -> ExprializeUtils.makeNew(CLASS_MATCHTERM,
+      // Built on every call, so its clauses are tried one by one instead of compiled
+      case MatchTerm(var discr, var clauses, _) -> ExprializeUtils.makeNew(CLASS_MATCHTERM,
         serializeToImmutableSeq(CLASS_TERM, discr),
-        serializeMatching(clauses)
+        serializeMatching(clauses),
+        "null"
       );
       case NewTerm(var classCall) -> ExprializeUtils.makeNew(CLASS_NEW, doSerialize(classCall));
     };
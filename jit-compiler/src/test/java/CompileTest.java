@@ -20,7 +20,10 @@ import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.core.term.AppTerm;
 import org.aya.syntax.core.term.LamTerm;
 import org.aya.syntax.core.term.LocalTerm;
+import org.aya.syntax.core.term.Term;
 import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.repr.IntegerTerm;
 import org.aya.util.error.SourceFile;
 import org.aya.util.reporter.ThrowingReporter;
 import org.intellij.lang.annotations.Language;
@@ -31,6 +34,8 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 import static org.aya.compiler.NameSerializer.getClassName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 
 public class CompileTest {
   @Test public void test0() {
@@ -43,6 +48,7 @@ public class CompileTest {
       def plus (a b : Nat) : Nat elim a
       | O => b
       | S n => S (plus n b)
+      def twice (a : Nat) : Nat => plus a a
       """); // .filter(x -> x instanceof FnDef || x instanceof DataDef);
 
     var code = serializeFrom(result);
@@ -55,13 +61,24 @@ public class CompileTest {
       JitCon O = tester.loadInstance(getClassName(baka.derive("Nat"), "O"));
       JitCon S = tester.loadInstance(getClassName(baka.derive("Nat"), "S"));
       JitFn plus = tester.loadInstance(getClassName(baka, "plus"));
+      JitFn twice = tester.loadInstance(getClassName(baka, "twice"));
+      // The heights measured by the tycker are kept
+      assertEquals(1, plus.height);
+      assertEquals(2, twice.height);
       var zero = new ConCall(O, ImmutableSeq.empty(), 0, ImmutableSeq.empty());
       var one = new ConCall(S, ImmutableSeq.empty(), 0, ImmutableSeq.of(zero));
       var two = new ConCall(S, ImmutableSeq.empty(), 0, ImmutableSeq.of(one));
       var three = new ConCall(S, ImmutableSeq.empty(), 0, ImmutableSeq.of(two));
+      assertEquals(0, JitCon.indexOf(zero, O.dataType));
+      assertEquals(1, JitCon.indexOf(three, S.dataType));
 
       var mResult = plus.invoke(() -> zero, ImmutableSeq.of(two, three));
       System.out.println(mResult.debuggerOnlyToString());
+
+      var nat = new DataCall(O.dataType, 0, ImmutableSeq.empty());
+      var lResult = plus.invoke(() -> zero, ImmutableSeq.of(
+        new IntegerTerm(2, O, S, nat), new IntegerTerm(3, O, S, nat)));
+      assertEquals(5, assertInstanceOf(IntegerTerm.class, lResult).repr());
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -82,6 +99,43 @@ public class CompileTest {
     // System.out.println(out);
   }
 
+  @Test public void tailCall() {
+    var result = tyck("""
+      open inductive Nat | O | S Nat
+      def drop (a b : Nat) : Nat elim a
+      | O => b
+      | S n => drop n b
+      def even (a : Nat) : Nat elim a
+      | O => S O
+      | S n => odd n
+      def odd (a : Nat) : Nat elim a
+      | O => O
+      | S n => even n
+      """);
+
+    var code = serializeFrom(result);
+
+    try {
+      var tester = new CompileTester(code);
+      tester.compile();
+      var baka = DumbModuleLoader.DUMB_MODULE_NAME;
+
+      JitCon O = tester.loadInstance(getClassName(baka.derive("Nat"), "O"));
+      JitCon S = tester.loadInstance(getClassName(baka.derive("Nat"), "S"));
+      JitFn drop = tester.loadInstance(getClassName(baka, "drop"));
+      JitFn even = tester.loadInstance(getClassName(baka, "even"));
+      var zero = new ConCall(O, ImmutableSeq.empty(), 0, ImmutableSeq.empty());
+      // deep enough to overflow the stack if the calls recursed
+      Term deep = zero;
+      for (var i = 0; i < 1_000_000; i++) deep = new ConCall(S, ImmutableSeq.empty(), 0, ImmutableSeq.of(deep));
+
+      assertEquals(zero, drop.invoke(() -> zero, ImmutableSeq.of(deep, zero)));
+      assertEquals(1, JitCon.indexOf(even.invoke(() -> zero, ImmutableSeq.of(deep)), S.dataType));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Test public void serLam() {
     // \ t. (\0. 0 t)
     var lam = new LamTerm(new Closure.Jit(t -> new LamTerm(new Closure.Locns(new AppTerm(new LocalTerm(0), t)))));
@@ -529,7 +529,7 @@ public record AyaProducer(
       return unreachable(node);
     }
     if (node.is(LIT_INT_EXPR)) try {
-      return new WithPos<>(pos, new Expr.LitInt(node.tokenText().toInt()));
+      return new WithPos<>(pos, new Expr.LitInt(Long.parseLong(node.tokenText().toString())));
     } catch (NumberFormatException ignored) {
       reporter.report(new ParseError(pos, "Unsupported integer literal `" + node.tokenText() + "`"));
       throw new ParsingInterruptedException();
@@ -780,7 +780,7 @@ public record AyaProducer(
         }).toImmutableSeq());
     }
     if (node.peekChild(NUMBER) != null)
-      return new Pattern.Number(node.tokenText().toInt());
+      return new Pattern.Number(Long.parseLong(node.tokenText().toString()));
     if (node.peekChild(LPAREN) != null) return Pattern.Absurd.INSTANCE;
     if (node.peekChild(CALM_FACE) != null) return Pattern.CalmFace.INSTANCE;
     return unreachable(node);
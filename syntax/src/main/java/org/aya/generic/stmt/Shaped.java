@@ -14,7 +14,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.function.BiPredicate;
-import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
 import java.util.function.Supplier;
 
 /**
@@ -41,16 +41,16 @@ public interface Shaped<T> {
   non-sealed interface Nat<T> extends Inductive<T> {
     @NotNull T makeZero();
     @NotNull T makeSuc(@NotNull T t);
-    @NotNull T destruct(int repr);
-    int repr();
+    @NotNull T destruct(long repr);
+    long repr();
 
     default @Override @NotNull T constructorForm() {
-      int repr = repr();
+      long repr = repr();
       if (repr == 0) return makeZero();
       return makeSuc(destruct(repr - 1));
     }
 
-    @NotNull Shaped.Nat<T> map(@NotNull IntUnaryOperator f);
+    @NotNull Shaped.Nat<T> map(@NotNull LongUnaryOperator f);
   }
 
   non-sealed interface Bool<T> extends Inductive<T> {
@@ -109,6 +109,12 @@ public interface Shaped<T> {
      * @return null if failed
      */
     @Nullable Term apply(@NotNull ImmutableSeq<Term> args);
+
+    /**
+     * @param args arguments that {@link #apply} failed on
+     * @return true if the call is stuck, instead of unfolding {@link #ref()}
+     */
+    default boolean isStuck(@NotNull ImmutableSeq<Term> args) { return false; }
     @NotNull Applicable<Def> descent(@NotNull IndexedFunction<Term, Term> f);
     @Override default @NotNull Term invoke(@NotNull Supplier<Term> onStuck, @NotNull Seq<Term> args) {
       var result = apply(args.toImmutableSeq());
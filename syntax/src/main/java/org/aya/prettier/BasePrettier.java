@@ -327,7 +327,7 @@ public abstract class BasePrettier<Term extends AyaDocile> {
     return Link.cross(fileModule.module(), location);
   }
 
-  public static @NotNull Doc linkLit(int literal, @NotNull AnyDef ref, @NotNull Style color) {
+  public static @NotNull Doc linkLit(long literal, @NotNull AnyDef ref, @NotNull Style color) {
     return Doc.linkRef(Doc.styled(color, Doc.plain(String.valueOf(literal))), linkIdOf(null, ref));
   }
 
@@ -12,23 +12,33 @@ import org.aya.syntax.core.def.DataDefLike;
 import org.aya.syntax.core.term.FreeTerm;
 import org.aya.syntax.core.term.Param;
 import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.ConCallLike;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.core.term.repr.ListTerm;
 import org.aya.syntax.ref.GenerateKind;
 import org.aya.syntax.ref.LocalVar;
 import org.aya.util.error.Panic;
 import org.aya.util.error.SourcePos;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public abstract non-sealed class JitCon extends JitDef implements ConDefLike {
+  /** @see #indexOf */
+  public static final int OTHER_CON = -1, NOT_CON = -2;
+
   public final JitData dataType;
+  /** The index of this constructor in {@link JitData#constructors()}, used by the compiled pattern matching */
+  public final int index;
   private final boolean hasEq;
   private final int selfTeleSize;
 
   protected JitCon(
     int telescopeSize, boolean[] telescopeLicit, String[] telescopeName,
-    JitData dataType, int selfTeleSize, boolean hasEq
+    JitData dataType, int index, int selfTeleSize, boolean hasEq
   ) {
     super(telescopeSize, telescopeLicit, telescopeName);
     this.dataType = dataType;
+    this.index = index;
     this.hasEq = hasEq;
     this.selfTeleSize = selfTeleSize;
   }
@@ -41,6 +51,36 @@ public abstract non-sealed class JitCon extends JitDef implements ConDefLike {
    */
   public abstract @NotNull Result<ImmutableSeq<Term>, State> isAvailable(@NotNull Seq<Term> args);
 
+  /**
+   * Used by the compiled pattern matching to dispatch on the constructor of {@param term},
+   * the constructor of a literal is known without allocating its arguments.
+   *
+   * @return the {@link #index} of the constructor {@param term} is a call to, if it is a constructor of {@param data},
+   * {@link #OTHER_CON} if it is a call to another constructor, {@link #NOT_CON} if it is not a constructor call
+   */
+  public static int indexOf(@NotNull Term term, @Nullable JitData data) {
+    return switch (term) {
+      case IntegerTerm n -> indexOf(n.repr() == 0 ? n.zero() : n.suc(), data);
+      case ListTerm l -> indexOf(l.repr().isEmpty() ? l.nil() : l.cons(), data);
+      case ConCallLike con -> indexOf(con.ref(), data);
+      default -> NOT_CON;
+    };
+  }
+
+  private static int indexOf(@NotNull ConDefLike ref, @Nullable JitData data) {
+    return ref instanceof JitCon con && con.dataType == data ? con.index : OTHER_CON;
+  }
+
+  /** The argument {@param i} of the constructor call {@param term}, the others of a literal are not computed */
+  public static @NotNull Term conArg(@NotNull Term term, int i) {
+    return switch (term) {
+      case IntegerTerm n -> n.destruct(n.repr() - 1);
+      case ListTerm l -> i == 0 ? l.repr().getFirst() : l.destruct(l.repr().drop(1));
+      case ConCallLike con -> con.conArgs().get(i);
+      default -> throw new Panic("Not a constructor call");
+    };
+  }
+
   @Override public boolean hasEq() { return hasEq; }
   @Override public @NotNull Term equality(Seq<Term> args, boolean is0) { throw new Panic("Not an HIT"); }
   @Override public @NotNull DataDefLike dataRef() { return dataType; }
@@ -12,11 +12,21 @@ import org.jetbrains.annotations.NotNull;
 import java.util.function.Supplier;
 
 public abstract non-sealed class JitFn extends JitDef implements FnDefLike, Reducible {
+  /**
+   * A call to {@param fn} in tail position, returned by {@link #invokeTail} instead of being invoked
+   *
+   * @see #trampoline
+   */
+  public record TailCall(@NotNull JitFn fn, @NotNull Supplier<Term> fallback, @NotNull Seq<@NotNull Term> args) { }
+
   public final int modifiers;
+  /** The definitional height of the function, see {@link org.aya.syntax.core.def.FnDef#height()} */
+  public final int height;
 
-  protected JitFn(int telescopeSize, boolean[] telescopeLicit, String[] telescopeName, int modifiers) {
+  protected JitFn(int telescopeSize, boolean[] telescopeLicit, String[] telescopeName, int modifiers, int height) {
     super(telescopeSize, telescopeLicit, telescopeName);
     this.modifiers = modifiers;
+    this.height = height;
   }
 
   /**
@@ -24,6 +34,22 @@ public abstract non-sealed class JitFn extends JitDef implements FnDefLike, Redu
    */
   @Override abstract public @NotNull Term
   invoke(@NotNull Supplier<Term> fallback, @NotNull Seq<@NotNull Term> args);
+
+  /**
+   * Unfold this function, but the calls in tail position to other functions may be returned as {@link TailCall}s
+   *
+   * @return a {@link Term} or a {@link TailCall}
+   */
+  public @NotNull Object invokeTail(@NotNull Supplier<Term> fallback, @NotNull Seq<@NotNull Term> args) {
+    return invoke(fallback, args);
+  }
+
+  /** Invoke the {@link TailCall}s one after another, so that mutually recursive calls do not grow the stack */
+  public static @NotNull Term trampoline(@NotNull Object result) {
+    while (result instanceof TailCall(var fn, var fallback, var args)) result = fn.invokeTail(fallback, args);
+    return (Term) result;
+  }
+
   @Override public boolean is(@NotNull Modifier mod) {
     return (modifiers & (1 << mod.ordinal())) != 0;
   }
@@ -271,7 +271,7 @@ public sealed interface Expr extends AyaDocile {
     @Override public void forEach(@NotNull PosedConsumer<Expr> f) { f.accept(expr); }
   }
 
-  record LitInt(int integer) implements Expr {
+  record LitInt(long integer) implements Expr {
     @Override public @NotNull LitInt descent(@NotNull PosedUnaryOperator<@NotNull Expr> f) { return this; }
     @Override public void forEach(@NotNull PosedConsumer<Expr> f) { }
   }
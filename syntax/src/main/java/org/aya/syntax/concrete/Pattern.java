@@ -51,7 +51,7 @@ public sealed interface Pattern extends AyaDocile {
     }
   }
 
-  record Number(int number) implements Pattern {
+  record Number(long number) implements Pattern {
     @Override public void forEach(@NotNull PosedConsumer<@NotNull Pattern> f) { }
     @Override public @NotNull Number descent(@NotNull PosedUnaryOperator<@NotNull Pattern> f) { return this; }
   }
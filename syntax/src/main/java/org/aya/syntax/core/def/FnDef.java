@@ -6,18 +6,27 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.control.Either;
 import org.aya.generic.Modifier;
 import org.aya.syntax.concrete.stmt.decl.FnDecl;
+import org.aya.syntax.core.pat.CaseTree;
 import org.aya.syntax.core.term.Term;
 import org.aya.syntax.ref.DefVar;
 import org.aya.util.error.WithPos;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.EnumSet;
 import java.util.function.Function;
 
+/**
+ * @param height   the definitional height of this function, computed when it is tycked,
+ *                 see {@code org.aya.normalize.DeltaHeight}
+ * @param caseTree the clauses of {@param body} compiled when it is tycked,
+ *                 null if the body is a term or the clauses cannot be compiled
+ */
 public record FnDef(
   @NotNull DefVar<FnDef, FnDecl> ref,
   @NotNull EnumSet<Modifier> modifiers,
-  @NotNull Either<Term, ImmutableSeq<WithPos<Term.Matching>>> body
+  @NotNull Either<Term, ImmutableSeq<WithPos<Term.Matching>>> body,
+  int height, @Nullable CaseTree caseTree
 ) implements TopLevelDef {
   public FnDef { ref.initialize(this); }
 
@@ -26,6 +35,14 @@ public record FnDef(
     return function;
   }
 
+  public static @Nullable CaseTree compile(
+    @NotNull Either<Term, ImmutableSeq<WithPos<Term.Matching>>> body,
+    boolean orderIndependent
+  ) {
+    return body.isLeft() ? null : CaseTree.compile(
+      body.getRightValue().view().map(clause -> clause.data().patterns()), orderIndependent);
+  }
+
   public boolean is(@NotNull Modifier mod) { return modifiers.contains(mod); }
   public static final class Delegate extends TyckAnyDef<FnDef> implements FnDefLike {
     public Delegate(@NotNull DefVar<FnDef, ?> ref) { super(ref); }
@@ -0,0 +1,293 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.pat;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.aya.syntax.core.def.ConDefLike;
+import org.aya.syntax.core.term.MetaPatTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TupTerm;
+import org.aya.syntax.core.term.call.ConCallLike;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * A list of clauses compiled into a decision tree, so matching them against some arguments
+ * forces every argument (and every subterm of an argument) at most once.
+ * <p>
+ * The tree is obtained by running {@link PatMatcher} symbolically on the clauses in order,
+ * branching whenever a clause looks at a term whose head is unknown, so it has exactly
+ * the behavior of trying the clauses one by one, including getting stuck on the first
+ * stuck clause when the clauses are not order-independent.
+ * {@link Pat.ShapedInt} and {@link Pat.Meta} are not supported, see {@link #compile}.
+ *
+ * @param arity    the number of arguments
+ * @param occCount the number of (sub)terms the tree may look at,
+ *                 the first {@param arity} ones being the arguments
+ */
+public record CaseTree(@NotNull Node root, int arity, int occCount) implements Serializable {
+  public static final int MAX_NODES = 1024;
+
+  public sealed interface Node extends Serializable { }
+  /** Every clause fails or gets stuck */
+  public enum Fail implements Node { INSTANCE }
+  /** @param binds the occurrences bound by the clause, in {@link Pat#collectVariables} order */
+  public record Leaf(int clause, int @NotNull [] binds) implements Node { }
+  /**
+   * Force the term at {@param occ} and continue according to its head.
+   * The continuations that would behave like {@param stuck} are omitted (or shared),
+   * which is the case for the tuples if no clause has a tuple pattern there,
+   * and for the constructors if no clause has a constructor pattern there.
+   *
+   * @param cons     constructors the clauses know about
+   * @param tuple    the continuation when the term is a {@link TupTerm}, null for {@param stuck}
+   * @param otherCon the continuation when the term is a constructor not in {@param cons}
+   * @param stuck    the continuation when the term is neither a constructor nor a tuple
+   */
+  public record Switch(
+    int occ, @NotNull ImmutableSeq<Branch> cons, @Nullable Branch tuple,
+    @NotNull Node otherCon, @NotNull Node stuck
+  ) implements Node { }
+  /** @param children the occurrences of the arguments of the constructor (or tuple) */
+  public record Branch(@Nullable ConDefLike ref, int @NotNull [] children, @NotNull Node next) implements Serializable { }
+
+  /** A successful match of the clause with index {@param clause}. */
+  public record Hit(int clause, @NotNull ImmutableSeq<Term> subst) { }
+
+  /**
+   * @param pre the function that computes the head of a term, like {@link PatMatcher}
+   * @return null if stuck or no clause matches
+   */
+  public @Nullable Hit apply(@NotNull ImmutableSeq<Term> args, @NotNull UnaryOperator<Term> pre) {
+    assert args.sizeEquals(arity) : "List size mismatch 😱";
+    var terms = new Term[occCount];
+    args.forEachIndexed((i, arg) -> terms[i] = arg);
+    var node = root;
+    while (true) switch (node) {
+      case Fail _ -> {
+        return null;
+      }
+      case Leaf(var clause, var binds) -> {
+        return new Hit(clause, ImmutableSeq.fill(binds.length, i -> terms[binds[i]]));
+      }
+      case Switch sw -> node = switch (force(terms[sw.occ], pre)) {
+        case ConCallLike kon -> {
+          var branch = sw.cons.find(b -> kon.ref().equals(b.ref));
+          if (branch.isEmpty()) yield sw.otherCon;
+          var children = branch.get().children;
+          var conArgs = kon.conArgs();
+          for (var i = 0; i < children.length; i++) terms[children[i]] = conArgs.get(i);
+          yield branch.get().next;
+        }
+        case TupTerm(var lhs, var rhs) when sw.tuple != null -> {
+          terms[sw.tuple.children[0]] = lhs;
+          terms[sw.tuple.children[1]] = rhs;
+          yield sw.tuple.next;
+        }
+        default -> sw.stuck;
+      };
+    }
+  }
+
+  /** The head of {@param term}, looking through solved {@link MetaPatTerm}s like {@link PatMatcher} does. */
+  private static @NotNull Term force(@NotNull Term term, @NotNull UnaryOperator<Term> pre) {
+    while (true) {
+      var head = pre.apply(term);
+      if (!(head instanceof MetaPatTerm meta)) return head;
+      var solution = PatMatcher.realSolution(meta);
+      if (solution instanceof MetaPatTerm) return solution;
+      term = solution;
+    }
+  }
+
+  /**
+   * @param orderIndependent whether stuck clauses are skipped instead of blocking the later ones
+   * @return null if the clauses use unsupported patterns, or the tree is larger than {@link #MAX_NODES}
+   */
+  public static @Nullable CaseTree compile(@NotNull SeqView<ImmutableSeq<Pat>> clauses, boolean orderIndependent) {
+    var rows = clauses.toImmutableSeq();
+    if (rows.isEmpty()) return null;
+    var compiler = new Compiler(rows, orderIndependent);
+    try {
+      var root = compiler.compile(0, new HashMap<>());
+      return new CaseTree(root, compiler.arity, compiler.occCount);
+    } catch (Compiler.Unsupported _) {
+      return null;
+    }
+  }
+
+  private record Known(@Nullable ConDefLike ref, @NotNull Kind kind, int @NotNull [] children) { }
+  private enum Kind { Con, OtherCon, Tuple, Stuck }
+
+  private static final class Compiler {
+    private static final int SUCCESS = -1, MISMATCH = -2, STUCK = -3;
+
+    private static final class Unsupported extends Exception {
+      private Unsupported() { super(null, null, false, false); }
+    }
+
+    private final @NotNull ImmutableSeq<ImmutableSeq<Pat>> rows;
+    private final boolean orderIndependent;
+    private final int arity;
+    private int occCount;
+    private int nodeCount = 0;
+
+    private Compiler(@NotNull ImmutableSeq<ImmutableSeq<Pat>> rows, boolean orderIndependent) {
+      this.rows = rows;
+      this.orderIndependent = orderIndependent;
+      this.arity = rows.getFirst().size();
+      this.occCount = arity;
+    }
+
+    private @NotNull Node compile(int row, @NotNull Map<Integer, Known> known) throws Unsupported {
+      if (++nodeCount > MAX_NODES) throw new Unsupported();
+      if (row == rows.size()) return Fail.INSTANCE;
+      var binds = MutableList.<Integer>create();
+      var outcome = SUCCESS;
+      var pats = rows.get(row);
+      for (var i = 0; i < pats.size() && outcome == SUCCESS; i++) outcome = run(pats.get(i), i, known, binds);
+      return switch (outcome) {
+        case SUCCESS -> new Leaf(row, toArray(binds));
+        case MISMATCH -> compile(row + 1, known);
+        case STUCK -> orderIndependent ? compile(row + 1, known) : Fail.INSTANCE;
+        default -> branch(row, outcome, known);
+      };
+    }
+
+    /**
+     * Branch on the head of {@param occ}, which the clause {@param row} needs to know.
+     * A tuple (or a constructor) at {@param occ} behaves like a stuck term
+     * when no clause has a tuple (or constructor) pattern there, so no branch is built for it.
+     */
+    private @NotNull Node branch(int row, int occ, @NotNull Map<Integer, Known> known) throws Unsupported {
+      var heads = MutableList.<Pat.Con>create();
+      var hasTuple = new boolean[]{false};
+      for (var i = row; i < rows.size(); i++) {
+        var pats = rows.get(i);
+        for (var j = 0; j < pats.size(); j++) collect(pats.get(j), j, occ, known, heads, hasTuple);
+      }
+      var cons = MutableList.<Branch>create();
+      for (var con : heads) {
+        var children = fresh(con.args().size());
+        cons.append(new Branch(con.ref(), children,
+          compile(row, with(known, occ, new Known(con.ref(), Kind.Con, children)))));
+      }
+      Branch tuple = null;
+      if (hasTuple[0]) {
+        var tupleChildren = fresh(2);
+        tuple = new Branch(null, tupleChildren,
+          compile(row, with(known, occ, new Known(null, Kind.Tuple, tupleChildren))));
+      }
+      var stuck = compile(row, with(known, occ, new Known(null, Kind.Stuck, new int[0])));
+      var otherCon = heads.isEmpty() ? stuck
+        : compile(row, with(known, occ, new Known(null, Kind.OtherCon, new int[0])));
+      return new Switch(occ, cons.toImmutableSeq(), tuple, otherCon, stuck);
+    }
+
+    private int @NotNull [] fresh(int size) {
+      var ids = new int[size];
+      for (var i = 0; i < size; i++) ids[i] = occCount++;
+      return ids;
+    }
+
+    private static int @NotNull [] toArray(@NotNull MutableList<Integer> list) {
+      var array = new int[list.size()];
+      for (var i = 0; i < array.length; i++) array[i] = list.get(i);
+      return array;
+    }
+
+    private static @NotNull Map<Integer, Known> with(@NotNull Map<Integer, Known> known, int occ, @NotNull Known head) {
+      var map = new HashMap<>(known);
+      map.put(occ, head);
+      return map;
+    }
+
+    /**
+     * Collect the constructor patterns that {@param pat} (at {@param at}) has at {@param occ},
+     * and whether it has a tuple pattern there.
+     */
+    private static void collect(
+      @NotNull Pat pat, int at, int occ, @NotNull Map<Integer, Known> known,
+      @NotNull MutableList<Pat.Con> heads, boolean @NotNull [] hasTuple
+    ) {
+      if (at == occ) {
+        switch (pat) {
+          case Pat.Con con when !heads.anyMatch(h -> h.ref().equals(con.ref())) -> heads.append(con);
+          case Pat.Tuple _ -> hasTuple[0] = true;
+          default -> { }
+        }
+        return;
+      }
+      var head = known.get(at);
+      if (head == null) return;
+      switch (pat) {
+        case Pat.Con con when head.kind == Kind.Con && con.ref().equals(head.ref) ->
+          con.args().forEachIndexed((i, arg) -> collect(arg, head.children[i], occ, known, heads, hasTuple));
+        case Pat.Tuple(var lhs, var rhs) when head.kind == Kind.Tuple -> {
+          collect(lhs, head.children[0], occ, known, heads, hasTuple);
+          collect(rhs, head.children[1], occ, known, heads, hasTuple);
+        }
+        default -> { }
+      }
+    }
+
+    /**
+     * Run {@link PatMatcher#match} on what we know.
+     *
+     * @return {@link #SUCCESS}, {@link #MISMATCH}, {@link #STUCK},
+     * or the occurrence whose head is unknown.
+     */
+    private static int run(
+      @NotNull Pat pat, int occ,
+      @NotNull Map<Integer, Known> known, @NotNull MutableList<Integer> binds
+    ) throws Unsupported {
+      switch (pat) {
+        case Pat.Misc misc -> {
+          return switch (misc) {
+            case Absurd -> STUCK;
+            case UntypedBind -> {
+              binds.append(occ);
+              yield SUCCESS;
+            }
+          };
+        }
+        case Pat.Bind _ -> {
+          binds.append(occ);
+          return SUCCESS;
+        }
+        case Pat.Con con -> {
+          var head = known.get(occ);
+          if (head == null) return occ;
+          return switch (head.kind) {
+            case OtherCon -> MISMATCH;
+            case Tuple, Stuck -> STUCK;
+            case Con -> {
+              if (!con.ref().equals(head.ref)) yield MISMATCH;
+              var args = con.args();
+              for (var i = 0; i < args.size(); i++) {
+                var outcome = run(args.get(i), head.children[i], known, binds);
+                if (outcome != SUCCESS) yield outcome;
+              }
+              yield SUCCESS;
+            }
+          };
+        }
+        case Pat.Tuple(var lhs, var rhs) -> {
+          var head = known.get(occ);
+          if (head == null) return occ;
+          if (head.kind != Kind.Tuple) return STUCK;
+          var outcome = run(lhs, head.children[0], known, binds);
+          return outcome != SUCCESS ? outcome : run(rhs, head.children[1], known, binds);
+        }
+        case Pat.ShapedInt _, Pat.Meta _ -> throw new Unsupported();
+      }
+    }
+  }
+}
@@ -29,7 +29,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
-import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
 import java.util.function.UnaryOperator;
 
 /**
@@ -227,7 +227,7 @@ public sealed interface Pat {
   }
 
   record ShapedInt(
-    @Override int repr,
+    @Override long repr,
     @NotNull ConDefLike zero,
     @NotNull ConDefLike suc,
     @NotNull DataCall type
@@ -258,13 +258,13 @@ public sealed interface Pat {
       return new ConCallLike.Head(conRef, 0, ImmutableSeq.empty());
     }
 
-    @Override public @NotNull ShapedInt destruct(int repr) {
+    @Override public @NotNull ShapedInt destruct(long repr) {
       return new ShapedInt(repr, zero, suc, type);
     }
 
     public @NotNull Term toTerm() { return new IntegerTerm(repr, zero, suc, type); }
-    @Override public @NotNull ShapedInt map(@NotNull IntUnaryOperator f) {
-      return new ShapedInt(f.applyAsInt(repr), zero, suc, type);
+    @Override public @NotNull ShapedInt map(@NotNull LongUnaryOperator f) {
+      return new ShapedInt(f.applyAsLong(repr), zero, suc, type);
     }
   }
 
@@ -3,6 +3,7 @@
 package org.aya.syntax.core.repr;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.control.Either;
 import org.aya.generic.stmt.Shaped;
 import org.aya.syntax.core.def.AnyDef;
 import org.aya.syntax.core.def.ConDefLike;
@@ -104,6 +105,54 @@ public enum AyaShape {
       )));
 
     @Override public @NotNull CodeShape codeShape() { return FN_MINUS; }
+  },
+  TIMES_SHAPE {
+    public static final @NotNull CodeShape FN_TIMES = CodeShape.binop(NAT_SHAPE.codeShape(),
+      // | a, 0 => 0
+      new ClauseShape(ImmutableSeq.of(
+        PatShape.Basic.Bind, PatShape.ShapedCon.of(TYPE, ZERO)
+      ), TermShape.ConCall.of(TYPE, ZERO)),
+      // | a, suc b => (_ a b) + a
+      new ClauseShape(ImmutableSeq.of(
+        PatShape.Basic.Bind, PatShape.ShapedCon.of(TYPE, SUC, PatShape.Basic.Bind)
+      ), TermShape.ShapeCall.of(new LocalId("Plus"), PLUS_LEFT_SHAPE.codeShape(),
+        TermShape.NameCall.of(FUNC,
+          new TermShape.DeBruijn(1),
+          new TermShape.DeBruijn(0)),
+        new TermShape.DeBruijn(1)
+      )));
+
+    @Override public @NotNull CodeShape codeShape() { return FN_TIMES; }
+  },
+  APPEND_SHAPE {
+    public static final @NotNull CodeShape FN_APPEND = new FnShape(FUNC,
+      // {A : Type} (xs ys : List A) : List A
+      ImmutableSeq.of(
+        new TermShape.Sort(null, 0),
+        TermShape.ShapeCall.of(TYPE, LIST_SHAPE.codeShape(), new TermShape.DeBruijn(0)),
+        TermShape.NameCall.of(TYPE, new TermShape.DeBruijn(1))
+      ),
+      TermShape.NameCall.of(TYPE, new TermShape.DeBruijn(2)),
+      Either.right(ImmutableSeq.of(
+        // | A, [], ys => ys
+        new ClauseShape(ImmutableSeq.of(
+          PatShape.Basic.Bind, PatShape.ShapedCon.of(TYPE, GlobalId.NIL), PatShape.Basic.Bind
+        ), new TermShape.DeBruijn(0)),
+        // | A, x :: xs, ys => x :: (_ xs ys)
+        new ClauseShape(ImmutableSeq.of(
+          PatShape.Basic.Bind,
+          PatShape.ShapedCon.of(TYPE, GlobalId.CONS, PatShape.Basic.Bind, PatShape.Basic.Bind),
+          PatShape.Basic.Bind
+        ), TermShape.ConCall.of(TYPE, GlobalId.CONS,
+          new TermShape.DeBruijn(3),
+          new TermShape.DeBruijn(2),
+          TermShape.NameCall.of(FUNC,
+            new TermShape.DeBruijn(3),
+            new TermShape.DeBruijn(1),
+            new TermShape.DeBruijn(0))))
+      )));
+
+    @Override public @NotNull CodeShape codeShape() { return FN_APPEND; }
   };
 
   public @NotNull abstract CodeShape codeShape();
@@ -126,6 +175,8 @@ public enum AyaShape {
     return switch (shape) {
       case PLUS_LEFT_SHAPE, PLUS_RIGHT_SHAPE -> new IntegerOps.FnRule(ref, IntegerOps.FnRule.Kind.Add);
       case MINUS_SHAPE -> new IntegerOps.FnRule(ref, IntegerOps.FnRule.Kind.SubTrunc);
+      case TIMES_SHAPE -> new IntegerOps.FnRule(ref, IntegerOps.FnRule.Kind.Mul);
+      case APPEND_SHAPE -> new ListOps.FnRule(ref, ListOps.FnRule.Kind.Append);
       default -> null;
     };
   }
@@ -4,14 +4,27 @@ package org.aya.syntax.core.term;
 
 import kala.collection.immutable.ImmutableSeq;
 import kala.function.IndexedFunction;
+import org.aya.syntax.core.pat.CaseTree;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Objects;
 import java.util.function.UnaryOperator;
 
+/**
+ * @param tree the {@link #clauses} compiled when the match is created, null if they cannot be compiled.
+ *             Instantiating the match rebuilds the clauses but keeps their patterns, so it keeps the tree too.
+ *             It is not a part of the identity of the term.
+ */
 public record MatchTerm(
   @NotNull ImmutableSeq<Term> discriminant,
-  @NotNull ImmutableSeq<Term.Matching> clauses
+  @NotNull ImmutableSeq<Term.Matching> clauses,
+  @Nullable CaseTree tree
 ) implements Term {
+  public MatchTerm(@NotNull ImmutableSeq<Term> discriminant, @NotNull ImmutableSeq<Term.Matching> clauses) {
+    this(discriminant, clauses, CaseTree.compile(clauses.view().map(Term.Matching::patterns), false));
+  }
+
   public @NotNull MatchTerm update(
     @NotNull ImmutableSeq<Term> discriminant,
     @NotNull ImmutableSeq<Term.Matching> clauses
@@ -19,7 +32,7 @@ public record MatchTerm(
     return this.discriminant.sameElements(discriminant, true)
       && this.clauses.sameElements(clauses, true)
       ? this
-      : new MatchTerm(discriminant, clauses);
+      : new MatchTerm(discriminant, clauses, tree);
   }
 
   @Override
@@ -30,4 +43,11 @@ public record MatchTerm(
         UnaryOperator.identity())
     ));
   }
+
+  @Override public boolean equals(Object o) {
+    return o instanceof MatchTerm(var oDiscriminant, var oClauses, _)
+      && discriminant.equals(oDiscriminant) && clauses.equals(oClauses);
+  }
+
+  @Override public int hashCode() { return Objects.hash(discriminant, clauses); }
 }
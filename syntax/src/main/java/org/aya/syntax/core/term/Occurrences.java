@@ -0,0 +1,81 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.term;
+
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.core.term.call.Callable;
+import org.aya.syntax.core.term.call.ClassCall;
+import org.aya.syntax.core.term.xtt.CoeTerm;
+import org.aya.syntax.core.term.xtt.EqTerm;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A summary of what a term mentions, used to skip the terms that a substitution cannot change.
+ * <p>
+ * Terms are records, so the summary cannot live in the nodes, and computing it takes a traversal
+ * of its own. So it is only carried by the long-lived {@link Param}s of a
+ * {@link org.aya.syntax.telescope.Signature}, which are summarized once, and whose types are substituted
+ * into, bound and lifted at every use of the signature. A parameter that a substitution
+ * ({@link Param#instTele}, {@link Param#substTele}), {@link Param#bindAt} or {@link Param#elevate}
+ * cannot change is returned as it is, without traversing it.
+ * Other terms are not summarized: {@link Term#replaceAllFrom}, {@link Term#bindAt}, {@link Term#elevate}
+ * and {@link org.aya.prettier.FindUsage} still walk them, keeping the identity of the unchanged subterms.
+ * <p>
+ * The body of a {@link Closure.Jit} is only known by running it, so a term with one
+ * is assumed to mention everything.
+ *
+ * @param looseBound one plus the largest loose de Bruijn index, {@code 0} if the term is closed
+ * @param hasFree    whether the term contains a {@link FreeTerm}
+ * @param hasLevel   whether the term contains something that {@link Term#elevate} could change
+ * @see Param#mentionsFrom
+ */
+public record Occurrences(int looseBound, boolean hasFree, boolean hasLevel) {
+  public static final @NotNull Occurrences EMPTY = new Occurrences(0, false, false);
+  public static final @NotNull Occurrences UNKNOWN = new Occurrences(Integer.MAX_VALUE, true, true);
+  private static final @NotNull Occurrences FREE = new Occurrences(0, true, false);
+  private static final @NotNull Occurrences[] LOCAL = new Occurrences[32];
+
+  static {
+    for (var i = 0; i < LOCAL.length; i++) LOCAL[i] = new Occurrences(i + 1, false, false);
+  }
+
+  /** Computes the summary of {@param term} in one traversal, nothing is cached. */
+  public static @NotNull Occurrences of(@NotNull Term term) {
+    return switch (term) {
+      case LocalTerm(var index) -> index < LOCAL.length ? LOCAL[index] : new Occurrences(index + 1, false, false);
+      case FreeTerm _ -> FREE;
+      default -> hasJit(term) ? UNKNOWN : compute(term);
+    };
+  }
+
+  private static boolean hasJit(@NotNull Term term) {
+    return switch (term) {
+      case LamTerm(var body) -> body instanceof Closure.Jit;
+      case DepTypeTerm(_, _, var body) -> body instanceof Closure.Jit;
+      case CoeTerm(var type, _, _) -> type instanceof Closure.Jit;
+      case EqTerm(var A, _, _) -> A instanceof Closure.Jit;
+      case ClassCall(_, _, var args) -> args.anyMatch(Closure.Jit.class::isInstance);
+      case ClassCastTerm(_, _, var remember, var forget) ->
+        remember.anyMatch(Closure.Jit.class::isInstance) || forget.anyMatch(Closure.Jit.class::isInstance);
+      default -> false;
+    };
+  }
+
+  private static @NotNull Occurrences compute(@NotNull Term term) {
+    var looseBound = new int[]{0};
+    var hasFree = new boolean[]{false};
+    var hasLevel = new boolean[]{term instanceof SortTerm || term instanceof Callable || term instanceof ClassCall};
+    term.descent((i, t) -> {
+      var sub = of(t);
+      looseBound[0] = Math.max(looseBound[0], sub.looseBound - i);
+      hasFree[0] |= sub.hasFree;
+      hasLevel[0] |= sub.hasLevel;
+      return t;
+    });
+    if (looseBound[0] == 0 && !hasFree[0] && !hasLevel[0]) return EMPTY;
+    return new Occurrences(looseBound[0], hasFree[0], hasLevel[0]);
+  }
+
+  /** @return whether substituting the indices from {@param from} on could change the term */
+  public boolean mentionsFrom(int from) { return looseBound > from; }
+}
@@ -13,22 +13,49 @@ import org.aya.util.prettier.PrettierOptions;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Objects;
 import java.util.function.UnaryOperator;
 
-public record Param(@NotNull String name, @NotNull Term type, boolean explicit) implements AyaDocile {
+/**
+ * @param occurrences the summary of {@param type}, {@link Occurrences#UNKNOWN} unless {@link #summarize}d.
+ *                    It is not a part of the identity of a parameter.
+ */
+public record Param(
+  @NotNull String name, @NotNull Term type, boolean explicit,
+  @NotNull Occurrences occurrences
+) implements AyaDocile {
+  public Param(@NotNull String name, @NotNull Term type, boolean explicit) {
+    this(name, type, explicit, Occurrences.UNKNOWN);
+  }
+
   public static @NotNull SeqView<Param> substTele(SeqView<Param> tele, SeqView<Term> subst) {
-    return tele.mapIndexed((idx, p) -> p.descent(ty -> ty.replaceTeleFrom(idx, subst)));
+    return tele.mapIndexed((idx, p) -> p.mentionsFrom(idx) ? p.descent(ty -> ty.replaceTeleFrom(idx, subst)) : p);
+  }
+
+  /** @return this parameter with the summary of its type, worth it if it is going to be instantiated many times */
+  public @NotNull Param summarize() {
+    return occurrences != Occurrences.UNKNOWN ? this : new Param(name, type, explicit, Occurrences.of(type));
   }
 
+  /** @return whether replacing the indices from {@param from} on could change {@link #type} */
+  public boolean mentionsFrom(int from) { return occurrences.mentionsFrom(from); }
+
   public boolean nameEq(@Nullable String otherName) { return name.equals(otherName); }
   // public @NotNull Arg<Term> toArg() { return new Arg<>(type, explicit); }
   public @NotNull Pat toFreshPat() { return new Pat.Bind(LocalVar.generate(name), type); }
   public @NotNull FreeTerm toFreshTerm() { return new FreeTerm(name); }
-  public @NotNull Param implicitize() { return new Param(name, type, false); }
-  public @NotNull Param explicitize() { return new Param(name, type, true); }
+  public @NotNull Param implicitize() { return new Param(name, type, false, occurrences); }
+  public @NotNull Param explicitize() { return new Param(name, type, true, occurrences); }
 
-  // public @NotNull Param bindAt(LocalVar ref, int i) { return this.descent(t -> t.bindAt(ref, i)); }
-  public Param instTele(SeqView<Term> terms) { return update(type.instantiateTele(terms)); }
+  public @NotNull Param bindAt(@NotNull LocalVar ref, int i) {
+    return occurrences.hasFree() ? descent(t -> t.bindAt(ref, i)) : this;
+  }
+  public @NotNull Param elevate(int lift) {
+    return occurrences.hasLevel() ? descent(t -> t.elevate(lift)) : this;
+  }
+  public Param instTele(SeqView<Term> terms) {
+    return mentionsFrom(0) ? update(type.instantiateTele(terms)) : this;
+  }
 
   public @NotNull Param update(@NotNull Term type) {
     return type == this.type ? this : new Param(name, type, explicit);
@@ -38,6 +65,13 @@ public record Param(@NotNull String name, @NotNull Term type, boolean explicit)
     return update(mapper.apply(type));
   }
 
+  @Override public boolean equals(Object o) {
+    return o instanceof Param(var oName, var oType, var oExplicit, _)
+      && explicit == oExplicit && name.equals(oName) && type.equals(oType);
+  }
+
+  @Override public int hashCode() { return Objects.hash(name, type, explicit); }
+
   @Override public @NotNull Doc toDoc(@NotNull PrettierOptions options) {
     return new CorePrettier(options).visitParam(this, BasePrettier.Outer.Free);
   }
@@ -0,0 +1,93 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.term;
+
+import kala.collection.mutable.MutableMap;
+import org.aya.syntax.core.term.call.Callable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Hash-consing of core terms: structurally equal terms passed to {@link #intern(Term)}
+ * are represented by a single shared object, so comparing them is just a reference comparison.
+ * <p>
+ * Interning is bottom-up, so the children of a canonical term are always canonical,
+ * and the structural hash of a canonical term is computed once from the cached hashes
+ * of its children, see {@link #hashOf(Term)}.
+ *
+ * <p>
+ * The pool is bounded by a capacity: when it is full, it is emptied before interning the next term,
+ * so the terms of problems solved long ago are not retained.
+ *
+ * @apiNote the interned term may differ from the input by beta reduction,
+ * because {@link Term#descent} eliminates the redexes it rebuilds.
+ */
+public final class TermInterner {
+  private record Node(@NotNull Term term, int hash) {
+    @Override public int hashCode() { return hash; }
+    @Override public boolean equals(@Nullable Object o) {
+      return o instanceof Node node && hash == node.hash && term.equals(node.term);
+    }
+  }
+
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  private final int capacity;
+  private final @NotNull MutableMap<Node, Term> pool = MutableMap.create();
+  /** Canonical terms and their structural hash, keyed on identity. */
+  private final @NotNull IdentityHashMap<Term, Integer> canonical = new IdentityHashMap<>();
+
+  public TermInterner(int capacity) { this.capacity = capacity; }
+  public TermInterner() { this(DEFAULT_CAPACITY); }
+
+  /** @return the canonical representative of {@param term} */
+  public @NotNull Term intern(@NotNull Term term) {
+    // Never empty the pool halfway, or the children of a canonical term may not be canonical
+    if (pool.size() >= capacity) clear();
+    return internRec(term);
+  }
+
+  private @NotNull Term internRec(@NotNull Term term) {
+    if (canonical.containsKey(term)) return term;
+    var shared = term.descent(this::internRec);
+    if (canonical.containsKey(shared)) return shared;
+    var node = new Node(shared, shallowHash(shared));
+    var existing = pool.getOrNull(node);
+    if (existing != null) return existing;
+    pool.put(node, shared);
+    canonical.put(shared, node.hash);
+    return shared;
+  }
+
+  /** The structural hash of {@param term}, cached if it is canonical. */
+  public int hashOf(@NotNull Term term) {
+    var hash = canonical.get(term);
+    return hash != null ? hash : term.hashCode();
+  }
+
+  public boolean isCanonical(@NotNull Term term) { return canonical.containsKey(term); }
+  public int size() { return pool.size(); }
+  public void clear() {
+    pool.clear();
+    canonical.clear();
+  }
+
+  /**
+   * Combine the data that is not visible to {@link Term#descent} with the hashes of the children.
+   * Nodes without children are hashed by themselves.
+   */
+  private int shallowHash(@NotNull Term term) {
+    var hash = new int[]{term.getClass().hashCode()};
+    var leaf = new boolean[]{true};
+    term.descent((i, t) -> {
+      leaf[0] = false;
+      hash[0] = 31 * hash[0] + 7 * i + hashOf(t);
+      return t;
+    });
+    if (leaf[0]) return term.hashCode();
+    if (term instanceof Callable.Tele call) hash[0] = 31 * hash[0] + call.ref().hashCode();
+    return hash[0];
+  }
+}
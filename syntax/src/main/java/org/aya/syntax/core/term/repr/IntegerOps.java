@@ -26,7 +26,8 @@ public sealed interface IntegerOps<Def extends AnyDef> extends Shaped.Applicable
       // suc
       assert args.sizeEquals(1);
       var arg = args.get(0);
-      if (arg instanceof IntegerTerm intTerm) return intTerm.map(x -> x + 1);
+      if (arg instanceof IntegerTerm intTerm && intTerm.repr() < Long.MAX_VALUE)
+        return intTerm.map(x -> x + 1);
       return null;
     }
     @Override public @NotNull ConRule descent(@NotNull IndexedFunction<Term, Term> f) { return this; }
@@ -34,28 +35,35 @@ public sealed interface IntegerOps<Def extends AnyDef> extends Shaped.Applicable
 
   record FnRule(@Override @NotNull FnDefLike ref, @NotNull Kind kind) implements IntegerOps<FnDefLike> {
     public enum Kind {
-      Add, SubTrunc
+      Add, SubTrunc, Mul
     }
 
+    /**
+     * @return null if the arguments are not literals, in which case the definition of the function is used,
+     * or the result does not fit in a {@code long}, see {@link #isStuck}
+     */
     @Override public @Nullable Term apply(@NotNull ImmutableSeq<Term> args) {
-      return switch (kind) {
-        case Add -> {
-          assert args.sizeEquals(2);
-          if (args.get(0) instanceof IntegerTerm ita && args.get(1) instanceof IntegerTerm itb) {
-            yield ita.map(x -> x + itb.repr());
-          }
-
-          yield null;
-        }
-        case SubTrunc -> {
-          assert args.sizeEquals(2);
-          if (args.get(0) instanceof IntegerTerm ita && args.get(1) instanceof IntegerTerm itb) {
-            yield ita.map(x -> Math.max(x - itb.repr(), 0));
-          }
+      assert args.sizeEquals(2);
+      if (!(args.get(0) instanceof IntegerTerm ita && args.get(1) instanceof IntegerTerm itb)) return null;
+      var a = ita.repr();
+      var b = itb.repr();
+      try {
+        return ita.map(_ -> switch (kind) {
+          case Add -> Math.addExact(a, b);
+          case SubTrunc -> Math.max(a - b, 0);
+          case Mul -> Math.multiplyExact(a, b);
+        });
+      } catch (ArithmeticException overflow) {
+        return null;
+      }
+    }
 
-          yield null;
-        }
-      };
+    /**
+     * Unfolding the definition on literals whose result overflows would build
+     * a chain of more than {@link Long#MAX_VALUE} successors, so it is stuck.
+     */
+    @Override public boolean isStuck(@NotNull ImmutableSeq<Term> args) {
+      return args.allMatch(arg -> arg instanceof IntegerTerm);
     }
     @Override public @NotNull FnRule descent(@NotNull IndexedFunction<Term, Term> f) { return this; }
   }
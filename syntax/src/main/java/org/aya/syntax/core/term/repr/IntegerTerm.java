@@ -15,13 +15,15 @@ import org.aya.syntax.core.term.call.RuleReducer;
 import org.aya.syntax.core.term.marker.StableWHNF;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
 
 /**
- * An efficient represent for Nat
+ * An efficient represent for Nat, backed by a (non-negative) {@code long}.
+ *
+ * @see IntegerOps
  */
 public record IntegerTerm(
-  @Override int repr,
+  @Override long repr,
   @NotNull ConDefLike zero,
   @NotNull ConDefLike suc,
   @Override @NotNull DataCall type
@@ -30,7 +32,7 @@ public record IntegerTerm(
     assert repr >= 0;
   }
 
-  public IntegerTerm(int repr, @NotNull ShapeRecognition recog, @NotNull DataCall type) {
+  public IntegerTerm(long repr, @NotNull ShapeRecognition recog, @NotNull DataCall type) {
     this(repr, recog.getCon(CodeShape.GlobalId.ZERO), recog.getCon(CodeShape.GlobalId.SUC), type);
   }
 
@@ -56,12 +58,12 @@ public record IntegerTerm(
       0, type.args(), ImmutableSeq.of(term));
   }
 
-  @Override public @NotNull Term destruct(int repr) {
+  @Override public @NotNull Term destruct(long repr) {
     return new IntegerTerm(repr, zero, suc, type);
   }
 
-  @Override public @NotNull IntegerTerm map(@NotNull IntUnaryOperator f) {
-    return new IntegerTerm(f.applyAsInt(repr), zero, suc, type);
+  @Override public @NotNull IntegerTerm map(@NotNull LongUnaryOperator f) {
+    return new IntegerTerm(f.applyAsLong(repr), zero, suc, type);
   }
   @Override public int ulift() { return type.ulift(); }
 }
@@ -7,6 +7,7 @@ import kala.function.IndexedFunction;
 import org.aya.generic.stmt.Shaped;
 import org.aya.syntax.core.def.AnyDef;
 import org.aya.syntax.core.def.ConDefLike;
+import org.aya.syntax.core.def.FnDefLike;
 import org.aya.syntax.core.term.Term;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -35,4 +36,25 @@ public interface ListOps<Def extends AnyDef> extends Shaped.Applicable<Def> {
       return update((ListTerm) f.apply(0, empty));
     }
   }
+
+  record FnRule(@Override @NotNull FnDefLike ref, @NotNull Kind kind) implements ListOps<FnDefLike> {
+    public enum Kind {
+      Append
+    }
+
+    @Override public @Nullable Term apply(@NotNull ImmutableSeq<Term> args) {
+      return switch (kind) {
+        case Append -> {
+          // append : {A : Type} (xs ys : List A) -> List A
+          assert args.sizeEquals(3);
+          if (args.get(1) instanceof ListTerm xs && args.get(2) instanceof ListTerm ys) {
+            yield xs.map(repr -> repr.appendedAll(ys.repr()));
+          }
+
+          yield null;
+        }
+      };
+    }
+    @Override public @NotNull FnRule descent(@NotNull IndexedFunction<Term, Term> f) { return this; }
+  }
 }
@@ -18,23 +18,31 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.function.UnaryOperator;
 
+/**
+ * A list literal. The elements are always kept in a persistent {@link ImmutableTreeSeq},
+ * so consing, concatenation ({@link ListOps.FnRule}) and taking the tail share structure
+ * instead of copying.
+ */
 public record ListTerm(
   @Override @NotNull ImmutableSeq<Term> repr,
   @NotNull ConDefLike nil,
   @NotNull ConDefLike cons,
   @Override @NotNull DataCall type
 ) implements StableWHNF, Shaped.List<Term>, ConCallLike {
+  public ListTerm {
+    if (!(repr instanceof ImmutableTreeSeq<Term>)) repr = ImmutableTreeSeq.from(repr);
+  }
+
   public ListTerm(
     @NotNull ImmutableSeq<Term> repr,
     @NotNull ShapeRecognition recog,
     @NotNull DataCall type
   ) {
-    this(ImmutableTreeSeq.from(repr),
-      recog.getCon(CodeShape.GlobalId.NIL), recog.getCon(CodeShape.GlobalId.CONS), type);
+    this(repr, recog.getCon(CodeShape.GlobalId.NIL), recog.getCon(CodeShape.GlobalId.CONS), type);
   }
 
   @Override public @NotNull ListTerm makeNil() {
-    return new ListTerm(ImmutableSeq.empty(), nil, cons, type);
+    return new ListTerm(ImmutableTreeSeq.empty(), nil, cons, type);
   }
 
   @Override public @NotNull Term
@@ -52,12 +60,20 @@ public record ListTerm(
   }
 
   public @NotNull ListTerm update(@NotNull ImmutableSeq<Term> repr, @NotNull DataCall type) {
-    return repr.sameElements(this.repr, true) && type == this.type
+    return (repr == this.repr || repr.sameElements(this.repr, true)) && type == this.type
       ? this : new ListTerm(repr, nil, cons, type);
   }
 
+  /** Only the changed elements are updated, so the unchanged parts of the tree are shared. */
   @Override public @NotNull Term descent(@NotNull IndexedFunction<Term, Term> f) {
-    return update(repr.map(term -> f.apply(0, term)), (DataCall) f.apply(0, type));
+    var newRepr = repr;
+    var i = 0;
+    for (var term : repr) {
+      var newTerm = f.apply(0, term);
+      if (newTerm != term) newRepr = newRepr.updated(i, newTerm);
+      i++;
+    }
+    return update(newRepr, (DataCall) f.apply(0, type));
   }
 
   @Override public @NotNull ConCallLike.Head head() {
@@ -37,7 +37,7 @@ public record MetaLitTerm(
       var recog = t.recog();
       var shape = recog.shape();
       if (shape == AyaShape.NAT_SHAPE)
-        return Option.some(new IntegerTerm((int) repr,
+        return Option.some(new IntegerTerm((long) repr,
           recog.getCon(CodeShape.GlobalId.ZERO),
           recog.getCon(CodeShape.GlobalId.SUC),
           dataCall));
@@ -0,0 +1,153 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.term.repr;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+
+/**
+ * An immutable string as a height-balanced (AVL) tree of chunks, used by {@link StringTerm}
+ * so that concatenation and slicing take logarithmic time instead of copying.
+ * The flat {@link String} is computed on demand and cached, in a volatile field,
+ * because the terms are shared between threads.
+ */
+public final class StringRope implements CharSequence, Serializable {
+  /** Chunks shorter than this are concatenated eagerly. */
+  public static final int CHUNK_SIZE = 256;
+  public static final @NotNull StringRope EMPTY = new StringRope("");
+
+  private final @Nullable String chunk;
+  private final @Nullable StringRope left, right;
+  private final int length, height;
+  private volatile @Nullable String flat;
+
+  private StringRope(@NotNull String chunk) {
+    this.chunk = chunk;
+    this.left = this.right = null;
+    this.length = chunk.length();
+    this.height = 0;
+    this.flat = chunk;
+  }
+
+  private StringRope(@NotNull StringRope left, @NotNull StringRope right) {
+    this.chunk = null;
+    this.left = left;
+    this.right = right;
+    this.length = left.length + right.length;
+    this.height = Math.max(left.height, right.height) + 1;
+  }
+
+  public static @NotNull StringRope of(@NotNull String string) {
+    return string.isEmpty() ? EMPTY : new StringRope(string);
+  }
+
+  public @NotNull StringRope concat(@NotNull StringRope other) {
+    if (other.length == 0) return this;
+    if (length == 0) return other;
+    if (length + other.length <= CHUNK_SIZE) return new StringRope(toString() + other);
+    // Appending a short chunk to a rope ending with a short chunk, merge the chunks
+    if (other.chunk != null) {
+      var merged = mergeLast(other.chunk);
+      if (merged != null) return merged;
+    }
+    return join(this, other);
+  }
+
+  /**
+   * @return this rope with its last chunk followed by {@param suffix}, of the same shape,
+   * or null if the merged chunk would be longer than {@link #CHUNK_SIZE}
+   */
+  private @Nullable StringRope mergeLast(@NotNull String suffix) {
+    if (chunk != null) return chunk.length() + suffix.length() <= CHUNK_SIZE ? new StringRope(chunk + suffix) : null;
+    assert left != null && right != null;
+    var merged = right.mergeLast(suffix);
+    return merged == null ? null : new StringRope(left, merged);
+  }
+
+  /** Concatenate two balanced trees, see the join operation of AVL trees. */
+  private static @NotNull StringRope join(@NotNull StringRope l, @NotNull StringRope r) {
+    if (l.height > r.height + 1) {
+      assert l.left != null && l.right != null;
+      return balance(l.left, join(l.right, r));
+    }
+    if (r.height > l.height + 1) {
+      assert r.left != null && r.right != null;
+      return balance(join(l, r.left), r.right);
+    }
+    return new StringRope(l, r);
+  }
+
+  /** Make a node from two balanced trees whose heights differ by at most 2. */
+  @SuppressWarnings("DataFlowIssue")
+  private static @NotNull StringRope balance(@NotNull StringRope a, @NotNull StringRope b) {
+    if (b.height > a.height + 1) {
+      if (b.left.height > b.right.height)
+        return new StringRope(new StringRope(a, b.left.left), new StringRope(b.left.right, b.right));
+      return new StringRope(new StringRope(a, b.left), b.right);
+    }
+    if (a.height > b.height + 1) {
+      if (a.right.height > a.left.height)
+        return new StringRope(new StringRope(a.left, a.right.left), new StringRope(a.right.right, b));
+      return new StringRope(a.left, new StringRope(a.right, b));
+    }
+    return new StringRope(a, b);
+  }
+
+  @Override public int length() { return length; }
+  /** The height of the tree, which is logarithmic in the number of chunks. */
+  public int height() { return height; }
+
+  @Override public char charAt(int index) {
+    if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+    var rope = this;
+    while (rope.chunk == null) {
+      assert rope.left != null && rope.right != null;
+      if (index < rope.left.length) rope = rope.left;
+      else {
+        index -= rope.left.length;
+        rope = rope.right;
+      }
+    }
+    return rope.chunk.charAt(index);
+  }
+
+  @Override public @NotNull StringRope subSequence(int start, int end) {
+    if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException();
+    if (start == 0 && end == length) return this;
+    if (start == end) return EMPTY;
+    if (chunk != null) return new StringRope(chunk.substring(start, end));
+    assert left != null && right != null;
+    var mid = left.length;
+    if (end <= mid) return left.subSequence(start, end);
+    if (start >= mid) return right.subSequence(start - mid, end - mid);
+    return left.subSequence(start, mid).concat(right.subSequence(0, end - mid));
+  }
+
+  @Override public @NotNull String toString() {
+    var string = flat;
+    if (string == null) {
+      var builder = new StringBuilder(length);
+      appendTo(builder);
+      flat = string = builder.toString();
+    }
+    return string;
+  }
+
+  private void appendTo(@NotNull StringBuilder builder) {
+    var string = flat;
+    if (string != null) builder.append(string);
+    else {
+      assert left != null && right != null;
+      left.appendTo(builder);
+      right.appendTo(builder);
+    }
+  }
+
+  @Override public boolean equals(@Nullable Object o) {
+    return this == o || o instanceof StringRope rope && length == rope.length && toString().equals(rope.toString());
+  }
+
+  @Override public int hashCode() { return toString().hashCode(); }
+}
@@ -7,7 +7,13 @@ import org.aya.syntax.core.term.Term;
 import org.aya.syntax.core.term.marker.StableWHNF;
 import org.jetbrains.annotations.NotNull;
 
-public record StringTerm(@NotNull String string) implements StableWHNF {
+/** A string literal, backed by a {@link StringRope} so that repeated concatenation is cheap. */
+public record StringTerm(@NotNull StringRope rope) implements StableWHNF {
+  public StringTerm(@NotNull String string) { this(StringRope.of(string)); }
+
+  public @NotNull String string() { return rope.toString(); }
+  public @NotNull StringTerm concat(@NotNull StringTerm other) { return new StringTerm(rope.concat(other.rope)); }
+
   @Override public @NotNull StringTerm descent(@NotNull IndexedFunction<Term, Term> f) {
     return this;
   }
@@ -25,6 +25,8 @@ public record CodeOptions(
     Concrete, Core, Type
   }
   public enum NormalizeMode {
-    HEAD, FULL, NULL
+    HEAD, FULL, NULL,
+    /** Full normalization by evaluation, an alternative to {@link #FULL} */
+    NBE
   }
 }
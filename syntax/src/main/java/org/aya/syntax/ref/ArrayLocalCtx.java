@@ -0,0 +1,157 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.ref;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableArray;
+import kala.control.Option;
+import org.aya.syntax.core.term.Term;
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * A run of variables bound by {@link LocalCtx#derive1}, stored in an array shared by
+ * the contexts derived from each other, so binding and looking up a variable take constant time.
+ * <p>
+ * A context is a prefix of the array, which is never modified, so contexts are persistent.
+ * Deriving from the longest prefix appends to the array in place, while deriving from
+ * a shorter one, i.e. binding another variable in a context that was already derived from
+ * (another clause, or another try after a failed one), creates a single node like
+ * a linked context would, whose parent is that context. The node only allocates a run
+ * when something is derived from it in turn.
+ * Like the other contexts, it is confined to the thread of its type checker.
+ */
+public final class ArrayLocalCtx implements LocalCtx {
+  /** A run of at most this many variables is looked up by scanning it, so short runs need no map. */
+  private static final int SCAN_LIMIT = 8;
+
+  private static final class Run {
+    private LocalVar[] vars = new LocalVar[SCAN_LIMIT];
+    private Term[] types = new Term[SCAN_LIMIT];
+    private int size = 0;
+    /** The last slot each variable is bound in, null while the run is short. */
+    private @Nullable HashMap<LocalVar, Integer> slots;
+    /** The previous slot the variable of a slot is bound in, or {@code -1}, null while the run is short. */
+    private int @Nullable [] shadowed;
+
+    private void push(@NotNull LocalVar var, @NotNull Term type) {
+      if (size == vars.length) {
+        vars = Arrays.copyOf(vars, size * 2);
+        types = Arrays.copyOf(types, size * 2);
+        if (shadowed != null) shadowed = Arrays.copyOf(shadowed, size * 2);
+      }
+      vars[size] = var;
+      types[size] = type;
+      if (slots == null && size == SCAN_LIMIT) {
+        slots = new HashMap<>();
+        shadowed = new int[vars.length];
+        for (var i = 0; i < size; i++) index(i);
+      }
+      if (slots != null) index(size);
+      size++;
+    }
+
+    private void index(int slot) {
+      assert slots != null && shadowed != null;
+      var previous = slots.put(vars[slot], slot);
+      shadowed[slot] = previous == null ? -1 : previous;
+    }
+
+    /** @return the type of {@param key} in the prefix of length {@param prefix}, or null */
+    private @Nullable Term lookup(@NotNull LocalVar key, int prefix) {
+      if (slots == null) {
+        for (var i = prefix - 1; i >= 0; i--) if (vars[i] == key) return types[i];
+        return null;
+      }
+      assert shadowed != null;
+      var found = slots.get(key);
+      if (found == null) return null;
+      // Skip the bindings after the prefix, usually none
+      int slot = found;
+      while (slot >= prefix) slot = shadowed[slot];
+      return slot < 0 ? null : types[slot];
+    }
+  }
+
+  /** Null for a single node, until something is derived from it. */
+  private @Nullable Run run;
+  private final int size;
+  private final @Nullable LocalCtx parent;
+  /** The variable of a single node, used until it gets a {@link #run}. */
+  private final @Nullable LocalVar var;
+  private final @Nullable Term type;
+
+  private ArrayLocalCtx(@NotNull Run run, int size, @Nullable LocalCtx parent) {
+    this.run = run;
+    this.size = size;
+    this.parent = parent;
+    this.var = null;
+    this.type = null;
+  }
+
+  public ArrayLocalCtx(@NotNull LocalVar var, @NotNull Term type, @Nullable LocalCtx parent) {
+    this.run = null;
+    this.size = 1;
+    this.parent = parent;
+    this.var = var;
+    this.type = type;
+  }
+
+  @Override public @Nullable LocalCtx parent() { return parent; }
+  @Override public boolean isEmpty() { return false; }
+  @Override public int size() { return size + (parent == null ? 0 : parent.size()); }
+
+  @VisibleForTesting boolean hasRun() { return run != null; }
+
+  @Override public @NotNull Option<Term> getLocal(@NotNull LocalVar key) {
+    if (run == null) return key == var ? Option.some(type) : Option.none();
+    return Option.ofNullable(run.lookup(key, size));
+  }
+
+  @Override public void putLocal(@NotNull LocalVar key, @NotNull Term value) {
+    throw new Panic("ArrayLocalCtx is immutable");
+  }
+
+  @Override public @NotNull LocalCtx derive1(@NotNull LocalVar var, @NotNull Term type) {
+    if (run == null) {
+      assert this.var != null && this.type != null;
+      run = new Run();
+      run.push(this.var, this.type);
+    }
+    if (run.size != size) return new ArrayLocalCtx(var, type, this);
+    run.push(var, type);
+    return new ArrayLocalCtx(run, size + 1, parent);
+  }
+
+  @Override public @NotNull SeqView<LocalVar> extractLocal() {
+    if (run == null) return SeqView.of(var);
+    return ImmutableArray.Unsafe.wrap(Arrays.copyOf(run.vars, size)).view();
+  }
+
+  @Override public @NotNull LocalCtx map(UnaryOperator<Term> mapper) {
+    var mappedParent = parent == null ? null : parent.map(mapper);
+    if (run == null) {
+      assert var != null && type != null;
+      return new ArrayLocalCtx(var, mapper.apply(type), mappedParent);
+    }
+    var copy = new Run();
+    for (var i = 0; i < size; i++) copy.push(run.vars[i], mapper.apply(run.types[i]));
+    return new ArrayLocalCtx(copy, size, mappedParent);
+  }
+
+  @SuppressWarnings("MethodDoesntCallSuperMethod")
+  @Override public @NotNull LocalCtx clone() {
+    if (parent == null) return this;
+    if (run == null) {
+      assert var != null && type != null;
+      return new ArrayLocalCtx(var, type, parent.clone());
+    }
+    return new ArrayLocalCtx(run, size, parent.clone());
+  }
+}
@@ -3,7 +3,6 @@
 package org.aya.syntax.ref;
 
 import kala.collection.SeqView;
-import kala.collection.immutable.ImmutableTreeSeq;
 import kala.collection.mutable.MutableLinkedHashMap;
 import kala.collection.mutable.MutableList;
 import org.aya.syntax.core.term.Term;
@@ -13,7 +12,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.function.UnaryOperator;
 
-public sealed interface LocalCtx extends Scoped<LocalVar, Term, LocalCtx> permits SeqLocalCtx, MapLocalCtx {
+public sealed interface LocalCtx extends Scoped<LocalVar, Term, LocalCtx> permits ArrayLocalCtx, MapLocalCtx {
   boolean isEmpty();
   int size();
   @Contract(value = "_ -> new", pure = true)
@@ -32,6 +31,6 @@ public sealed interface LocalCtx extends Scoped<LocalVar, Term, LocalCtx> permit
     return new MapLocalCtx(MutableLinkedHashMap.of(), MutableList.create(), this);
   }
   @Contract("_,_->new") default @NotNull LocalCtx derive1(@NotNull LocalVar var, @NotNull Term type) {
-    return new SeqLocalCtx(ImmutableTreeSeq.of(type), ImmutableTreeSeq.of(var), this);
+    return new ArrayLocalCtx(var, type, this);
   }
 }
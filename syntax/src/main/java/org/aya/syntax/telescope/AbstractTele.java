@@ -110,7 +110,9 @@ public interface AbstractTele {
     @Override public boolean telescopeLicit(int i) { return telescope.get(i).explicit(); }
     @Override public @NotNull String telescopeName(int i) { return telescope.get(i).name(); }
     @Override public @NotNull Term telescope(int i, Seq<Term> teleArgs) {
-      return telescope.get(i).type().instantiateTele(teleArgs.sliceView(0, i));
+      var param = telescope.get(i);
+      if (!param.mentionsFrom(0)) return param.type();
+      return param.type().instantiateTele(teleArgs.sliceView(0, i));
     }
     @Override public @NotNull Term result(Seq<Term> teleArgs) { return result.instantiateTele(teleArgs.view()); }
     @Override public @NotNull SeqView<String> namesView() {
@@ -118,7 +120,7 @@ public interface AbstractTele {
     }
 
     public @NotNull Locns bind(@NotNull LocalVar var, @NotNull Param type) {
-      var boundTele = telescope.view().mapIndexed((idx, p) -> p.descent(t -> t.bindAt(var, idx)));
+      var boundTele = telescope.view().mapIndexed((idx, p) -> p.bindAt(var, idx));
       return new Locns(boundTele.prepended(type).toImmutableSeq(), result.bindAt(var, telescope.size()));
     }
 
@@ -141,7 +143,7 @@ public interface AbstractTele {
       var view = preArgs.view();
       var cope = telescope.view()
         .drop(preArgs.size())
-        .mapIndexed((idx, p) -> p.descent(t -> t.replaceTeleFrom(idx, view)))
+        .mapIndexed((idx, p) -> p.mentionsFrom(idx) ? p.descent(t -> t.replaceTeleFrom(idx, view)) : p)
         .toImmutableSeq();
       var result = this.result.replaceTeleFrom(cope.size(), view);
       return new Locns(cope, result);
@@ -156,6 +158,8 @@ public interface AbstractTele {
     @Override public boolean telescopeLicit(int i) { return signature.telescopeLicit(i); }
     @Override public @NotNull String telescopeName(int i) { return signature.telescopeName(i); }
     @Override public @NotNull Term telescope(int i, Seq<Term> teleArgs) {
+      if (signature instanceof Locns(var tele, _) && !tele.get(i).mentionsFrom(0))
+        return tele.get(i).elevate(lift).type();
       return signature.telescope(i, teleArgs).elevate(lift);
     }
     @Override public @NotNull Term result(Seq<Term> teleArgs) {
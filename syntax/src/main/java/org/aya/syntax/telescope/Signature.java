@@ -20,7 +20,11 @@ import java.util.function.UnaryOperator;
  */
 @ForLSP
 public record Signature(@NotNull AbstractTele.Locns telescope, @NotNull ImmutableSeq<SourcePos> pos) {
-  public Signature { assert telescope.telescopeSize() == pos.size(); }
+  /** The parameters are {@link Param#summarize}d, because a signature is instantiated at every call */
+  public Signature {
+    assert telescope.telescopeSize() == pos.size();
+    telescope = new AbstractTele.Locns(telescope.telescope().map(Param::summarize), telescope.result());
+  }
 
   public @NotNull ImmutableSeq<Param> params() { return telescope.telescope(); }
   public @NotNull Term result() { return telescope.result(); }
@@ -6,6 +6,7 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableLinkedHashMap;
 import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableMap;
+import kala.collection.mutable.MutableSet;
 import kala.tuple.Tuple;
 import kala.tuple.Tuple2;
 import org.jetbrains.annotations.NotNull;
@@ -41,22 +42,28 @@ public record CallGraph<C, T>(
     return graph.allMatch((_, ts) -> ts.allMatch((_, t) -> t.isEmpty()));
   }
 
-  /** completing a call graph is just finding its transitive closure */
+  /**
+   * Completing a call graph is just finding its transitive closure.
+   * It is semi-naive: the calls found in a round are only extended by the ones found in the last round,
+   * as extending the older ones finds no call that is not found before.
+   */
   private static <C, T> @NotNull CallGraph<C, T> complete(@NotNull CallGraph<C, T> initial) {
     var step = initial;
+    var delta = initial;
     while (true) {
-      var comb = indirect(initial, step);
+      var comb = indirect(initial, delta);
       var tup = merge(comb, step);
       if (tup.component1().isEmpty()) return step; // no better matrices are found, we are complete
+      delta = tup.component1(); // the matrices accepted in this round
       step = tup.component2(); // got a partially completed call graph, try complete more
     }
   }
 
   /** find all indirect calls and combine them together */
-  private static <C, T> @NotNull CallGraph<C, T> indirect(@NotNull CallGraph<C, T> initial, @NotNull CallGraph<C, T> step) {
+  private static <C, T> @NotNull CallGraph<C, T> indirect(@NotNull CallGraph<C, T> initial, @NotNull CallGraph<C, T> delta) {
     var comb = CallGraph.<C, T>create();
     initial.graph.forEach((_, codomains) -> codomains.forEach((_, mats) -> mats.forEach(mat -> {
-      var indirect = step.graph.getOrNull(mat.codomain());
+      var indirect = delta.graph.getOrNull(mat.codomain());
       if (indirect != null) indirect.forEach((_, indMats) -> indMats.forEach(ind -> {
         var combine = CallMatrix.combine(mat, ind);
         comb.put(combine);
@@ -65,6 +72,25 @@ public record CallGraph<C, T>(
     return comb;
   }
 
+  /**
+   * A recursive call goes through the definitions in the same strongly connected component only,
+   * so the components are completed separately, without the calls between them.
+   */
+  private @NotNull ImmutableSeq<CallGraph<C, T>> components() {
+    var deps = MutableGraph.<T>create();
+    graph.forEach((caller, callees) -> deps.sucMut(caller).appendAll(callees.keysView()));
+    return deps.topologicalOrder().view().map(scc -> {
+      var members = MutableSet.from(scc);
+      var component = CallGraph.<C, T>create();
+      graph.forEach((caller, callees) -> {
+        if (members.contains(caller)) callees.forEach((callee, mats) -> {
+          if (members.contains(callee)) mats.forEach(component::put);
+        });
+      });
+      return component;
+    }).filterNot(CallGraph::isEmpty).toImmutableSeq();
+  }
+
   /**
    * merge newly discovered indirect matrices with old ones.
    * <a href="https://github.com/agda/agda/blob/e3bf58d8b2e95bc0481035756f44ddd9fe19b40d/src/full/Agda/Termination/CallGraph.hs#L155">CallGraph.hs</a>
@@ -126,8 +152,12 @@ public record CallGraph<C, T>(
 
   /** find bad recursive calls in current SCC */
   public @NotNull ImmutableSeq<Diagonal<C, T>> findBadRecursion() {
-    var complete = complete(this);
     var bads = MutableList.<Diagonal<C, T>>create();
+    for (var component : components()) findBadRecursion(complete(component), bads);
+    return bads.toImmutableSeq();
+  }
+
+  private static <C, T> void findBadRecursion(@NotNull CallGraph<C, T> complete, @NotNull MutableList<Diagonal<C, T>> bads) {
     for (var key : complete.graph.keysView()) {
       var matrix = complete.graph.getOption(key)
         .flatMap(g -> g.getOption(key));
@@ -142,6 +172,5 @@ public record CallGraph<C, T>(
         .toImmutableSeq();
       if (bad.isNotEmpty()) bads.appendAll(bad);
     }
-    return bads.toImmutableSeq();
   }
 }
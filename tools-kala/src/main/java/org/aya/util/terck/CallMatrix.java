@@ -5,18 +5,24 @@ package org.aya.util.terck;
 import kala.collection.immutable.ImmutableSeq;
 import org.aya.pretty.doc.Doc;
 import org.aya.pretty.doc.Docile;
-import org.aya.util.ArrayUtil;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.Debug;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+
 /**
  * A call matrix for a call `f --> g` has dimensions `arity(g) * arity(f)`.
  * Each row corresponds to one argument in the call to `g` (the codomain).
  * Each column corresponds to one formal argument of caller `f` (the domain).
+ * <p>
+ * Most of the relations are {@link Relation#unk()}, so only the others are stored:
+ * for each row, the columns of them in ascending order, and the relations at the same indices.
  *
- * @param cols domain tele size
- * @param rows codomain telescope size
+ * @param cols      domain tele size
+ * @param rows      codomain telescope size
+ * @param indices   the columns of the known relations in each row
+ * @param relations the known relations in each row
  * @author kiva
  * @see Relation
  */
@@ -26,34 +32,103 @@ public record CallMatrix<Callable, Def>(
   @NotNull Def domain, @NotNull Def codomain,
   int cols, // domainTele
   int rows, // codomainTele
-  @NotNull Relation[][] matrix
+  int @NotNull [][] indices,
+  @NotNull Relation @NotNull [][] relations
 ) implements Docile, Selector.Candidate<CallMatrix<Callable, Def>> {
+  private static final int[] NO_INDICES = new int[0];
+  private static final Relation[] NO_RELATIONS = new Relation[0];
+
   public CallMatrix(
     @NotNull Callable callable,
     @NotNull Def domain, @NotNull Def codomain,
     int domainTele, int codomainTele
   ) {
-    // TODO: sparse matrix?
     this(callable, domain, codomain, domainTele, codomainTele,
-      new Relation[codomainTele][domainTele]);
-    ArrayUtil.fill(matrix, Relation.unk());
+      new int[codomainTele][], new Relation[codomainTele][]);
+    Arrays.fill(indices, NO_INDICES);
+    Arrays.fill(relations, NO_RELATIONS);
+  }
+
+  public @NotNull Relation get(int col, int row) {
+    var at = Arrays.binarySearch(indices[row], col);
+    return at >= 0 ? relations[row][at] : Relation.unk();
   }
 
   public void set(int col, int row, @NotNull Relation relation) {
-    matrix[row][col] = relation;
+    var cols = indices[row];
+    var rels = relations[row];
+    var at = Arrays.binarySearch(cols, col);
+    if (at >= 0) {
+      if (!relation.isUnknown()) rels[at] = relation;
+      else {
+        indices[row] = remove(cols, at);
+        relations[row] = remove(rels, at);
+      }
+    } else if (!relation.isUnknown()) {
+      at = -at - 1;
+      indices[row] = insert(cols, at, col);
+      relations[row] = insert(rels, at, relation);
+    }
+  }
+
+  private static int @NotNull [] insert(int @NotNull [] array, int at, int value) {
+    var copy = new int[array.length + 1];
+    System.arraycopy(array, 0, copy, 0, at);
+    copy[at] = value;
+    System.arraycopy(array, at, copy, at + 1, array.length - at);
+    return copy;
+  }
+
+  private static @NotNull Relation @NotNull [] insert(@NotNull Relation @NotNull [] array, int at, @NotNull Relation value) {
+    var copy = new Relation[array.length + 1];
+    System.arraycopy(array, 0, copy, 0, at);
+    copy[at] = value;
+    System.arraycopy(array, at, copy, at + 1, array.length - at);
+    return copy;
   }
 
-  /** Compare two call matrices by their decrease amount. */
+  private static int @NotNull [] remove(int @NotNull [] array, int at) {
+    var copy = new int[array.length - 1];
+    System.arraycopy(array, 0, copy, 0, at);
+    System.arraycopy(array, at + 1, copy, at, copy.length - at);
+    return copy;
+  }
+
+  private static @NotNull Relation @NotNull [] remove(@NotNull Relation @NotNull [] array, int at) {
+    var copy = new Relation[array.length - 1];
+    System.arraycopy(array, 0, copy, 0, at);
+    System.arraycopy(array, at + 1, copy, at, copy.length - at);
+    return copy;
+  }
+
+  /**
+   * Compare two call matrices by their decrease amount.
+   * Two unknown relations compare {@link Selector.DecrOrd#Eq}, which does not change the result,
+   * so only the columns where either relation is known are compared.
+   */
   @Override public @NotNull Selector.DecrOrd compare(@NotNull CallMatrix<Callable, Def> other) {
     if (this.domain != other.domain || this.codomain != other.codomain) return Selector.DecrOrd.Unk;
     var rel = Selector.DecrOrd.Eq;
-    for (int i = 0; i < rows(); i++)
-      for (int j = 0; j < cols(); j++) {
-        var m = this.matrix[i][j];
-        var n = other.matrix[i][j];
-        var cmp = m.compare(n);
-        rel = rel.mul(cmp);
+    for (int i = 0; i < rows(); i++) {
+      var mCols = this.indices[i];
+      var nCols = other.indices[i];
+      int p = 0, q = 0;
+      while (p < mCols.length || q < nCols.length) {
+        Relation m, n;
+        if (q == nCols.length || p < mCols.length && mCols[p] < nCols[q]) {
+          m = this.relations[i][p++];
+          n = Relation.unk();
+        } else if (p == mCols.length || nCols[q] < mCols[p]) {
+          m = Relation.unk();
+          n = other.relations[i][q++];
+        } else {
+          m = this.relations[i][p++];
+          n = other.relations[i][q++];
+        }
+        rel = rel.mul(m.compare(n));
+        if (rel == Selector.DecrOrd.Unk) return rel;
       }
+    }
     return rel;
   }
 
@@ -61,6 +136,9 @@ public record CallMatrix<Callable, Def>(
    * Combine two call matrices if there exists an indirect call, for example:
    * If `f` calls `g` with call matrix `A` and `g` calls `h` with call matrix `B`,
    * the `f` indirectly calls `h` with call matrix `combine(A, B)` or `AB` in matrix notation.
+   * <p>
+   * A product with an unknown relation is unknown, which does not change the sum,
+   * so only the known relations are multiplied, and added in the order of `k` like in the dense product.
    */
   @Contract(pure = true)
   public static <Callable, Def, Param> @NotNull CallMatrix<Callable, Def> combine(
@@ -70,16 +148,40 @@ public record CallMatrix<Callable, Def>(
     assert B.domain == A.codomain : "The combine cannot be applied to these two call matrices";
 
     var BA = new CallMatrix<>(B.callable, A.domain, B.codomain, A.cols, B.rows);
-    for (int i = 0; i < BA.rows(); i++)
-      for (int j = 0; j < BA.cols(); j++)
-        for (int k = 0; k < B.cols(); k++)
-          BA.matrix[i][j] = BA.matrix[i][j].add(B.matrix[i][k].mul(A.matrix[k][j]));
+    var sum = new Relation[A.cols];
+    var known = new int[A.cols];
+    for (int i = 0; i < BA.rows(); i++) {
+      var size = 0;
+      for (int p = 0; p < B.indices[i].length; p++) {
+        var k = B.indices[i][p];
+        var b = B.relations[i][p];
+        for (int q = 0; q < A.indices[k].length; q++) {
+          var j = A.indices[k][q];
+          var product = b.mul(A.relations[k][q]);
+          if (product.isUnknown()) continue;
+          if (sum[j] == null) {
+            sum[j] = product;
+            known[size++] = j;
+          } else sum[j] = sum[j].add(product);
+        }
+      }
+      if (size == 0) continue;
+      var cols = Arrays.copyOf(known, size);
+      Arrays.sort(cols);
+      var rels = new Relation[size];
+      for (int q = 0; q < size; q++) {
+        rels[q] = sum[cols[q]];
+        sum[cols[q]] = null;
+      }
+      BA.indices[i] = cols;
+      BA.relations[i] = rels;
+    }
     return BA;
   }
 
   public @NotNull Doc toDoc() {
-    var lines = ImmutableSeq.from(matrix)
-      .map(row -> Doc.stickySep(ImmutableSeq.from(row).map(Relation::toDoc)));
+    var lines = ImmutableSeq.fill(rows, row ->
+      Doc.stickySep(ImmutableSeq.fill(cols, col -> get(col, row).toDoc())));
     return Doc.vcat(lines);
   }
 }
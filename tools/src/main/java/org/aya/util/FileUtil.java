@@ -22,6 +22,12 @@ public interface FileUtil {
     Files.writeString(path, content);
   }
 
+  static void writeBytes(@NotNull Path path, byte @NotNull [] content) throws IOException {
+    var parent = path.toAbsolutePath().getParent();
+    if (parent != null && Files.notExists(parent)) Files.createDirectories(parent);
+    Files.write(path, content);
+  }
+
   static @NotNull String escapeFileName(@NotNull String s) {
     // Escape file names, see https://stackoverflow.com/a/41108758/7083401
     return s.replaceAll("[\\\\/:*?\"<>|]", "_");
@@ -18,11 +18,25 @@ public interface OrgaTycker<T, E extends Exception> {
   @NotNull Iterable<T> collectUsageOf(@NotNull T failed);
 
   default void tyckSCC(@NotNull ImmutableSeq<T> scc) throws E {
+    tyckSCC(sccTycker(), scc);
+  }
+
+  /**
+   * Tyck {@param scc} with another tycker, which is how independent SCCs are tycked concurrently.
+   * The skipped set is shared, so it is locked.
+   */
+  default void tyckSCC(@NotNull SccTycker<T, E> sccTycker, @NotNull ImmutableSeq<T> scc) throws E {
     // we are more likely to check correct programs.
     // I'm not sure whether it's necessary to optimize on our own.
-    var sccTycker = sccTycker();
     var skipped = skippedSet();
-    skip(sccTycker.tyckSCC(skipped.isEmpty() ? scc : scc.filterNot(skipped::contains)));
+    ImmutableSeq<T> todo;
+    synchronized (skipped) {
+      todo = skipped.isEmpty() ? scc : scc.filterNot(skipped::contains);
+    }
+    var failed = sccTycker.tyckSCC(todo);
+    synchronized (skipped) {
+      skip(failed);
+    }
   }
 
   private void skip(@NotNull ImmutableSeq<T> failed) {
@@ -0,0 +1,77 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.util.tyck;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Run the SCCs of a dependency graph concurrently, each as soon as the SCCs it depends on are done.
+ * The tasks are responsible for buffering their output, so that it can be merged in the order of the SCCs.
+ */
+public final class SccScheduler {
+  @FunctionalInterface
+  public interface Task<T> {
+    /** @param index the position of {@param scc} in the topological order */
+    void run(@NotNull ImmutableSeq<T> scc, int index);
+  }
+
+  private SccScheduler() { }
+
+  /**
+   * Blocks until every task has stopped. The SCCs depending on a failed one are not run.
+   *
+   * @param sccs SCCs in a topological order, dependencies first
+   * @param deps the vertices a vertex depends on
+   * @throws RuntimeException the failure of the first failed task, in the order of {@param sccs}
+   */
+  public static <T> void run(
+    @NotNull ImmutableSeq<ImmutableSeq<T>> sccs,
+    @NotNull Function<T, ? extends Iterable<T>> deps,
+    @NotNull Task<T> task,
+    @NotNull Executor executor
+  ) {
+    var indices = new HashMap<T, Integer>();
+    for (var i = 0; i < sccs.size(); i++) {
+      var index = i;
+      sccs.get(i).forEach(t -> indices.put(t, index));
+    }
+    var futures = new CompletableFuture<?>[sccs.size()];
+    for (var i = 0; i < sccs.size(); i++) {
+      var index = i;
+      var scc = sccs.get(i);
+      var upstream = new LinkedHashSet<CompletableFuture<?>>();
+      scc.forEach(t -> deps.apply(t).forEach(dep -> {
+        var j = indices.get(dep);
+        if (j != null && j != index) upstream.add(futures[j]);
+      }));
+      futures[i] = CompletableFuture.allOf(upstream.toArray(CompletableFuture<?>[]::new))
+        .thenRunAsync(() -> task.run(scc, index), executor);
+    }
+    try {
+      CompletableFuture.allOf(futures).join();
+    } catch (CompletionException _) {
+      // A dependency comes before its users, so the first failure is not inherited from another task
+      for (var future : futures) if (future.isCompletedExceptionally()) rethrow(future);
+    }
+  }
+
+  private static void rethrow(@NotNull CompletableFuture<?> future) {
+    try {
+      future.join();
+    } catch (CompletionException e) {
+      switch (e.getCause()) {
+        case RuntimeException cause -> throw cause;
+        case Error cause -> throw cause;
+        case null, default -> throw e;
+      }
+    }
+  }
+}